@@ -0,0 +1,147 @@
+package com.sbiz.cache.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.Cache;
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.Serializers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gets, puts and a mix of both on a cache filled with all the keys, for each strategy, key distribution
+ * and memory/disk sizing. Reports the throughput and the latency percentiles (sample mode). <br><br>
+ * The full matrix takes long, narrow it with parameters and compare thread counts, ex:
+ * <code>java -jar target/benchmarks.jar CacheBenchmark.get -p strategy=LRU -p diskPercent=0 -t 1 -t 8 -prof gc</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+
+    private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+    @Param({ "LRU", "LFU" })
+    public String strategy;
+
+    @Param({ KeySequence.ZIPFIAN, KeySequence.UNIFORM, KeySequence.SCAN })
+    public String distribution;
+
+    @Param({ "16384" })
+    public int keyCount;
+
+    // Memory size, in percents of the keys
+    @Param({ "10", "50" })
+    public int memoryPercent;
+
+    // Disk size, in percents of the keys, 0 for a memory only cache
+    @Param({ "0", "100" })
+    public int diskPercent;
+
+    @Param({ "LOG" })
+    public String diskStore;
+
+    // Share of the puts in the mixed benchmark
+    @Param({ "10" })
+    public int writePercent;
+
+    private Cache<String, String> cache;
+
+    private String[] keys;
+
+    private String[] values;
+
+    private int[] sequence;
+
+    /**
+     * Position of each thread in the key sequence, starting at a random place so that the threads
+     * don't access the same keys in lockstep
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+
+        @Setup
+        public void setUp() {
+            position = ThreadLocalRandom.current().nextInt(SEQUENCE_LENGTH);
+        }
+
+        int next() {
+            return position++ & SEQUENCE_MASK;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        CacheBuilder builder = new CacheBuilder()
+                .strategy(strategy)
+                .memorySize(Math.max(1, keyCount * memoryPercent / 100))
+                .serializer(Serializers.STRING);
+        if (diskPercent > 0) {
+            builder.diskSize(keyCount * diskPercent / 100)
+                    .diskLocation(System.getProperty("java.io.tmpdir") + File.separator
+                            + "jcache-benchmarks" + File.separator + "cache-" + strategy)
+                    .diskStore(diskStore);
+        }
+        cache = builder.build();
+
+        keys = new String[keyCount];
+        values = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key" + i;
+            values[i] = "value" + i;
+            cache.put(keys[i], values[i]);
+        }
+        sequence = KeySequence.generate(distribution, keyCount, SEQUENCE_LENGTH, 42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Benchmark
+    public String get(Cursor cursor) {
+        return cache.get(keys[sequence[cursor.next()]]);
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        int index = sequence[cursor.next()];
+        cache.put(keys[index], values[index]);
+    }
+
+    /**
+     * <code>writePercent</code> puts for every 100 operations, the other ones are gets
+     */
+    @Benchmark
+    public String mixed(Cursor cursor) {
+        int position = cursor.next();
+        int index = sequence[position];
+        // position * 31 visits every residue of 128 once per 128 operations
+        if ((position * 31 & 127) * 100 < writePercent * 128) {
+            cache.put(keys[index], values[index]);
+            return null;
+        }
+        return cache.get(keys[index]);
+    }
+
+}
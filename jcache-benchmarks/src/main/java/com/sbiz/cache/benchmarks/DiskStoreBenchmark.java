@@ -0,0 +1,82 @@
+package com.sbiz.cache.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the disk stores. Memory holds a single entry, so every get is a disk hit:
+ * the value is read from disk and the previous memory entry is written to disk.
+ * <code>java -jar target/benchmarks.jar DiskStoreBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiskStoreBenchmark {
+
+    private static final int SIZE = 1 << 12;
+
+    private static final int MASK = SIZE - 1;
+
+    @Param({ "FILES", "LOG", "MMAP" })
+    public String diskStore;
+
+    @Param({ "300" })
+    public int valueSize;
+
+    @Param({ "false", "true" })
+    public boolean compression;
+
+    private LRUCache<String, String> cache;
+
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(1)
+                .diskSize(SIZE)
+                .diskLocation(System.getProperty("java.io.tmpdir") + File.separator
+                        + "jcache-benchmarks" + File.separator + diskStore)
+                .diskStore(diskStore)
+                .compression(compression)
+                .subfolderPattern("yyyyMMdd|hh|"));
+        char[] value = new char[valueSize];
+        java.util.Arrays.fill(value, 'x');
+        keys = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = "key" + i;
+            cache.put(keys[i], new String(value));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Benchmark
+    public String diskHit() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt() & MASK]);
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.sbiz.cache.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sequences of key indexes following a distribution, generated before the measurement so that
+ * the benchmark loop only reads an array. <br><br>
+ *  - ZIPFIAN: a few hot keys take most of the accesses (exponent 0.99, as in YCSB)
+ *  - UNIFORM: every key equally likely
+ *  - SCAN: all the keys one after the other, the worst case of LRU when the keys don't fit in memory
+ */
+public final class KeySequence {
+
+    public static final String ZIPFIAN = "ZIPFIAN";
+
+    public static final String UNIFORM = "UNIFORM";
+
+    public static final String SCAN = "SCAN";
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    private KeySequence() {
+    }
+
+    /**
+     * @return <code>length</code> indexes in <code>[0, keyCount)</code>
+     */
+    public static int[] generate(String distribution, int keyCount, int length, long seed) {
+        int[] sequence = new int[length];
+        Random random = new Random(seed);
+        if (ZIPFIAN.equals(distribution)) {
+            double[] cumulative = zipfCumulative(keyCount);
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+                sequence[i] = Math.min(rank < 0 ? -rank - 1 : rank, keyCount - 1);
+            }
+        } else if (UNIFORM.equals(distribution)) {
+            for (int i = 0; i < length; i++)
+                sequence[i] = random.nextInt(keyCount);
+        } else if (SCAN.equals(distribution)) {
+            for (int i = 0; i < length; i++)
+                sequence[i] = i % keyCount;
+        } else {
+            throw new IllegalArgumentException("Unknown key distribution: " + distribution);
+        }
+        return sequence;
+    }
+
+    // Cumulative probabilities of the ranks, the last one being 1
+    private static double[] zipfCumulative(int keyCount) {
+        double[] cumulative = new double[keyCount];
+        double sum = 0;
+        for (int rank = 0; rank < keyCount; rank++) {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < keyCount; rank++)
+            cumulative[rank] /= sum;
+        return cumulative;
+    }
+
+}
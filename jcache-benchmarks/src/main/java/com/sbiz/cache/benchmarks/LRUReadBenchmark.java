@@ -0,0 +1,78 @@
+package com.sbiz.cache.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares memory hits on the synchronized LRU read path with the buffered one. <br><br>
+ * Run with different thread counts to see the lock contention, ex:
+ * <code>java -jar target/benchmarks.jar LRUReadBenchmark -t 1 -t 8 -t 32</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LRUReadBenchmark {
+
+    private static final int SIZE = 1 << 16;
+
+    private static final int MASK = SIZE - 1;
+
+    @Param({ "false", "true" })
+    public boolean bufferedReads;
+
+    private LRUCache<String, String> cache;
+
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(SIZE)
+                .bufferedReads(bufferedReads));
+        keys = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = "key" + i;
+            cache.put(keys[i], "value" + i);
+        }
+    }
+
+    @Benchmark
+    public String readOnly() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt() & MASK]);
+    }
+
+    /**
+     * One write for every 16 reads: the writes also drain the read buffer
+     */
+    @Benchmark
+    public String readMostly() {
+        int random = ThreadLocalRandom.current().nextInt();
+        String key = keys[random & MASK];
+        if ((random >>> 28) == 0) {
+            cache.put(key, key);
+            return key;
+        }
+        return cache.get(key);
+    }
+
+}
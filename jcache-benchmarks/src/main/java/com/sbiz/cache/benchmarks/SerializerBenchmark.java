@@ -0,0 +1,88 @@
+package com.sbiz.cache.benchmarks;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.Serializer;
+import com.sbiz.cache.Serializers;
+import com.sbiz.cache.utils.ByteBufferInputStream;
+import com.sbiz.cache.utils.SerializationBuffer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the built-in string codec with Java serialization, writing into the reusable buffer
+ * of the disk stores. The serialize results carry the number of bytes written per value (secondary
+ * result <code>bytes</code>).
+ * <code>java -jar target/benchmarks.jar SerializerBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({ "STRING", "JAVA" })
+    public String codec;
+
+    @Param({ "16", "1024" })
+    public int valueSize;
+
+    private Serializer<String> serializer;
+
+    private SerializationBuffer buffer;
+
+    private String value;
+
+    private byte[] serialized;
+
+    /**
+     * Size of the last serialized value: set rather than summed, it reads as bytes per value (one thread)
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Written {
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        serializer = "STRING".equals(codec) ? Serializers.STRING : Serializers.<String>java();
+        buffer = new SerializationBuffer();
+        char[] chars = new char[valueSize];
+        Arrays.fill(chars, 'x');
+        value = new String(chars);
+        ByteBuffer bytes = buffer.write(serializer, value);
+        serialized = new byte[bytes.remaining()];
+        bytes.get(serialized);
+    }
+
+    @Benchmark
+    public ByteBuffer serialize(Written written) throws IOException {
+        ByteBuffer bytes = buffer.write(serializer, value);
+        written.bytes = bytes.remaining();
+        return bytes;
+    }
+
+    @Benchmark
+    public String deserialize() throws IOException {
+        return serializer.deserialize(new DataInputStream(new ByteBufferInputStream(ByteBuffer.wrap(serialized))));
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.sbiz.cache.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.Cache;
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.implementations.ACache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory hits with and without tracing, to be run with the GC profiler: <code>gc.alloc.rate.norm</code>
+ * must stay at (about) 0 B/op in both cases, ex:
+ * <code>java -jar target/benchmarks.jar TracingBenchmark -prof gc</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the flushed events are not logged: only the recording is measured
+@Fork(value = 1, jvmArgs = "-Dorg.slf4j.simpleLogger.defaultLogLevel=error")
+public class TracingBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param({ "LRU", "LFU", "CLOCK", "ARC", "WTINYLFU" })
+    public String strategy;
+
+    // Trace capacity, 0 for no tracing
+    @Param({ "0", "65536" })
+    public int tracing;
+
+    private Cache<String, String> cache;
+
+    private String[] keys;
+
+    private int position;
+
+    @Setup
+    public void setUp() {
+        cache = new CacheBuilder()
+                .strategy(strategy)
+                .memorySize(KEY_COUNT)
+                .tracing(tracing)
+                .traceFlushInterval(100, TimeUnit.MILLISECONDS)
+                .build();
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key" + i;
+            cache.put(keys[i], "value" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ((ACache<String, String>) cache).closeStats();
+        cache.clear();
+    }
+
+    @Benchmark
+    public String getHit() {
+        return cache.get(keys[position++ & (KEY_COUNT - 1)]);
+    }
+
+}
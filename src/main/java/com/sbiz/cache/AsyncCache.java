@@ -0,0 +1,24 @@
+package com.sbiz.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view of a cache <br><br>
+ * Memory hits complete inline, operations needing the disk run on an I/O executor
+ * so the caller thread never waits for a file. The returned futures are shared
+ * and must not be completed by the callers.
+ */
+public interface AsyncCache<K, V> {
+
+    CompletableFuture<V> getAsync(K key);
+
+    CompletableFuture<Void> putAsync(K key, V value);
+
+    CompletableFuture<V> removeAsync(K key);
+
+    /**
+     * @return the blocking cache behind this view
+     */
+    Cache<K, V> synchronous();
+
+}
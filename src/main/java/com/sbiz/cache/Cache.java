@@ -1,24 +1,57 @@
 package com.sbiz.cache;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
 /**
  * Cache interface <br><br>
  * Use by instantiating an implementation (ex. LRUCache)
  * either using defaults or by providing to the contructor a CacheBuilder
  */
-public interface Cache<K, V> {
+public interface Cache<K, V> extends AutoCloseable {
 
     void put(K key, V value);
 
     V get(K key);
 
+    /**
+     * Get the value, loading it with <code>loader</code> and putting it in the cache on a miss.
+     * Concurrent misses on the same key wait for a single load. A <code>null</code> loaded value
+     * is returned but not cached.
+     */
+    V get(K key, Function<? super K, ? extends V> loader);
+
     boolean containsKey(K key);
 
     V remove(K key);
 
+    /**
+     * Get the values of the keys present in the cache, missing keys are left out of the result.
+     * The batch is done under one lock and the second level values are read in disk order.
+     */
+    Map<K, V> getAll(Collection<? extends K> keys);
+
+    /**
+     * Put all the entries under one lock
+     */
+    void putAll(Map<? extends K, ? extends V> entries);
+
+    /**
+     * Remove all the keys under one lock, without reading their values
+     */
+    void removeAll(Collection<? extends K> keys);
+
     boolean isEmpty();
 
     int size();
 
     void clear();
 
+    /**
+     * Write the pending values and stop the threads of the cache, which is not used afterwards.
+     * The values on disk are kept.
+     */
+    void close();
+
 }
\ No newline at end of file
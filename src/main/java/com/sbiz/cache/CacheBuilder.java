@@ -1,5 +1,19 @@
 package com.sbiz.cache;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.sbiz.cache.implementations.ACache;
+import com.sbiz.cache.implementations.ArcCache;
+import com.sbiz.cache.implementations.AsyncCacheWrapper;
+import com.sbiz.cache.implementations.ClockCache;
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.implementations.LoadingCacheWrapper;
+import com.sbiz.cache.implementations.SegmentedLRUCache;
+import com.sbiz.cache.implementations.WTinyLfuCache;
+
 /**
  * Class for setting up a cache builder
  */
@@ -12,6 +26,82 @@ public class CacheBuilder implements CacheDefaults {
     private boolean updateExisting = DEFAULT_UPDATE_EXISTING;
     private boolean printInternalsDebug = DEFAULT_PRINT_INTERNALS_DEBUG;
     private String subFoldersPattern = DEFAULT_SUBFOLDERS_PATTERN;
+    private String strategy = DEFAULT_STRATEGY;
+    private int segments = DEFAULT_SEGMENTS;
+    private boolean bufferedReads = DEFAULT_BUFFERED_READS;
+    private String diskStore = DEFAULT_DISK_STORE;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long offHeapSize = DEFAULT_OFF_HEAP_SIZE;
+    private Weigher<?, ?> weigher;
+    private Serializer<?> serializer;
+    private boolean compression = DEFAULT_COMPRESSION;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private boolean writeBehind = DEFAULT_WRITE_BEHIND;
+    private int writeBehindQueueSize = DEFAULT_WRITE_BEHIND_QUEUE_SIZE;
+    private long refreshAfterWrite = DEFAULT_REFRESH_AFTER_WRITE;
+    private CacheLoader<?, ?> loader;
+    private Executor refreshExecutor;
+    private long expireAfterWrite = DEFAULT_EXPIRE_AFTER_WRITE;
+    private long expireAfterAccess = DEFAULT_EXPIRE_AFTER_ACCESS;
+    private Expiry<?, ?> expiry;
+    private Ticker ticker = Ticker.SYSTEM;
+    private long maxMemoryWeight = DEFAULT_MAX_WEIGHT;
+    private long maxDiskWeight = DEFAULT_MAX_WEIGHT;
+    private boolean recordStats = DEFAULT_RECORD_STATS;
+    private String statsMBeanName;
+    private long statsReportInterval = DEFAULT_STATS_REPORT_INTERVAL;
+    private int traceCapacity = DEFAULT_TRACE_CAPACITY;
+    private boolean warmRestart = DEFAULT_WARM_RESTART;
+    private boolean checkpointOnShutdown = DEFAULT_CHECKPOINT_ON_SHUTDOWN;
+    private int preloadThreads = DEFAULT_PRELOAD_THREADS;
+    private Serializer<?> keySerializer;
+    private long traceFlushInterval = DEFAULT_TRACE_FLUSH_INTERVAL;
+
+    public CacheBuilder() {
+    }
+
+    /**
+     * Create a builder having the same settings as <code>other</code>
+     */
+    public CacheBuilder(CacheBuilder other) {
+        this.diskEnabled = other.diskEnabled;
+        this.diskLocation = other.diskLocation;
+        this.maxDiskSize = other.maxDiskSize;
+        this.maxMemorySize = other.maxMemorySize;
+        this.updateExisting = other.updateExisting;
+        this.printInternalsDebug = other.printInternalsDebug;
+        this.subFoldersPattern = other.subFoldersPattern;
+        this.strategy = other.strategy;
+        this.segments = other.segments;
+        this.bufferedReads = other.bufferedReads;
+        this.diskStore = other.diskStore;
+        this.segmentSize = other.segmentSize;
+        this.offHeapSize = other.offHeapSize;
+        this.weigher = other.weigher;
+        this.serializer = other.serializer;
+        this.compression = other.compression;
+        this.compressionThreshold = other.compressionThreshold;
+        this.writeBehind = other.writeBehind;
+        this.writeBehindQueueSize = other.writeBehindQueueSize;
+        this.refreshAfterWrite = other.refreshAfterWrite;
+        this.loader = other.loader;
+        this.refreshExecutor = other.refreshExecutor;
+        this.expireAfterWrite = other.expireAfterWrite;
+        this.expireAfterAccess = other.expireAfterAccess;
+        this.expiry = other.expiry;
+        this.ticker = other.ticker;
+        this.maxMemoryWeight = other.maxMemoryWeight;
+        this.maxDiskWeight = other.maxDiskWeight;
+        this.recordStats = other.recordStats;
+        this.statsMBeanName = other.statsMBeanName;
+        this.statsReportInterval = other.statsReportInterval;
+        this.traceCapacity = other.traceCapacity;
+        this.warmRestart = other.warmRestart;
+        this.checkpointOnShutdown = other.checkpointOnShutdown;
+        this.preloadThreads = other.preloadThreads;
+        this.keySerializer = other.keySerializer;
+        this.traceFlushInterval = other.traceFlushInterval;
+    }
 
     /**
      * By default disk caching is disabled. Use this method to enable it.
@@ -41,6 +131,42 @@ public class CacheBuilder implements CacheDefaults {
         return this;
     }
 
+    /**
+     * Choose how values are stored on disk: {@link CacheDefaults#DISK_STORE_FILES} (one file per entry),
+     * {@link CacheDefaults#DISK_STORE_LOG} (appended to large segment files) or
+     * {@link CacheDefaults#DISK_STORE_MMAP} (slots of memory mapped slab files). This will enable disk caching.
+     */
+    public CacheBuilder diskStore(String diskStore) {
+        this.diskStore = diskStore;
+        this.diskEnabled = true;
+        return this;
+    }
+
+    /**
+     * Set the size in bytes of the segment files used by the log structured disk store
+     * or of the slab files used by the memory mapped disk store
+     */
+    public CacheBuilder segmentSize(long segmentSize) {
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("Segment size cannot be less than 1!");
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Keep up to <code>bytes</code> of serialized values in direct memory, out of the GC heap,
+     * between memory and disk. Entries leaving memory go off-heap first and are spilled to disk
+     * when the off-heap tier is full. The disk size still bounds the number of entries of both tiers.
+     * This will enable disk caching.
+     */
+    public CacheBuilder offHeapSize(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Off-heap size cannot be negative!");
+        this.offHeapSize = bytes;
+        this.diskEnabled = true;
+        return this;
+    }
+
     /**
      * Set the maxim number of objects stored in memory
      */
@@ -51,6 +177,247 @@ public class CacheBuilder implements CacheDefaults {
         return this;
     }
 
+    /**
+     * Set the serializer of the values stored on disk or off-heap (by default Java serialization,
+     * needing values implementing {@link java.io.Serializable}). See {@link Serializers}.
+     */
+    public CacheBuilder serializer(Serializer<?> serializer) {
+        this.serializer = serializer;
+        return this;
+    }
+
+    /**
+     * Keep the entries across restarts: {@link ACache#checkpoint()} writes a manifest of the disk entries
+     * (keys, order and locations) and a snapshot of the memory ones (with their values), read back by the next
+     * LRU or LFU cache built on the same disk location. The restored disk entries have their values read
+     * on their first hits, the memory ones are preloaded. Needs the FILES or LOG disk store, without off-heap tier
+     * nor expiration.
+     */
+    public CacheBuilder warmRestart(boolean warmRestart) {
+        this.warmRestart = warmRestart;
+        return this;
+    }
+
+    /**
+     * Write a checkpoint when the JVM shuts down (warm restart only)
+     */
+    public CacheBuilder checkpointOnShutdown(boolean checkpointOnShutdown) {
+        this.checkpointOnShutdown = checkpointOnShutdown;
+        return this;
+    }
+
+    /**
+     * Set the number of threads decoding the memory snapshot and scanning the LOG segments on a warm restart
+     * (by default one per processor)
+     */
+    public CacheBuilder preloadThreads(int preloadThreads) {
+        if (preloadThreads <= 0)
+            throw new IllegalArgumentException("Preload threads must be positive!");
+        this.preloadThreads = preloadThreads;
+        return this;
+    }
+
+    /**
+     * Set the serializer of the keys written in the warm restart manifest (by default Java serialization)
+     */
+    public CacheBuilder keySerializer(Serializer<?> keySerializer) {
+        this.keySerializer = keySerializer;
+        return this;
+    }
+
+    /**
+     * Compress (deflate) the values written on disk or off-heap
+     */
+    public CacheBuilder compression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Values serialized in less than <code>bytes</code> are not compressed
+     */
+    public CacheBuilder compressionThreshold(int bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Compression threshold cannot be negative!");
+        this.compressionThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * Keep the values in memory only, dropping the disk settings (disk, off-heap, write-behind and warm restart)
+     */
+    public CacheBuilder memoryOnly() {
+        this.diskEnabled = false;
+        this.offHeapSize = 0;
+        this.writeBehind = false;
+        this.warmRestart = false;
+        this.checkpointOnShutdown = false;
+        return this;
+    }
+
+    /**
+     * Write the values demoted to disk in a background thread, in batches
+     */
+    public CacheBuilder writeBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    /**
+     * Max values waiting for the background writer, then puts wait for it
+     */
+    public CacheBuilder writeBehindQueueSize(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Write-behind queue size must be positive!");
+        this.writeBehindQueueSize = size;
+        return this;
+    }
+
+    /**
+     * Reload in the background, with the loader, the entries accessed <code>duration</code> after
+     * their last write. The access still returns the current value.
+     */
+    public CacheBuilder refreshAfterWrite(long duration, TimeUnit unit) {
+        if (duration <= 0)
+            throw new IllegalArgumentException("Refresh duration must be positive!");
+        this.refreshAfterWrite = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Set the loader of the refreshes
+     */
+    public CacheBuilder loader(CacheLoader<?, ?> loader) {
+        this.loader = loader;
+        return this;
+    }
+
+    /**
+     * Run the refreshes on <code>executor</code> instead of a small bounded pool
+     */
+    public CacheBuilder refreshExecutor(Executor executor) {
+        this.refreshExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Expire the entries <code>duration</code> after their last write
+     */
+    public CacheBuilder expireAfterWrite(long duration, TimeUnit unit) {
+        if (duration <= 0)
+            throw new IllegalArgumentException("Expiration duration must be positive!");
+        this.expireAfterWrite = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Expire the entries <code>duration</code> after their last read or write
+     */
+    public CacheBuilder expireAfterAccess(long duration, TimeUnit unit) {
+        if (duration <= 0)
+            throw new IllegalArgumentException("Expiration duration must be positive!");
+        this.expireAfterAccess = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Compute the time to live of each entry, instead of the fixed durations
+     */
+    public CacheBuilder expiry(Expiry<?, ?> expiry) {
+        this.expiry = expiry;
+        return this;
+    }
+
+    /**
+     * Set the time source of the expirations and refreshes (ex. a fake one in tests)
+     */
+    public CacheBuilder ticker(Ticker ticker) {
+        this.ticker = ticker;
+        return this;
+    }
+
+    /**
+     * Record the hits and misses (memory and disk), evictions, promotions, demotions and the latencies
+     * of the operations, read with {@link ACache#getStats()}. Without stats nothing is recorded.
+     */
+    public CacheBuilder recordStats(boolean recordStats) {
+        this.recordStats = recordStats;
+        return this;
+    }
+
+    /**
+     * Register the statistics as the JMX MBean <code>com.sbiz.cache:type=CacheStats,name=&lt;name&gt;</code>
+     * (records them), <code>null</code> for none. Unregistered by {@link ACache#closeStats()}.
+     */
+    public CacheBuilder statsMBean(String name) {
+        this.statsMBeanName = name;
+        this.recordStats |= name != null;
+        return this;
+    }
+
+    /**
+     * Log the fill rate and the statistics every <code>interval</code> (records them), 0 for never
+     */
+    public CacheBuilder statsReportInterval(long interval, TimeUnit unit) {
+        if (interval < 0)
+            throw new IllegalArgumentException("Report interval must not be negative!");
+        this.statsReportInterval = unit.toNanos(interval);
+        this.recordStats |= interval > 0;
+        return this;
+    }
+
+    /**
+     * Trace the gets (with their outcome) and puts in a ring buffer of <code>capacity</code> events,
+     * flushed asynchronously to the <code>com.sbiz.cache.trace</code> logger. 0 (default) for no tracing.
+     */
+    public CacheBuilder tracing(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Trace capacity must not be negative!");
+        this.traceCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Delay between two flushes of the trace buffer, events above its capacity in between are dropped
+     */
+    public CacheBuilder traceFlushInterval(long interval, TimeUnit unit) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("Trace flush interval must be positive!");
+        this.traceFlushInterval = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Set the weigher computing the weight of the entries, needed by the weight limits
+     */
+    public CacheBuilder weigher(Weigher<?, ?> weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * Set the maximum total weight of the objects stored in memory (ex. bytes), on top of the memory size.
+     * Entries heavier than this are not cached. Only supported by the LRU and LFU strategies.
+     */
+    public CacheBuilder maxMemoryWeight(long weight) {
+        if (weight < 1)
+            throw new IllegalArgumentException("Max weight for memory cannot be less than 1!");
+        this.maxMemoryWeight = weight;
+        return this;
+    }
+
+    /**
+     * Set the maximum total weight of the objects stored on disk (ex. bytes), on top of the disk size.
+     * This will enable disk caching. Only supported by the LRU and LFU strategies.
+     */
+    public CacheBuilder maxDiskWeight(long weight) {
+        if (weight < 1)
+            throw new IllegalArgumentException("Max weight for disk cannot be less than 1!");
+        this.maxDiskWeight = weight;
+        this.diskEnabled = true;
+        return this;
+    }
+
     /**
      * Update the values when adding key/value pairs alread in the cache
      * @param updateExisting 
@@ -69,6 +436,71 @@ public class CacheBuilder implements CacheDefaults {
         return this;
     }
 
+    /**
+     * Set the cache strategy (ex. LRU, LFU, WTINYLFU, ARC, CLOCK) used by {@link #build()}
+     */
+    public CacheBuilder strategy(String strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Split the cache in <code>segments</code> independent parts, each one with its own lock
+     * and its own share of the memory and disk sizes. The number is rounded up to a power of two.
+     * Only supported by the LRU strategy.
+     */
+    public CacheBuilder segments(int segments) {
+        if (segments < 1)
+            throw new IllegalArgumentException("Number of segments cannot be less than 1!");
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * Record memory hits in a lock-free buffer and reorder the LRU list later, in batches,
+     * when the cache lock is taken anyway (on writes). The order becomes approximate.
+     */
+    public CacheBuilder bufferedReads(boolean bufferedReads) {
+        this.bufferedReads = bufferedReads;
+        return this;
+    }
+
+    /**
+     * Create a cache based on the current settings
+     */
+    public <K, V> Cache<K, V> build() {
+        if (LRU.equals(strategy)) {
+            if (segments > 1)
+                return new SegmentedLRUCache<K, V>(this);
+            return new LRUCache<K, V>(this);
+        }
+        if (segments > 1)
+            throw new IllegalArgumentException("Segments are not supported by the " + strategy + " strategy!");
+        if (LFU.equals(strategy))
+            return new LFUCache<K, V>(this);
+        if (WTINYLFU.equals(strategy))
+            return new WTinyLfuCache<K, V>(this);
+        if (ARC.equals(strategy))
+            return new ArcCache<K, V>(this);
+        if (CLOCK.equals(strategy))
+            return new ClockCache<K, V>(this);
+        throw new IllegalArgumentException("Unknown cache strategy: " + strategy);
+    }
+
+    /**
+     * Create a cache based on the current settings, behind an {@link AsyncCache} view
+     */
+    public <K, V> AsyncCache<K, V> buildAsync() {
+        return new AsyncCacheWrapper<K, V>((ACache<K, V>) this.<K, V>build());
+    }
+
+    /**
+     * Create a cache based on the current settings, loading the missing values with <code>loader</code>
+     */
+    public <K, V> LoadingCache<K, V> build(Function<? super K, ? extends V> loader) {
+        return new LoadingCacheWrapper<K, V>((ACache<K, V>) this.<K, V>build(), loader);
+    }
+
 	/**
 	 * @return the diskEnabled
 	 */
@@ -123,6 +555,228 @@ public class CacheBuilder implements CacheDefaults {
 		return subFoldersPattern;
 	}
 
+	/**
+	 * @return the strategy
+	 */
+	public String getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return the number of segments
+	 */
+	public int getSegments() {
+		return segments;
+	}
+
+	/**
+	 * @return the bufferedReads
+	 */
+	public boolean isBufferedReads() {
+		return bufferedReads;
+	}
+
+	/**
+	 * @return the diskStore type
+	 */
+	public String getDiskStore() {
+		return diskStore;
+	}
+
+	/**
+	 * @return the segmentSize
+	 */
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * @return the offHeapSize in bytes
+	 */
+	public long getOffHeapSize() {
+		return offHeapSize;
+	}
+
+	/**
+	 * @return the weigher
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> Weigher<K, V> getWeigher() {
+		return (Weigher<K, V>) weigher;
+	}
+
+	/**
+	 * @return the serializer, <code>null</code> for Java serialization
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> Serializer<V> getSerializer() {
+		return (Serializer<V>) serializer;
+	}
+
+	/**
+	 * @return true if the entries are kept across restarts
+	 */
+	public boolean isWarmRestart() {
+		return warmRestart;
+	}
+
+	/**
+	 * @return true if a checkpoint is written when the JVM shuts down
+	 */
+	public boolean isCheckpointOnShutdown() {
+		return checkpointOnShutdown;
+	}
+
+	/**
+	 * @return the preloadThreads
+	 */
+	public int getPreloadThreads() {
+		return preloadThreads;
+	}
+
+	/**
+	 * @return the keySerializer, <code>null</code> for Java serialization
+	 */
+	@SuppressWarnings("unchecked")
+	public <K> Serializer<K> getKeySerializer() {
+		return (Serializer<K>) keySerializer;
+	}
+
+	/**
+	 * @return the compression
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * @return the compressionThreshold
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * @return the writeBehind
+	 */
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * @return the writeBehindQueueSize
+	 */
+	public int getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	/**
+	 * @return the refreshAfterWrite in nanoseconds, 0 for no refresh
+	 */
+	public long getRefreshAfterWrite() {
+		return refreshAfterWrite;
+	}
+
+	/**
+	 * @return the loader of the refreshes
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> CacheLoader<K, V> getLoader() {
+		return (CacheLoader<K, V>) loader;
+	}
+
+	/**
+	 * @return the refreshExecutor, <code>null</code> for the default one
+	 */
+	public Executor getRefreshExecutor() {
+		return refreshExecutor;
+	}
+
+	/**
+	 * @return the expireAfterWrite in nanoseconds, 0 for none
+	 */
+	public long getExpireAfterWrite() {
+		return expireAfterWrite;
+	}
+
+	/**
+	 * @return the expireAfterAccess in nanoseconds, 0 for none
+	 */
+	public long getExpireAfterAccess() {
+		return expireAfterAccess;
+	}
+
+	/**
+	 * @return the expiry, <code>null</code> for the fixed durations
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> Expiry<K, V> getExpiry() {
+		return (Expiry<K, V>) expiry;
+	}
+
+	/**
+	 * @return the ticker
+	 */
+	public Ticker getTicker() {
+		return ticker;
+	}
+
+	/**
+	 * @return true if the entries can expire
+	 */
+	public boolean isExpiring() {
+		return expireAfterWrite > 0 || expireAfterAccess > 0 || expiry != null;
+	}
+
+	/**
+	 * @return the maxMemoryWeight
+	 */
+	public long getMaxMemoryWeight() {
+		return maxMemoryWeight;
+	}
+
+	/**
+	 * @return the maxDiskWeight
+	 */
+	public long getMaxDiskWeight() {
+		return maxDiskWeight;
+	}
+
+	/**
+	 * @return true if the statistics are recorded
+	 */
+	public boolean isRecordStats() {
+		return recordStats;
+	}
+
+	/**
+	 * @return the name of the statistics MBean, <code>null</code> for none
+	 */
+	public String getStatsMBeanName() {
+		return statsMBeanName;
+	}
+
+	/**
+	 * @return the statsReportInterval in nanoseconds, 0 for no report
+	 */
+	public long getStatsReportInterval() {
+		return statsReportInterval;
+	}
+
+	/**
+	 * @return the traceCapacity, 0 for no tracing
+	 */
+	public int getTraceCapacity() {
+		return traceCapacity;
+	}
+
+	/**
+	 * @return the traceFlushInterval in nanoseconds
+	 */
+	public long getTraceFlushInterval() {
+		return traceFlushInterval;
+	}
+
 	/**
 	 * @param subFolderPatterns the subFolderPatterns to set
 	 */
@@ -40,6 +40,146 @@ public interface CacheDefaults {
 
     public static final String LFU = "LFU";
 
+    public static final String WTINYLFU = "WTINYLFU";
+
+    public static final String ARC = "ARC";
+
+    public static final String CLOCK = "CLOCK";
+
+    /**
+     * Default cache strategy used by {@link CacheBuilder#build()}
+     */
+    public static final String DEFAULT_STRATEGY = LRU;
+
+    /**
+     * By default the cache is not segmented (one lock for the whole cache)
+     */
+    public static final int DEFAULT_SEGMENTS = 1;
+
+    /**
+     * By default every read reorders the LRU list under the cache lock
+     */
+    public static final boolean DEFAULT_BUFFERED_READS = false;
+
 	public static final String DEFAULT_SUBFOLDERS_PATTERN = "yyyyMMdd|hh|mm|";
 
+    /**
+     * Disk store keeping every entry in its own file
+     */
+    public static final String DISK_STORE_FILES = "FILES";
+
+    /**
+     * Disk store appending the entries to large segment files
+     */
+    public static final String DISK_STORE_LOG = "LOG";
+
+    /**
+     * Disk store keeping the entries in memory mapped slab files
+     */
+    public static final String DISK_STORE_MMAP = "MMAP";
+
+    /**
+     * Disk store keeping no values, to simulate the policies (ex. the trace simulator) without I/O
+     */
+    public static final String DISK_STORE_NULL = "NULL";
+
+    public static final String DEFAULT_DISK_STORE = DISK_STORE_FILES;
+
+    /**
+     * Default size of a segment (log structured disk store) or slab (memory mapped disk store) file (64 MB)
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * By default there is no off-heap tier between memory and disk
+     */
+    public static final long DEFAULT_OFF_HEAP_SIZE = 0;
+
+    /**
+     * By default the tiers are bounded only by their number of entries
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 0;
+
+    /**
+     * By default the values are written on disk and off-heap without compression
+     */
+    public static final boolean DEFAULT_COMPRESSION = false;
+
+    /**
+     * Smaller serialized values are not compressed (bytes)
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+
+    /**
+     * By default the values are written on disk by the thread demoting them
+     */
+    public static final boolean DEFAULT_WRITE_BEHIND = false;
+
+    /**
+     * Max values waiting for the background disk writer before the callers wait
+     */
+    public static final int DEFAULT_WRITE_BEHIND_QUEUE_SIZE = 1024;
+
+    /**
+     * By default the entries are never refreshed (nanoseconds)
+     */
+    public static final long DEFAULT_REFRESH_AFTER_WRITE = 0;
+
+    /**
+     * By default the entries don't expire (nanoseconds)
+     */
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE = 0;
+
+    public static final long DEFAULT_EXPIRE_AFTER_ACCESS = 0;
+
+    /**
+     * By default no statistics are recorded
+     */
+    public static final boolean DEFAULT_RECORD_STATS = false;
+
+    /**
+     * By default the statistics are not reported periodically (nanoseconds)
+     */
+    public static final long DEFAULT_STATS_REPORT_INTERVAL = 0;
+
+    /**
+     * By default the entries are dropped on restart
+     */
+    public static final boolean DEFAULT_WARM_RESTART = false;
+
+    /**
+     * By default no checkpoint is written when the JVM shuts down
+     */
+    public static final boolean DEFAULT_CHECKPOINT_ON_SHUTDOWN = false;
+
+    /**
+     * Threads decoding the memory snapshot on a warm restart (one per processor)
+     */
+    public static final int DEFAULT_PRELOAD_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * By default the operations are not traced (events kept by the trace buffer)
+     */
+    public static final int DEFAULT_TRACE_CAPACITY = 0;
+
+    /**
+     * Delay between two flushes of the trace buffer to the log (1 second, in nanoseconds)
+     */
+    public static final long DEFAULT_TRACE_FLUSH_INTERVAL = 1000000000L;
+
+    /**
+     * Threads of the default refresh executor
+     */
+    public static final int DEFAULT_REFRESH_THREADS = 2;
+
+    /**
+     * Refreshes waiting for a thread, more are dropped until the next access
+     */
+    public static final int DEFAULT_REFRESH_QUEUE_SIZE = 1024;
+
+    /**
+     * Size of the direct memory slabs of the off-heap tier (1 MB)
+     */
+    public static final int DEFAULT_OFF_HEAP_SLAB_SIZE = 1024 * 1024;
+
 }
\ No newline at end of file
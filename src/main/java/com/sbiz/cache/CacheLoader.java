@@ -0,0 +1,19 @@
+package com.sbiz.cache;
+
+/**
+ * Loads the values of the cache from their source (ex. a database). <br><br>
+ * Used by the refreshes ({@link CacheBuilder#refreshAfterWrite(long, java.util.concurrent.TimeUnit)}):
+ * {@link #reload(Object, Object)} runs in the background while the cache keeps returning the old value.
+ */
+public interface CacheLoader<K, V> {
+
+    V load(K key);
+
+    /**
+     * New value of a cached entry, by default loaded again. A <code>null</code> result keeps the old value.
+     */
+    default V reload(K key, V oldValue) {
+        return load(key);
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.sbiz.cache;
+
+import com.sbiz.cache.utils.LatencyHistogram;
+
+/**
+ * Immutable snapshot of the statistics of a cache (see {@link CacheBuilder#recordStats(boolean)}). <br><br>
+ * Hits are split by level: memory and second level (disk, including the off-heap tier).
+ * Promotions are values moved from disk to memory, demotions the other way around.
+ * Latencies are in nanoseconds.
+ */
+public final class CacheStats {
+
+    /**
+     * Statistics of a cache not recording them
+     */
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0,
+            Latency.EMPTY, Latency.EMPTY, Latency.EMPTY, Latency.EMPTY);
+
+    /**
+     * Latency distribution of an operation
+     */
+    public static final class Latency {
+
+        static final Latency EMPTY = new Latency(new long[LatencyHistogram.BUCKETS + 1]);
+
+        // bucket counts, followed by the total nanoseconds
+        private final long[] counts;
+
+        private final long count;
+
+        public Latency(long[] counts) {
+            this.counts = counts;
+            long count = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++)
+                count += counts[i];
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) counts[LatencyHistogram.BUCKETS] / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100 (ex. 99.9)
+         * @return the value below which this percentage of the operations are (upper bound of its bucket)
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return LatencyHistogram.bucketUpperBound(i);
+            }
+            return LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKETS - 1);
+        }
+
+        public long getMax() {
+            return getPercentile(100);
+        }
+
+        public Latency plus(Latency other) {
+            long[] sum = new long[counts.length];
+            for (int i = 0; i < counts.length; i++)
+                sum[i] = counts[i] + other.counts[i];
+            return new Latency(sum);
+        }
+
+        public String toString() {
+            return String.format("p50 %d ns, p99 %d ns, p99.9 %d ns", getPercentile(50), getPercentile(99),
+                    getPercentile(99.9));
+        }
+    }
+
+    private final long memoryHitCount;
+
+    private final long diskHitCount;
+
+    private final long missCount;
+
+    private final long putCount;
+
+    private final long evictionCount;
+
+    private final long expirationCount;
+
+    private final long promotionCount;
+
+    private final long demotionCount;
+
+    private final Latency getLatency;
+
+    private final Latency putLatency;
+
+    private final Latency diskReadLatency;
+
+    private final Latency diskWriteLatency;
+
+    public CacheStats(long memoryHitCount, long diskHitCount, long missCount, long putCount, long evictionCount,
+            long expirationCount, long promotionCount, long demotionCount, Latency getLatency, Latency putLatency,
+            Latency diskReadLatency, Latency diskWriteLatency) {
+        this.memoryHitCount = memoryHitCount;
+        this.diskHitCount = diskHitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.promotionCount = promotionCount;
+        this.demotionCount = demotionCount;
+        this.getLatency = getLatency;
+        this.putLatency = putLatency;
+        this.diskReadLatency = diskReadLatency;
+        this.diskWriteLatency = diskWriteLatency;
+    }
+
+    /**
+     * @return the number of gets
+     */
+    public long getRequestCount() {
+        return getHitCount() + missCount;
+    }
+
+    public long getHitCount() {
+        return memoryHitCount + diskHitCount;
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount;
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        return ratio(getHitCount());
+    }
+
+    public double getMemoryHitRatio() {
+        return ratio(memoryHitCount);
+    }
+
+    public double getDiskHitRatio() {
+        return ratio(diskHitCount);
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    public long getPromotionCount() {
+        return promotionCount;
+    }
+
+    public long getDemotionCount() {
+        return demotionCount;
+    }
+
+    public Latency getGetLatency() {
+        return getLatency;
+    }
+
+    public Latency getPutLatency() {
+        return putLatency;
+    }
+
+    public Latency getDiskReadLatency() {
+        return diskReadLatency;
+    }
+
+    public Latency getDiskWriteLatency() {
+        return diskWriteLatency;
+    }
+
+    /**
+     * Sum of the two statistics (ex. of the segments of a cache)
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(memoryHitCount + other.memoryHitCount, diskHitCount + other.diskHitCount,
+                missCount + other.missCount, putCount + other.putCount, evictionCount + other.evictionCount,
+                expirationCount + other.expirationCount, promotionCount + other.promotionCount,
+                demotionCount + other.demotionCount, getLatency.plus(other.getLatency),
+                putLatency.plus(other.putLatency), diskReadLatency.plus(other.diskReadLatency),
+                diskWriteLatency.plus(other.diskWriteLatency));
+    }
+
+    private double ratio(long count) {
+        long requests = getRequestCount();
+        return requests == 0 ? 0 : (double) count / requests;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[Hits: ").append(String.format("%.1f", getHitRatio() * 100)).append("% of ")
+                .append(getRequestCount()).append(", memory ").append(String.format("%.1f", getMemoryHitRatio() * 100))
+                .append("%, disk ").append(String.format("%.1f", getDiskHitRatio() * 100)).append("%]");
+        sb.append(" [Puts: ").append(putCount).append("]");
+        sb.append(" [Evictions: ").append(evictionCount).append("]");
+        if (expirationCount > 0)
+            sb.append(" [Expirations: ").append(expirationCount).append("]");
+        sb.append(" [Promotions: ").append(promotionCount).append(", demotions: ").append(demotionCount).append("]");
+        sb.append(" [Get: ").append(getLatency).append("]");
+        sb.append(" [Put: ").append(putLatency).append("]");
+        if (diskReadLatency.getCount() > 0)
+            sb.append(" [Disk read: ").append(diskReadLatency).append("]");
+        if (diskWriteLatency.getCount() > 0)
+            sb.append(" [Disk write: ").append(diskWriteLatency).append("]");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.sbiz.cache;
+
+/**
+ * JMX view of the statistics of a cache, registered as
+ * <code>com.sbiz.cache:type=CacheStats,name=&lt;name&gt;</code> (see {@link CacheBuilder#statsMBean(String)}).
+ * Every attribute read takes a new snapshot. Latencies are in nanoseconds.
+ */
+public interface CacheStatsMXBean {
+
+    int getSize();
+
+    int getMaxSize();
+
+    long getRequestCount();
+
+    long getMemoryHitCount();
+
+    long getDiskHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    double getMemoryHitRatio();
+
+    double getDiskHitRatio();
+
+    long getPutCount();
+
+    long getEvictionCount();
+
+    long getExpirationCount();
+
+    long getPromotionCount();
+
+    long getDemotionCount();
+
+    long getGetLatencyP50();
+
+    long getGetLatencyP99();
+
+    long getPutLatencyP99();
+
+    long getDiskReadLatencyP50();
+
+    long getDiskReadLatencyP99();
+
+    long getDiskWriteLatencyP99();
+
+}
@@ -0,0 +1,26 @@
+package com.sbiz.cache;
+
+/**
+ * Computes the time to live of each entry, in nanoseconds (<code>Long.MAX_VALUE</code> for never). <br><br>
+ * Used with {@link CacheBuilder#expiry(Expiry)} for entries having different lifetimes.
+ * <code>currentDuration</code> is the time the entry had left to live.
+ */
+public interface Expiry<K, V> {
+
+    long expireAfterCreate(K key, V value);
+
+    /**
+     * By default an update starts a new lifetime
+     */
+    default long expireAfterUpdate(K key, V value, long currentDuration) {
+        return expireAfterCreate(key, value);
+    }
+
+    /**
+     * By default reads don't change the lifetime
+     */
+    default long expireAfterRead(K key, V value, long currentDuration) {
+        return currentDuration;
+    }
+
+}
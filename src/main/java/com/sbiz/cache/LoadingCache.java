@@ -0,0 +1,30 @@
+package com.sbiz.cache;
+
+/**
+ * Cache loading the missing values by itself <br><br>
+ * {@link #get(Object)} never misses: the value is loaded with the loader of the cache
+ * (once for all the concurrent callers) and put in the cache.
+ */
+public interface LoadingCache<K, V> extends Cache<K, V> {
+
+    /**
+     * Get the value only if present, without loading it
+     */
+    V getIfPresent(K key);
+
+    /**
+     * @return the number of successful loads
+     */
+    long getLoadCount();
+
+    /**
+     * @return the number of loads that threw an exception
+     */
+    long getLoadFailureCount();
+
+    /**
+     * @return the average time of a load, in nanoseconds
+     */
+    double getAverageLoadPenalty();
+
+}
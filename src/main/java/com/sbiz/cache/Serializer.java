@@ -0,0 +1,18 @@
+package com.sbiz.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the values stored out of the heap (disk, off-heap). <br><br>
+ * Set with {@link CacheBuilder#serializer(Serializer)}, see {@link Serializers} for the built-in codecs.
+ * By default values are written with Java serialization.
+ */
+public interface Serializer<V> {
+
+    void serialize(V value, DataOutput out) throws IOException;
+
+    V deserialize(DataInput in) throws IOException;
+
+}
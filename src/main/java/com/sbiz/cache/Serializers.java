@@ -0,0 +1,141 @@
+package com.sbiz.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Built-in serializers. The codecs for strings, byte arrays and primitives write raw bytes
+ * (length-prefixed for strings and byte arrays) with no class descriptors.
+ */
+public final class Serializers {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Serializers() {
+    }
+
+    /**
+     * UTF-8 bytes prefixed by their length
+     */
+    public static final Serializer<String> STRING = new Serializer<String>() {
+        public void serialize(String value, DataOutput out) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        public String deserialize(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    /**
+     * Raw bytes prefixed by their length
+     */
+    public static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+        public void serialize(byte[] value, DataOutput out) throws IOException {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+
+        public byte[] deserialize(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    };
+
+    public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public void serialize(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        public Integer deserialize(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public static final Serializer<Long> LONG = new Serializer<Long>() {
+        public void serialize(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        public Long deserialize(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    public static final Serializer<Double> DOUBLE = new Serializer<Double>() {
+        public void serialize(Double value, DataOutput out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        public Double deserialize(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+    };
+
+    /**
+     * Java serialization (default). Values must implement {@link java.io.Serializable}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final Serializer JAVA = new Serializer<Object>() {
+        public void serialize(Object value, DataOutput out) throws IOException {
+            ObjectOutputStream objects = new ObjectOutputStream(asStream(out));
+            objects.writeObject(value);
+            objects.flush();
+        }
+
+        public Object deserialize(DataInput in) throws IOException {
+            ObjectInputStream objects = new ObjectInputStream(asStream(in));
+            try {
+                return objects.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    public static <V> Serializer<V> java() {
+        return (Serializer<V>) JAVA;
+    }
+
+    private static OutputStream asStream(final DataOutput out) {
+        if (out instanceof OutputStream)
+            return (OutputStream) out;
+        return new OutputStream() {
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+        };
+    }
+
+    private static InputStream asStream(final DataInput in) {
+        if (in instanceof InputStream)
+            return (InputStream) in;
+        return new InputStream() {
+            public int read() throws IOException {
+                try {
+                    return in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return -1;
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.sbiz.cache;
+
+/**
+ * Time source of the cache, in nanoseconds. Only the differences between two reads matter.
+ */
+public interface Ticker {
+
+    Ticker SYSTEM = new Ticker() {
+        public long read() {
+            return System.nanoTime();
+        }
+    };
+
+    long read();
+
+}
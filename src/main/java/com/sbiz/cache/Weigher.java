@@ -0,0 +1,13 @@
+package com.sbiz.cache;
+
+/**
+ * Computes the weight of a cache entry (ex. the size in bytes of its value). <br><br>
+ * Used with {@link CacheBuilder#maxMemoryWeight(long)} and {@link CacheBuilder#maxDiskWeight(long)}
+ * to bound the cache by the total weight of its entries instead of their number.
+ * The weight of an entry is computed when it is added or updated and must not be negative.
+ */
+public interface Weigher<K, V> {
+
+    int weigh(K key, V value);
+
+}
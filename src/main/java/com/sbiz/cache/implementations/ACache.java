@@ -1,19 +1,56 @@
 package com.sbiz.cache.implementations;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import com.sbiz.cache.Cache;
 import com.sbiz.cache.CacheBuilder;
 import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.CacheLoader;
+import com.sbiz.cache.CacheStats;
+import com.sbiz.cache.Expiry;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.IoExecutors;
+import com.sbiz.cache.utils.Manifest;
+import com.sbiz.cache.utils.StatsCounter;
 import com.sbiz.cache.utils.StoreManager;
+import com.sbiz.cache.utils.TimerWheel;
+import com.sbiz.cache.utils.TraceBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class ACache<K, V extends Serializable> implements Cache<K, V>, CacheDefaults {
+public abstract class ACache<K, V> implements Cache<K, V>, CacheDefaults {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+	private static final Logger traceLogger = LoggerFactory.getLogger("com.sbiz.cache.trace");
+
+	// Computed once: logged by every operation when debugging
+	private final String name = "Cache [" + hashCode() + "]";
+
 	protected String cacheStrategy;
 
 	// Used for debuging purposes
@@ -26,6 +63,87 @@ public abstract class ACache<K, V extends Serializable> implements Cache<K, V>,
 
 	protected StoreManager<K, V> store;
 
+	// Loads in progress, waited for by the concurrent misses on the same key
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	private final LongAdder loadCount = new LongAdder();
+
+	private final LongAdder loadFailureCount = new LongAdder();
+
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	// Entries accessed this long (nanoseconds) after their last write are reloaded, 0 for never
+	private long refreshAfterWrite = DEFAULT_REFRESH_AFTER_WRITE;
+
+	private CacheLoader<K, V> loader;
+
+	// Created on the first refresh when not set by the builder
+	private volatile Executor refreshExecutor;
+
+	// Refresh executor created by the cache, shut down on close
+	private ExecutorService ownRefreshExecutor;
+
+	// Checkpoint run on shutdown, removed on close
+	private Thread checkpointHook;
+
+	// Fixed time to live of the entries (nanoseconds), 0 for none
+	private long expireAfterWrite = DEFAULT_EXPIRE_AFTER_WRITE;
+
+	private long expireAfterAccess = DEFAULT_EXPIRE_AFTER_ACCESS;
+
+	// Time to live computed for each entry, instead of the fixed ones
+	private Expiry<K, V> expiry;
+
+	// Entries by expiration time, null when the entries don't expire
+	private TimerWheel<K, V> timerWheel;
+
+	private final Consumer<CacheEntry<K, V>> expireEntry = new Consumer<CacheEntry<K, V>>() {
+		public void accept(CacheEntry<K, V> cacheEntry) {
+			logger.debug("  {} expired", cacheEntry.getKey());
+			expire(cacheEntry);
+			if (stats != null)
+				stats.recordExpiration();
+		}
+	};
+
+	// Shared by the caches reporting their statistics
+	private static class StatsReporter {
+		static final ScheduledExecutorService INSTANCE = IoExecutors.newScheduler("jcache-stats");
+	}
+
+	// null when the statistics are not recorded
+	protected StatsCounter stats;
+
+	private ObjectName statsMBeanName;
+
+	private ScheduledFuture<?> statsReport;
+
+	// Shared by the caches flushing their trace
+	private static class TraceFlusher {
+		static final ScheduledExecutorService INSTANCE = IoExecutors.newScheduler("jcache-trace");
+	}
+
+	// null when the operations are not traced
+	private TraceBuffer trace;
+
+	private ScheduledFuture<?> traceFlush;
+
+	private long traceDropped;
+
+	// Wall clock and System.nanoTime() at the creation of the trace, to date the events
+	private long traceOriginMillis;
+
+	private long traceOriginNanos;
+
+	private final TraceBuffer.EventHandler logEvent = new TraceBuffer.EventHandler() {
+		public void onEvent(int type, Object key, long time, long duration) {
+			if (!traceLogger.isInfoEnabled())
+				return;
+			Instant at = Instant.ofEpochMilli(traceOriginMillis + (time - traceOriginNanos) / 1000000);
+			traceLogger.info("{} | {} | {} {} in {} ns", name, at, TraceBuffer.typeName(type), key, duration);
+		}
+	};
+
 	protected ACache() {
 		size = 0;
 		store = new StoreManager<K, V>();
@@ -42,19 +160,617 @@ public abstract class ACache<K, V extends Serializable> implements Cache<K, V>,
 		store.setMaxDiskSize(builder.getMaxDiskSize());
 		store.setMaxMemorySize(builder.getMaxMemorySize());
 		store.setSubFoldersPattern(builder.getSubFoldersPattern());
+		store.setDiskStoreType(builder.getDiskStore());
+		store.setSegmentSize(builder.getSegmentSize());
+		store.setOffHeapSize(builder.getOffHeapSize());
+		if (builder.getMaxMemoryWeight() > 0 || builder.getMaxDiskWeight() > 0) {
+			if (builder.getWeigher() == null)
+				throw new IllegalArgumentException("A weigher is needed for weight limits!");
+			if (!isWeightSupported())
+				throw new IllegalArgumentException("Weight limits are not supported by the " + cacheStrategy + " strategy!");
+		}
+		if (builder.getSerializer() != null)
+			store.setSerializer(builder.<V>getSerializer());
+		if (builder.isCompression())
+			store.setCompressionThreshold(builder.getCompressionThreshold());
+		if (builder.isWriteBehind())
+			store.setWriteBehindQueueSize(builder.getWriteBehindQueueSize());
+		store.setWeigher(builder.<K, V>getWeigher());
+		store.setMaxMemoryWeight(builder.getMaxMemoryWeight());
+		store.setMaxDiskWeight(builder.getMaxDiskWeight());
+		store.setTicker(builder.getTicker());
+		if (builder.isWarmRestart()) {
+			if (!isWarmRestartSupported())
+				throw new IllegalArgumentException("Warm restart is not supported by the " + cacheStrategy + " strategy!");
+			if (builder.isExpiring())
+				throw new IllegalArgumentException("Warm restart cannot be combined with expiration!");
+			store.setWarmRestart(true);
+			if (builder.getKeySerializer() != null)
+				store.setKeySerializer(builder.<K>getKeySerializer());
+			store.setPreloadThreads(builder.getPreloadThreads());
+		} else if (builder.isCheckpointOnShutdown()) {
+			throw new IllegalArgumentException("A checkpoint on shutdown needs warm restart!");
+		}
 		store.build();
+		if (builder.getRefreshAfterWrite() > 0) {
+			if (builder.getLoader() == null)
+				throw new IllegalArgumentException("A loader is needed for refreshes!");
+			if (!builder.isUpdateExisting())
+				throw new IllegalArgumentException("Refreshes need the existing values to be updated!");
+			refreshAfterWrite = builder.getRefreshAfterWrite();
+			loader = builder.<K, V>getLoader();
+			refreshExecutor = builder.getRefreshExecutor();
+		}
+		if (builder.isExpiring()) {
+			if (builder.getExpiry() != null && (builder.getExpireAfterWrite() > 0 || builder.getExpireAfterAccess() > 0))
+				throw new IllegalArgumentException("An expiry cannot be combined with fixed expiration durations!");
+			if (!isExpirationSupported())
+				throw new IllegalArgumentException("Expiration is not supported by the " + cacheStrategy + " strategy!");
+			expireAfterWrite = builder.getExpireAfterWrite();
+			expireAfterAccess = builder.getExpireAfterAccess();
+			expiry = builder.<K, V>getExpiry();
+			timerWheel = new TimerWheel<K, V>(store.now());
+		}
+		if (builder.isRecordStats()) {
+			stats = new StatsCounter();
+			store.setStats(stats);
+		}
 		setUpdateExisting(builder.isUpdateExisting());
 		setPrintInternalsDebug(builder.isPrintInternalsDebug());
+		if (builder.getStatsMBeanName() != null)
+			registerStatsMBean(builder.getStatsMBeanName());
+		if (builder.getStatsReportInterval() > 0)
+			scheduleStatsReport(builder.getStatsReportInterval());
+		if (builder.getTraceCapacity() > 0)
+			startTrace(builder.getTraceCapacity(), builder.getTraceFlushInterval());
+		if (builder.isWarmRestart()) {
+			restoreEntries();
+			if (builder.isCheckpointOnShutdown())
+				checkpointOnShutdown();
+		}
+	}
+
+	/**
+	 * Index the disk entries of the last checkpoint then preload its memory entries. Without manifest
+	 * (first start, crash, disk changed since the checkpoint) the disk is cleared with the snapshot:
+	 * its files don't match any entry.
+	 */
+	private void restoreEntries() {
+		Manifest.RestoreHandler<K, V> handler = new Manifest.RestoreHandler<K, V>() {
+			public void restore(CacheEntry<K, V> cacheEntry, int frequency) {
+				ACache.this.restore(cacheEntry, frequency);
+			}
+		};
+		long start = System.nanoTime();
+		try {
+			int restored = store.restore(handler);
+			if (restored < 0) {
+				logger.info("{} | No checkpoint to restore, starting empty", this);
+				clear();
+				return;
+			}
+			logger.info("{} | {} disk entries restored in {} ms", this, restored, (System.nanoTime() - start) / 1000000);
+		} catch (IOException e) {
+			logger.error("{} | Cannot restore the disk entries, starting empty: {}", this, e.getLocalizedMessage());
+			clear();
+			return;
+		}
+		start = System.nanoTime();
+		try {
+			int preloaded = store.preload(handler);
+			if (preloaded >= 0)
+				logger.info("{} | {} memory entries preloaded in {} ms", this, preloaded, (System.nanoTime() - start) / 1000000);
+		} catch (IOException e) {
+			// the entries preloaded so far are kept: they come with their values
+			logger.error("{} | Cannot preload the memory entries: {}", this, e.getLocalizedMessage());
+		}
+	}
+
+	private void checkpointOnShutdown() {
+		checkpointHook = new Thread(new Runnable() {
+			public void run() {
+				synchronized (ACache.this) {
+					// already done by close
+					if (checkpointHook == null)
+						return;
+					try {
+						checkpoint();
+					} catch (RuntimeException e) {
+						logger.error("{} | Checkpoint on shutdown failed: {}", ACache.this, e.getLocalizedMessage());
+					}
+				}
+			}
+		}, "jcache-checkpoint");
+		Runtime.getRuntime().addShutdownHook(checkpointHook);
+	}
+
+	/**
+	 * Stop the statistics and the background threads of the cache, checkpoint if done on shutdown, then write
+	 * the pending values and close the disk store. The cache is not used afterwards, its values stay on disk.
+	 */
+	public synchronized void close() {
+		closeStats();
+		if (checkpointHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(checkpointHook);
+			} catch (IllegalStateException e) {
+				// shutting down: the hook finds the checkpoint done
+			}
+			checkpointHook = null;
+			checkpoint();
+		}
+		if (ownRefreshExecutor != null) {
+			ownRefreshExecutor.shutdown();
+			ownRefreshExecutor = null;
+		}
+		store.close();
+	}
+
+	/**
+	 * Write the manifest of the disk entries (keys, order and locations) and the snapshot of the memory entries
+	 * (keys, order and values), read back by the next cache built on the same disk location with warm restart.
+	 * They are dropped on the next change making them stale, so checkpoint last before shutting down.
+	 */
+	public synchronized void checkpoint() {
+		if (!store.isWarmRestart())
+			throw new IllegalStateException("Warm restart is not enabled!");
+		store.checkpoint(new Manifest.EntrySource<K, V>() {
+			public void writeEntries(Manifest<K, V> manifest) throws IOException {
+				writeManifest(manifest);
+			}
+		});
+	}
+
+	private void startTrace(int capacity, long flushInterval) {
+		trace = new TraceBuffer(capacity);
+		traceOriginMillis = System.currentTimeMillis();
+		traceOriginNanos = System.nanoTime();
+		traceFlush = TraceFlusher.INSTANCE.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				flushTrace();
+			}
+		}, flushInterval, flushInterval, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Log the traced events not flushed yet, without waiting for the next periodic flush
+	 */
+	public void flushTrace() {
+		if (trace == null)
+			return;
+		synchronized (trace) {
+			trace.drain(logEvent);
+			long dropped = trace.getDroppedCount();
+			if (dropped > traceDropped) {
+				logger.warn("{} | {} trace events dropped, increase the trace capacity or flush more often",
+						this, dropped - traceDropped);
+				traceDropped = dropped;
+			}
+		}
+	}
+
+	private void registerStatsMBean(String name) {
+		try {
+			statsMBeanName = new ObjectName("com.sbiz.cache:type=CacheStats,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheStatsBean(this), statsMBeanName);
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Cannot register the statistics MBean " + name, e);
+		}
+	}
+
+	private void scheduleStatsReport(long interval) {
+		statsReport = StatsReporter.INSTANCE.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				logger.info("{} | {} | {}", ACache.this, fillRate(), getStats());
+			}
+		}, interval, interval, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Snapshot of the statistics, {@link CacheStats#EMPTY} when they are not recorded
+	 */
+	public CacheStats getStats() {
+		return stats == null ? CacheStats.EMPTY : stats.snapshot();
+	}
+
+	/**
+	 * Unregister the statistics MBean, stop the periodic report and the trace (flushed a last time)
+	 */
+	public void closeStats() {
+		if (traceFlush != null) {
+			traceFlush.cancel(false);
+			traceFlush = null;
+			flushTrace();
+		}
+		if (statsReport != null) {
+			statsReport.cancel(false);
+			statsReport = null;
+		}
+		if (statsMBeanName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsMBeanName);
+			} catch (JMException e) {
+				logger.warn("Cannot unregister the statistics MBean {}: {}", statsMBeanName, e.getLocalizedMessage());
+			}
+			statsMBeanName = null;
+		}
+	}
+
+	/**
+	 * Sizes of the levels, for the periodic report
+	 */
+	protected String fillRate() {
+		return "[Size: " + size() + "/" + getMaxSize() + "] " + store;
+	}
+
+	/**
+	 * Called by the strategies when an entry leaves the cache to make room
+	 */
+	protected void recordEviction() {
+		if (stats != null)
+			stats.recordEviction();
+	}
+
+	/**
+	 * Read the value of a disk entry before the strategy moves any entry for it, so a value that can't be read
+	 * back (torn or corrupted record) doesn't fail the get half way. Called by the strategies under the cache lock.
+	 *
+	 * @return <code>false</code> if the value is lost: the strategy drops the entry and the get is a miss
+	 */
+	protected boolean prefetch(K key, CacheEntry<K, V> cacheEntry) {
+		if (!cacheEntry.isDiskStored())
+			return true;
+		try {
+			store.prefetch(cacheEntry);
+			return true;
+		} catch (UncheckedIOException e) {
+			logger.error("{} | Dropping key {}, its value can't be read: {} ({})", this, key, e.getMessage(),
+					e.getCause().getMessage());
+			return false;
+		}
 	}
 
 	public abstract String internals();
+
+	/**
+	 * Whether the value of the key is on the second level (disk), used by the tests and the simulator
+	 */
+	public abstract boolean isEntryDiskStored(K key);
+
+	/**
+	 * Entry of the key, <code>null</code> when missing. Lock-free, so the entry may be moved
+	 * or removed right after. Strategies not overriding this have all their reads treated
+	 * as disk reads by {@link AsyncCacheWrapper}, their hits counted as memory hits
+	 * in the statistics and don't refresh their entries.
+	 */
+	protected CacheEntry<K, V> getEntry(K key) {
+		return null;
+	}
+
+	/**
+	 * Entry of the key when its value is in memory, <code>null</code> when missing or on disk
+	 */
+	protected CacheEntry<K, V> getMemoryEntry(K key) {
+		CacheEntry<K, V> cacheEntry = getEntry(key);
+		return cacheEntry == null || cacheEntry.isDiskStored() ? null : cacheEntry;
+	}
+
+	/**
+	 * Put the value unless the key is present, under the lock so no put or remove runs between the check and the put
+	 * @return the value present, <code>null</code> if the value was put
+	 */
+	protected synchronized V putIfAbsent(K key, V value) {
+		V present = get(key);
+		if (present == null)
+			put(key, value);
+		return present;
+	}
+
+	/**
+	 * Get the value only when it is in memory, <code>null</code> when missing or on disk: the disk is never read.
+	 * The lock keeps the entry from being demoted between the check and the get.
+	 */
+	protected synchronized V getMemoryValue(K key) {
+		return getMemoryEntry(key) == null ? null : get(key);
+	}
+
+	protected boolean isDiskEnabled() {
+		return store.isDiskEnabled();
+	}
+
+	/**
+	 * Strategies keeping the weight limits of the store override this
+	 */
+	protected boolean isWeightSupported() {
+		return false;
+	}
 	
+	/**
+	 * Strategies removing the expired entries override this and {@link #expire(CacheEntry)}
+	 */
+	protected boolean isExpirationSupported() {
+		return false;
+	}
+
+	/**
+	 * Strategies keeping their disk entries across restarts override this, {@link #writeManifest(Manifest)}
+	 * and {@link #restore(CacheEntry, int)}
+	 */
+	protected boolean isWarmRestartSupported() {
+		return false;
+	}
+
+	/**
+	 * Write the disk entries in the order of the strategy (first to evict first), under the cache lock
+	 */
+	protected void writeManifest(Manifest<K, V> manifest) throws IOException {
+	}
+
+	/**
+	 * Add a restored disk entry, as the last one in the order of the strategy so far.
+	 * <code>frequency</code> is the one written by {@link #writeManifest(Manifest)}.
+	 */
+	protected void restore(CacheEntry<K, V> cacheEntry, int frequency) {
+	}
+
+	/**
+	 * Remove the entry, without reading its value nor moving other entries. Called for the expired entries.
+	 */
+	protected void expire(CacheEntry<K, V> cacheEntry) {
+	}
+
+	/**
+	 * Called by the strategies, under the cache lock, after adding or updating an entry
+	 */
+	protected void scheduleExpiration(CacheEntry<K, V> cacheEntry, V value, boolean created) {
+		if (timerWheel == null)
+			return;
+		long now = store.now();
+		long duration;
+		if (expiry != null)
+			duration = created ? expiry.expireAfterCreate(cacheEntry.getKey(), value)
+					: expiry.expireAfterUpdate(cacheEntry.getKey(), value, timeToLive(cacheEntry, now));
+		else if (expireAfterWrite > 0 && expireAfterAccess > 0)
+			duration = Math.min(expireAfterWrite, expireAfterAccess);
+		else
+			duration = Math.max(expireAfterWrite, expireAfterAccess);
+		cacheEntry.setExpirationTime(expirationTime(now, duration));
+		timerWheel.schedule(cacheEntry);
+	}
+
+	/**
+	 * Called by the strategies when an entry is removed or evicted
+	 */
+	protected void descheduleExpiration(CacheEntry<K, V> cacheEntry) {
+		if (timerWheel != null)
+			timerWheel.deschedule(cacheEntry);
+	}
+
+	protected void clearExpiration() {
+		if (timerWheel != null)
+			timerWheel.clear();
+	}
+
+	protected boolean isExpired(CacheEntry<K, V> cacheEntry) {
+		return timerWheel != null && cacheEntry.getExpirationTime() != Long.MAX_VALUE
+				&& cacheEntry.getExpirationTime() <= store.now();
+	}
+
+	/**
+	 * Remove the expired entries: only the elapsed buckets of the timer wheel are visited.
+	 * Called by the strategies under the cache lock.
+	 */
+	protected void expireEntries() {
+		if (timerWheel != null && timerWheel.advance(store.now(), expireEntry) > 0)
+			afterExpiration();
+	}
+
+	/**
+	 * Called once the expired entries are removed (ex. to bring disk entries in the freed memory)
+	 */
+	protected void afterExpiration() {
+	}
+
+	/**
+	 * Remove the expired entries now instead of on the next write
+	 */
+	public synchronized void cleanUp() {
+		expireEntries();
+	}
+
+	/**
+	 * Called by the strategies on every hit, possibly without the cache lock. Only the expiration
+	 * time of the entry changes: the timer wheel moves the entry when its old bucket is reached.
+	 */
+	protected void recordAccess(K key, CacheEntry<K, V> cacheEntry, V value) {
+		if (timerWheel != null && value != null) {
+			if (expiry != null) {
+				long now = store.now();
+				cacheEntry.setExpirationTime(expirationTime(now,
+						expiry.expireAfterRead(key, value, timeToLive(cacheEntry, now))));
+			} else if (expireAfterAccess > 0) {
+				long expirationTime = expirationTime(store.now(), expireAfterAccess);
+				if (expireAfterWrite > 0)
+					expirationTime = Math.min(expirationTime, cacheEntry.getWriteTime() + expireAfterWrite);
+				cacheEntry.setExpirationTime(expirationTime);
+			}
+		}
+		refreshIfNeeded(key, cacheEntry, value);
+	}
+
+	private static long timeToLive(CacheEntry<?, ?> cacheEntry, long now) {
+		long expirationTime = cacheEntry.getExpirationTime();
+		return expirationTime == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, expirationTime - now);
+	}
+
+	private static long expirationTime(long now, long duration) {
+		// saturate: Long.MAX_VALUE is never
+		return duration >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + Math.max(0, duration);
+	}
+
 	protected abstract void initializeStrategy();
 
 	public int size() {
 		return size;
 	}
 
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = get(key);
+		if (value != null)
+			return value;
+
+		CompletableFuture<V> load = new CompletableFuture<V>();
+		CompletableFuture<V> inFlight = loads.putIfAbsent(key, load);
+		if (inFlight != null)
+			return waitForLoad(inFlight);
+
+		try {
+			// a load may have completed between the miss and the registration
+			value = get(key);
+			if (value == null) {
+				value = load(key, loader);
+				// a value put during the load is newer: keep it and return it to every caller
+				if (value != null) {
+					V present = putIfAbsent(key, value);
+					if (present != null)
+						value = present;
+				}
+			}
+			load.complete(value);
+			return value;
+		} catch (RuntimeException e) {
+			load.completeExceptionally(e);
+			throw e;
+		} catch (Error e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			loads.remove(key, load);
+		}
+	}
+
+	private V load(K key, Function<? super K, ? extends V> loader) {
+		logger.debug("{} | Loading object with key {} ", this, key);
+		long start = System.nanoTime();
+		boolean loaded = false;
+		try {
+			V value = loader.apply(key);
+			loaded = true;
+			return value;
+		} finally {
+			totalLoadTime.add(System.nanoTime() - start);
+			if (loaded)
+				loadCount.increment();
+			else
+				loadFailureCount.increment();
+		}
+	}
+
+	/**
+	 * An entry older than refreshAfterWrite is reloaded in the background, once at a time
+	 */
+	private void refreshIfNeeded(K key, CacheEntry<K, V> cacheEntry, V value) {
+		if (refreshAfterWrite <= 0 || value == null
+				|| store.now() - cacheEntry.getWriteTime() < refreshAfterWrite
+				|| !cacheEntry.startRefresh())
+			return;
+		try {
+			getRefreshExecutor().execute(new Refresh(key, cacheEntry, value));
+		} catch (RejectedExecutionException e) {
+			// too many refreshes waiting: the next access tries again
+			cacheEntry.endRefresh();
+		}
+	}
+
+	private Executor getRefreshExecutor() {
+		if (refreshExecutor == null) {
+			synchronized (loads) {
+				if (refreshExecutor == null) {
+					ownRefreshExecutor = IoExecutors.newBoundedExecutor("jcache-refresh",
+							DEFAULT_REFRESH_THREADS, DEFAULT_REFRESH_QUEUE_SIZE);
+					refreshExecutor = ownRefreshExecutor;
+				}
+			}
+		}
+		return refreshExecutor;
+	}
+
+	private class Refresh implements Runnable {
+		private final K key;
+		private final CacheEntry<K, V> cacheEntry;
+		private final V oldValue;
+
+		Refresh(K key, CacheEntry<K, V> cacheEntry, V oldValue) {
+			this.key = key;
+			this.cacheEntry = cacheEntry;
+			this.oldValue = oldValue;
+		}
+
+		public void run() {
+			long writeTime = cacheEntry.getWriteTime();
+			try {
+				V value = load(key, new Function<K, V>() {
+					public V apply(K key) {
+						return loader.reload(key, oldValue);
+					}
+				});
+				if (value == null)
+					return;
+				synchronized (ACache.this) {
+					// skip entries removed, replaced or written since the refresh started
+					if (getEntry(key) == cacheEntry && cacheEntry.getWriteTime() == writeTime)
+						put(key, value);
+				}
+			} catch (RuntimeException e) {
+				logger.warn("{} | Refresh of key {} failed: {}", ACache.this, key, e.getLocalizedMessage());
+			} finally {
+				cacheEntry.endRefresh();
+			}
+		}
+	}
+
+	private V waitForLoad(CompletableFuture<V> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			// rethrow the failure of the loading thread as is
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of successful loads (<code>null</code> values included)
+	 */
+	public long getLoadCount() {
+		return loadCount.sum();
+	}
+
+	/**
+	 * @return the number of loads that threw an exception
+	 */
+	public long getLoadFailureCount() {
+		return loadFailureCount.sum();
+	}
+
+	/**
+	 * @return the time spent loading values, in nanoseconds
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime.sum();
+	}
+
+	/**
+	 * @return the average time of a load, in nanoseconds
+	 */
+	public double getAverageLoadPenalty() {
+		long loads = loadCount.sum() + loadFailureCount.sum();
+		return loads == 0 ? 0 : (double) totalLoadTime.sum() / loads;
+	}
+
 	/**
 	 * @return the updateExisting
 	 */
@@ -84,9 +800,7 @@ public abstract class ACache<K, V extends Serializable> implements Cache<K, V>,
 	}
 		
     public String toString() {
-		StringBuilder sb = new StringBuilder().append("Cache [")
-					.append(hashCode()).append("]");
-        return sb.toString();
+        return name;
 	}
 
 	/**
@@ -103,10 +817,85 @@ public abstract class ACache<K, V extends Serializable> implements Cache<K, V>,
 		this.printInternalsDebug = printInternalsDebug;
 	}
 
-	public synchronized void put(K key, V value) {
-		if (isPrintInternalsDebug())
-			logger.debug("  Strategy info: {}", internals());
-	} 
+	/**
+	 * Get the value, <code>null</code> on a miss. With statistics or tracing the hit level (memory or disk),
+	 * or the miss, and the latency are recorded. Memory hits allocate nothing (debug logging off).
+	 */
+	public V get(K key) {
+		if (stats == null && trace == null)
+			return doGet(key);
+		CacheEntry<K, V> cacheEntry = getEntry(key);
+		boolean diskStored = cacheEntry != null && cacheEntry.isDiskStored();
+		long start = System.nanoTime();
+		V value = doGet(key);
+		long duration = System.nanoTime() - start;
+		if (stats != null)
+			stats.recordGet(value != null, diskStored, duration);
+		if (trace != null)
+			trace.record(value == null ? TraceBuffer.GET_MISS
+					: diskStored ? TraceBuffer.GET_DISK_HIT : TraceBuffer.GET_MEMORY_HIT, key, start, duration);
+		return value;
+	}
+
+	public void put(K key, V value) {
+		if (stats == null && trace == null) {
+			doPut(key, value);
+			return;
+		}
+		long start = System.nanoTime();
+		doPut(key, value);
+		long duration = System.nanoTime() - start;
+		if (stats != null)
+			stats.recordPut(duration);
+		if (trace != null)
+			trace.record(TraceBuffer.PUT, key, start, duration);
+	}
+
+	/**
+	 * Get of the strategy, see {@link #get(Object)}
+	 */
+	protected abstract V doGet(K key);
+
+	/**
+	 * Put of the strategy, see {@link #put(Object, Object)}
+	 */
+	protected abstract void doPut(K key, V value);
+
+	/**
+	 * Memory values first, then the second level ones in the order of the disk store
+	 * (by file, segment and offset) to turn random reads into forward ones.
+	 */
+	public synchronized Map<K, V> getAll(Collection<? extends K> keys) {
+		Map<K, V> values = new HashMap<K, V>();
+		List<CacheEntry<K, V>> diskEntries = new ArrayList<CacheEntry<K, V>>();
+		for (K key : keys) {
+			CacheEntry<K, V> cacheEntry = getEntry(key);
+			if (cacheEntry != null && cacheEntry.isDiskStored() && !isExpired(cacheEntry)) {
+				diskEntries.add(cacheEntry);
+			} else {
+				V value = get(key);
+				if (value != null)
+					values.put(key, value);
+			}
+		}
+		store.sortByLocation(diskEntries);
+		for (CacheEntry<K, V> cacheEntry : diskEntries) {
+			V value = get(cacheEntry.getKey());
+			if (value != null)
+				values.put(cacheEntry.getKey(), value);
+		}
+		return values;
+	}
+
+	public synchronized void putAll(Map<? extends K, ? extends V> entries) {
+		for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet())
+			put(entry.getKey(), entry.getValue());
+	}
+
+	public synchronized void removeAll(Collection<? extends K> keys) {
+		for (K key : keys)
+			remove(key);
+	}
 
 	public int getMaxSize() {
 		return store.getMaxMemorySize() + 
@@ -0,0 +1,287 @@
+package com.sbiz.cache.implementations;
+
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.NodeList;
+import com.sbiz.cache.utils.NodeList.Node;
+
+/**
+ * Adaptive Replacement Cache (ARC) implementation of a cache <br><br>
+ * Memory entries are kept in two LRU lists: T1 (seen once recently) and T2 (seen at least twice).
+ * Entries replaced from T1/T2 leave their key in the ghost lists B1/B2 (no value is kept there).
+ * A hit on a ghost key tells that T1 (for B1) or T2 (for B2) was too small, so the target size
+ * <code>p</code> of T1 is adapted: the cache tunes itself between recency and frequency.
+ * When disk caching is enabled the replaced entries are moved to a plain LRU disk area, otherwise they are evicted.
+ * Sources of inspiration:
+ *  - https://www.usenix.org/legacy/events/fast03/tech/full_papers/megiddo/megiddo.pdf
+ */
+public class ArcCache<K, V> extends ACache<K, V> {
+
+    private ConcurrentHashMap<K, Node<CacheEntry<K, V>>> cache;
+
+    private NodeList<CacheEntry<K, V>> t1;
+
+    private NodeList<CacheEntry<K, V>> t2;
+
+    private NodeList<CacheEntry<K, V>> disk;
+
+    private NodeList<K> b1;
+
+    private NodeList<K> b2;
+
+    private HashMap<K, Node<K>> ghosts;
+
+    // Target size for T1
+    private int p;
+
+    public ArcCache() {
+        super();
+    }
+
+    public ArcCache(CacheBuilder builder) {
+        super(builder);
+    }
+
+    protected void initializeStrategy() {
+        setCacheStrategy(ARC);
+        cache = new ConcurrentHashMap<K, Node<CacheEntry<K, V>>>();
+        t1 = new NodeList<CacheEntry<K, V>>("T1");
+        t2 = new NodeList<CacheEntry<K, V>>("T2");
+        disk = new NodeList<CacheEntry<K, V>>("Disk");
+        b1 = new NodeList<K>("B1");
+        b2 = new NodeList<K>("B2");
+        ghosts = new HashMap<K, Node<K>>();
+        p = 0;
+        logger.debug("{} | {} Cache initialized", this, cacheStrategy);
+    }
+
+    protected synchronized void doPut(K key, V value) {
+
+        logger.debug("{} | Adding object with key {} ", this, key);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        if (cachedNode != null) {
+            if (isUpdateExisting())
+                cachedNode.getItem().updateValue(value);
+            return;
+        }
+
+        NodeList<CacheEntry<K, V>> target = makeRoomInMemory(key);
+
+        // Memory has room: the store will keep the new value in memory
+        CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store);
+        Node<CacheEntry<K, V>> newNode = new Node<CacheEntry<K, V>>(newEntry);
+        target.addLast(newNode);
+        cache.put(key, newNode);
+        size++;
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+    }
+
+    protected synchronized V doGet(K key) {
+
+        logger.debug("{} | Getting object with key {} ", this, key);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        NodeList<CacheEntry<K, V>> list = cachedNode.getList();
+        if (list == t1 || list == t2) {
+            // seen at least twice
+            list.remove(cachedNode);
+            t2.addLast(cachedNode);
+        } else {
+            // disk hit: a miss for the memory lists
+            if (!prefetch(key, cachedNode.getItem())) {
+                remove(key);
+                return null;
+            }
+            disk.remove(cachedNode);
+            NodeList<CacheEntry<K, V>> target = makeRoomInMemory(key);
+            cachedNode.getItem().switchStore();
+            target.addLast(cachedNode);
+        }
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+
+        return cachedNode.getItem().getValue();
+    }
+
+    /**
+     * Handle a memory miss for <code>key</code>: adapt <code>p</code> on ghost hits, trim the ghost lists
+     * and free a memory slot if needed. Returns the list where the entry must be added.
+     */
+    private NodeList<CacheEntry<K, V>> makeRoomInMemory(K key) {
+        int c = store.getMaxMemorySize();
+        NodeList<CacheEntry<K, V>> target;
+
+        Node<K> ghost = ghosts.get(key);
+        if (ghost != null) {
+            boolean inB2 = ghost.getList() == b2;
+            if (inB2)
+                p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+            else
+                p = Math.min(c, p + Math.max(b2.size() / b1.size(), 1));
+            dropGhost(ghost);
+            if (memorySize() == c)
+                replace(inB2);
+            target = t2;
+        } else {
+            if (t1.size() + b1.size() >= c) {
+                if (t1.size() < c) {
+                    dropGhost(b1.first());
+                    if (memorySize() == c)
+                        replace(false);
+                } else {
+                    // T1 takes all the memory: drop its LRU entry without remembering it
+                    moveOutOfMemory(t1.first(), null);
+                }
+            } else {
+                if (t1.size() + t2.size() + b1.size() + b2.size() >= 2 * c && !b2.isEmpty())
+                    dropGhost(b2.first());
+                if (memorySize() == c)
+                    replace(false);
+            }
+            target = t1;
+        }
+        return target;
+    }
+
+    /**
+     * Move the LRU entry of T1 (if T1 is over its target size) or T2 out of memory
+     */
+    private void replace(boolean inB2) {
+        if (!t1.isEmpty() && ((inB2 && t1.size() == p) || t1.size() > p || t2.isEmpty()))
+            moveOutOfMemory(t1.first(), b1);
+        else
+            moveOutOfMemory(t2.first(), b2);
+    }
+
+    /**
+     * Remember the key in <code>ghostList</code> (if any) and move the entry to disk if enabled,
+     * dropping the least recent disk entry when full. Without disk the entry is evicted.
+     */
+    private void moveOutOfMemory(Node<CacheEntry<K, V>> node, NodeList<K> ghostList) {
+        node.getList().remove(node);
+        K key = node.getItem().getKey();
+        if (ghostList != null) {
+            Node<K> ghost = new Node<K>(key);
+            ghostList.addLast(ghost);
+            ghosts.put(key, ghost);
+        }
+        if (store.isDiskEnabled()) {
+            if (disk.size() == store.getMaxDiskSize())
+                evict(disk.pollFirst());
+            node.getItem().switchStore();
+            disk.addLast(node);
+            logger.debug("  {} moved to disk", key);
+        } else {
+            evict(node);
+        }
+    }
+
+    private void evict(Node<CacheEntry<K, V>> node) {
+        cache.remove(node.getItem().getKey());
+        node.getItem().discardFromStore();
+        size--;
+        recordEviction();
+        logger.debug("  {} evicted", node.getItem().getKey());
+    }
+
+    private void dropGhost(Node<K> ghost) {
+        ghost.getList().remove(ghost);
+        ghosts.remove(ghost.getItem());
+    }
+
+    private int memorySize() {
+        return t1.size() + t2.size();
+    }
+
+    public boolean containsKey(K key) {
+        return cache.containsKey(key);
+    }
+
+    public synchronized V remove(K key) {
+
+        logger.debug("{} | Removing object with key {} ", this, key);
+
+        Node<K> ghost = ghosts.get(key);
+        if (ghost != null)
+            dropGhost(ghost);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.remove(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        cachedNode.getList().remove(cachedNode);
+        size--;
+        return cachedNode.getItem().removeFromStore();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        store.clear();
+        t1.clear();
+        t2.clear();
+        disk.clear();
+        b1.clear();
+        b2.clear();
+        ghosts.clear();
+        p = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the current target size of T1
+     */
+    public int getTargetRecentSize() {
+        return p;
+    }
+
+    @Override
+    public String internals() {
+        StringBuilder sb = new StringBuilder("  p=").append(p);
+        appendList(sb, t1);
+        appendList(sb, t2);
+        appendList(sb, disk);
+        sb.append("  ").append(b1.getName()).append(" | ").append(b1.size());
+        sb.append("  ").append(b2.getName()).append(" | ").append(b2.size());
+        sb.append("  |   ").append(store.toString());
+        return sb.toString();
+    }
+
+    private void appendList(StringBuilder sb, NodeList<CacheEntry<K, V>> list) {
+        sb.append("  ").append(list.getName()).append(" | ");
+        for (Node<CacheEntry<K, V>> node = list.first(); node != null; node = node.getNext())
+            sb.append(node.getItem().getKey()).append(" ");
+    }
+
+    @Override
+    protected CacheEntry<K, V> getEntry(K key) {
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        return cachedNode == null ? null : cachedNode.getItem();
+    }
+
+    // Method used for unit testing purposes!
+    public boolean isEntryDiskStored(K key) {
+        Node<CacheEntry<K, V>> foundNode = cache.get(key);
+        if (foundNode == null)
+            throw new NoSuchElementException(key + " not in cache");
+        else
+            return foundNode.getItem().isDiskStored();
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.sbiz.cache.implementations;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.sbiz.cache.AsyncCache;
+import com.sbiz.cache.Cache;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.IoExecutors;
+
+/**
+ * {@link AsyncCache} view of a cache (ex. LRUCache, LFUCache) <br><br>
+ * Memory hits and misses complete inline, without allocating anything but the completed future
+ * reused by the entry. Reads of disk entries, and puts and removes that may touch the disk,
+ * run on the I/O executor (virtual threads where available). The operations on a key run in the
+ * order they were called: while one is on the executor, the next ones on the key wait for it.
+ */
+public class AsyncCacheWrapper<K, V> implements AsyncCache<K, V> {
+
+    private static final CompletableFuture<?> COMPLETED_NULL = CompletableFuture.completedFuture(null);
+
+    // Shared by the wrappers created without an executor
+    private static class DefaultExecutor {
+        static final Executor INSTANCE = IoExecutors.newIoExecutor("jcache-io");
+    }
+
+    private final ACache<K, V> cache;
+
+    private final Executor executor;
+
+    // Last operation sent to the executor for each key, removed when it completes
+    private final ConcurrentHashMap<K, CompletableFuture<?>> queued = new ConcurrentHashMap<K, CompletableFuture<?>>();
+
+    public AsyncCacheWrapper(ACache<K, V> cache) {
+        this(cache, DefaultExecutor.INSTANCE);
+    }
+
+    public AsyncCacheWrapper(ACache<K, V> cache, Executor executor) {
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<V> getAsync(K key) {
+        if (queued.containsKey(key))
+            return submitGet(key);
+        CacheEntry<K, V> cacheEntry = cache.getMemoryEntry(key);
+        if (cacheEntry != null) {
+            V value = cache.getMemoryValue(key);
+            if (value != null)
+                return cacheEntry.completedFuture(value);
+            // demoted since: read on the executor
+        } else if (!cache.containsKey(key)) {
+            return completedNull();
+        }
+        return submitGet(key);
+    }
+
+    private CompletableFuture<V> submitGet(final K key) {
+        return submit(key, new Supplier<V>() {
+            public V get() {
+                return cache.get(key);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> putAsync(final K key, final V value) {
+        // a put may demote entries to disk
+        if (!cache.isDiskEnabled() && !queued.containsKey(key)) {
+            cache.put(key, value);
+            return completedNull();
+        }
+        return submit(key, new Supplier<Void>() {
+            public Void get() {
+                cache.put(key, value);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<V> removeAsync(final K key) {
+        // removing a disk entry reads its value
+        if (!queued.containsKey(key) && (cache.getMemoryEntry(key) != null || !cache.containsKey(key)))
+            return CompletableFuture.completedFuture(cache.remove(key));
+        return submit(key, new Supplier<V>() {
+            public V get() {
+                return cache.remove(key);
+            }
+        });
+    }
+
+    public Cache<K, V> synchronous() {
+        return cache;
+    }
+
+    /**
+     * Run the operation on the executor once the previous operation on the key is done
+     */
+    private <T> CompletableFuture<T> submit(final K key, final Supplier<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final Runnable run = new Runnable() {
+            public void run() {
+                try {
+                    future.complete(operation.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        CompletableFuture<?> previous = queued.put(key, future);
+        if (previous == null) {
+            execute(run, future);
+        } else {
+            previous.whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(Object result, Throwable failure) {
+                    execute(run, future);
+                }
+            });
+        }
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            public void accept(T result, Throwable failure) {
+                queued.remove(key, future);
+            }
+        });
+        return future;
+    }
+
+    private void execute(Runnable run, CompletableFuture<?> future) {
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> completedNull() {
+        return (CompletableFuture<T>) COMPLETED_NULL;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.sbiz.cache.implementations;
+
+import com.sbiz.cache.CacheStatsMXBean;
+
+/**
+ * MBean of the statistics of a cache, each attribute read takes a new snapshot
+ */
+class CacheStatsBean implements CacheStatsMXBean {
+
+    private final ACache<?, ?> cache;
+
+    CacheStatsBean(ACache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    public long getRequestCount() {
+        return cache.getStats().getRequestCount();
+    }
+
+    public long getMemoryHitCount() {
+        return cache.getStats().getMemoryHitCount();
+    }
+
+    public long getDiskHitCount() {
+        return cache.getStats().getDiskHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getStats().getMissCount();
+    }
+
+    public double getHitRatio() {
+        return cache.getStats().getHitRatio();
+    }
+
+    public double getMemoryHitRatio() {
+        return cache.getStats().getMemoryHitRatio();
+    }
+
+    public double getDiskHitRatio() {
+        return cache.getStats().getDiskHitRatio();
+    }
+
+    public long getPutCount() {
+        return cache.getStats().getPutCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getStats().getEvictionCount();
+    }
+
+    public long getExpirationCount() {
+        return cache.getStats().getExpirationCount();
+    }
+
+    public long getPromotionCount() {
+        return cache.getStats().getPromotionCount();
+    }
+
+    public long getDemotionCount() {
+        return cache.getStats().getDemotionCount();
+    }
+
+    public long getGetLatencyP50() {
+        return cache.getStats().getGetLatency().getPercentile(50);
+    }
+
+    public long getGetLatencyP99() {
+        return cache.getStats().getGetLatency().getPercentile(99);
+    }
+
+    public long getPutLatencyP99() {
+        return cache.getStats().getPutLatency().getPercentile(99);
+    }
+
+    public long getDiskReadLatencyP50() {
+        return cache.getStats().getDiskReadLatency().getPercentile(50);
+    }
+
+    public long getDiskReadLatencyP99() {
+        return cache.getStats().getDiskReadLatency().getPercentile(99);
+    }
+
+    public long getDiskWriteLatencyP99() {
+        return cache.getStats().getDiskWriteLatency().getPercentile(99);
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.sbiz.cache.implementations;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.NodeList;
+import com.sbiz.cache.utils.NodeList.Node;
+
+/**
+ * CLOCK implementation of a cache <br><br>
+ * Memory entries are kept in a preallocated circular array. A memory hit only sets the reference bit
+ * of the entry's slot (no lock, no allocation, no pointer updates). When memory is full the hand sweeps
+ * the array, clearing the reference bits, until it finds a slot not referenced since its last pass:
+ * that entry is moved to disk (a FIFO area) when disk caching is enabled, otherwise it is evicted.
+ * Sources of inspiration:
+ *  - https://en.wikipedia.org/wiki/Page_replacement_algorithm#Clock
+ */
+public class ClockCache<K, V> extends ACache<K, V> {
+
+    private static final int NOT_IN_MEMORY = -1;
+
+    private class ClockNode<Key, Value> {
+        final CacheEntry<Key, Value> cacheEntry;
+        // Position in the clock, NOT_IN_MEMORY for disk entries
+        volatile int slot = NOT_IN_MEMORY;
+        Node<ClockNode<Key, Value>> diskNode;
+
+        public ClockNode(CacheEntry<Key, Value> cacheEntry) {
+            this.cacheEntry = cacheEntry;
+        }
+
+        public Key getKey() {
+            return cacheEntry.getKey();
+        }
+    }
+
+    private ConcurrentHashMap<K, ClockNode<K, V>> cache;
+
+    private ClockNode<K, V>[] clock;
+
+    // Written without holding the lock by readers, it is only a hint for the hand
+    private boolean[] referenced;
+
+    private int hand;
+
+    // Stack of free slots
+    private int[] freeSlots;
+
+    private int freeSlotsCount;
+
+    private NodeList<ClockNode<K, V>> disk;
+
+    public ClockCache() {
+        super();
+        initializeClock();
+    }
+
+    public ClockCache(CacheBuilder builder) {
+        super(builder);
+        initializeClock();
+    }
+
+    protected void initializeStrategy() {
+        setCacheStrategy(CLOCK);
+        cache = new ConcurrentHashMap<K, ClockNode<K, V>>();
+        disk = new NodeList<ClockNode<K, V>>("Disk");
+        logger.debug("{} | {} Cache initialized", this, cacheStrategy);
+    }
+
+    // The clock size is known only after the store is configured
+    @SuppressWarnings("unchecked")
+    private void initializeClock() {
+        int capacity = store.getMaxMemorySize();
+        clock = new ClockNode[capacity];
+        referenced = new boolean[capacity];
+        freeSlots = new int[capacity];
+        resetClock();
+    }
+
+    private void resetClock() {
+        for (int slot = 0; slot < clock.length; slot++) {
+            clock[slot] = null;
+            referenced[slot] = false;
+            // pop the slots in ascending order
+            freeSlots[slot] = clock.length - 1 - slot;
+        }
+        freeSlotsCount = clock.length;
+        hand = 0;
+    }
+
+    protected synchronized void doPut(K key, V value) {
+
+        logger.debug("{} | Adding object with key {} ", this, key);
+
+        ClockNode<K, V> cachedNode = cache.get(key);
+        if (cachedNode != null) {
+            if (isUpdateExisting())
+                cachedNode.cacheEntry.updateValue(value);
+            return;
+        }
+
+        int slot = takeSlot();
+
+        // Memory has room: the store will keep the new value in memory
+        CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store);
+        ClockNode<K, V> newNode = new ClockNode<K, V>(newEntry);
+        placeInClock(newNode, slot, false);
+        cache.put(key, newNode);
+        size++;
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+    }
+
+    protected V doGet(K key) {
+
+        logger.debug("{} | Getting object with key {} ", this, key);
+
+        ClockNode<K, V> cachedNode = cache.get(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        int slot = cachedNode.slot;
+        if (slot != NOT_IN_MEMORY) {
+            V value = cachedNode.cacheEntry.getMemoryValue();
+            if (value != null) {
+                referenced[slot] = true;
+                return value;
+            }
+        }
+
+        // Disk hit (or moved to disk meanwhile)
+        return getFromDisk(key);
+    }
+
+    private synchronized V getFromDisk(K key) {
+        ClockNode<K, V> cachedNode = cache.get(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        if (cachedNode.slot == NOT_IN_MEMORY) {
+            if (!prefetch(key, cachedNode.cacheEntry)) {
+                remove(key);
+                return null;
+            }
+            disk.remove(cachedNode.diskNode);
+            cachedNode.diskNode = null;
+            int slot = takeSlot();
+            cachedNode.cacheEntry.switchStore();
+            placeInClock(cachedNode, slot, true);
+        } else {
+            referenced[cachedNode.slot] = true;
+        }
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+
+        return cachedNode.cacheEntry.getValue();
+    }
+
+    /**
+     * Return a free slot, moving the entry under the hand out of memory if the clock is full
+     */
+    private int takeSlot() {
+        if (freeSlotsCount > 0)
+            return freeSlots[--freeSlotsCount];
+
+        // Sweep: give a second chance to referenced entries
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % clock.length;
+        }
+        int slot = hand;
+        hand = (hand + 1) % clock.length;
+
+        moveOutOfMemory(clock[slot]);
+        return slot;
+    }
+
+    private void placeInClock(ClockNode<K, V> node, int slot, boolean isReferenced) {
+        clock[slot] = node;
+        referenced[slot] = isReferenced;
+        node.slot = slot;
+    }
+
+    /**
+     * Move to disk if enabled (dropping the oldest disk entry when full), otherwise evict
+     */
+    private void moveOutOfMemory(ClockNode<K, V> node) {
+        clock[node.slot] = null;
+        node.slot = NOT_IN_MEMORY;
+        if (store.isDiskEnabled()) {
+            if (disk.size() == store.getMaxDiskSize())
+                evict(disk.pollFirst().getItem());
+            node.cacheEntry.switchStore();
+            node.diskNode = new Node<ClockNode<K, V>>(node);
+            disk.addLast(node.diskNode);
+            logger.debug("  {} moved to disk", node.getKey());
+        } else {
+            evict(node);
+        }
+    }
+
+    private void evict(ClockNode<K, V> node) {
+        cache.remove(node.getKey());
+        node.cacheEntry.discardFromStore();
+        size--;
+        recordEviction();
+        logger.debug("  {} evicted", node.getKey());
+    }
+
+    public boolean containsKey(K key) {
+        return cache.containsKey(key);
+    }
+
+    public synchronized V remove(K key) {
+
+        logger.debug("{} | Removing object with key {} ", this, key);
+
+        ClockNode<K, V> cachedNode = cache.remove(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        if (cachedNode.slot == NOT_IN_MEMORY) {
+            disk.remove(cachedNode.diskNode);
+        } else {
+            clock[cachedNode.slot] = null;
+            referenced[cachedNode.slot] = false;
+            freeSlots[freeSlotsCount++] = cachedNode.slot;
+        }
+        size--;
+        return cachedNode.cacheEntry.removeFromStore();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        store.clear();
+        disk.clear();
+        resetClock();
+        size = 0;
+    }
+
+    @Override
+    public String internals() {
+        StringBuilder sb = new StringBuilder("  Clock | ");
+        for (int slot = 0; slot < clock.length; slot++) {
+            if (slot == hand)
+                sb.append("> ");
+            if (clock[slot] != null)
+                sb.append(clock[slot].getKey()).append(referenced[slot] ? "(1) " : "(0) ");
+        }
+        sb.append(" Disk | ");
+        for (Node<ClockNode<K, V>> node = disk.first(); node != null; node = node.getNext())
+            sb.append(node.getItem().getKey()).append(" ");
+        sb.append("|   ").append(store.toString());
+        return sb.toString();
+    }
+
+    @Override
+    protected CacheEntry<K, V> getEntry(K key) {
+        ClockNode<K, V> cachedNode = cache.get(key);
+        return cachedNode == null ? null : cachedNode.cacheEntry;
+    }
+
+    // Method used for unit testing purposes!
+    public boolean isEntryDiskStored(K key) {
+        ClockNode<K, V> foundNode = cache.get(key);
+        if (foundNode == null)
+            throw new NoSuchElementException(key + " not in cache");
+        else
+            return foundNode.cacheEntry.isDiskStored();
+    }
+
+}
@@ -1,43 +1,82 @@
 package com.sbiz.cache.implementations;
 
-import java.io.Serializable;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.Map.Entry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.sbiz.cache.CacheBuilder;
 import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.Manifest;
 
 /**
- * Least-frequently used (LFU) implementation of a cache
+ * Least-frequently used (LFU) implementation of a cache <br><br>
+ * All operations are O(1): entries are kept in a doubly-linked list of frequency nodes (lowest first),
+ * each frequency node holding a doubly-linked list of the entries having that frequency (oldest first).
+ * This gives a total order of the entries: the first one is evicted and the last ones are kept in memory.
+ * Entries above the <code>leastFrequentMemory</code> pointer are stored in memory, the ones below on disk.
  * Sources if inspiration:
  * 	- http://www.javarticles.com/2012/06/lfu-cache.html
+ * 	- http://dhruvbird.com/lfu.pdf
  */
-public class LFUCache<K, V extends Serializable> extends ACache<K, V> {
+public class LFUCache<K, V> extends ACache<K, V> {
 
-	private class Node<Key, Value extends Serializable> {
-		public CacheEntry<Key, Value> cacheEntry;
-		public int frequency;
+	private class Node<Key, Value> {
+		CacheEntry<Key, Value> cacheEntry;
+		FrequencyNode<Key, Value> frequencyNode;
+		Node<Key, Value> previous;
+		Node<Key, Value> next;
 
-		public Node(CacheEntry<Key, Value> cacheEntry, int frequency) {
-			this.cacheEntry = cacheEntry; 
-			this.frequency = frequency;
+		public Node(CacheEntry<Key, Value> cacheEntry) {
+			this.cacheEntry = cacheEntry;
 		}
 
 		public Key getKey() {
             return cacheEntry.getKey();
         }
+
+		public int getFrequency() {
+			return frequencyNode.frequency;
+		}
+	}
+
+	private class FrequencyNode<Key, Value> {
+		int frequency;
+		FrequencyNode<Key, Value> previous;
+		FrequencyNode<Key, Value> next;
+		// oldest entry
+		Node<Key, Value> first;
+		// newest entry
+		Node<Key, Value> last;
+
+		public FrequencyNode(int frequency) {
+			this.frequency = frequency;
+		}
 	}
 
 	private ConcurrentHashMap<K, Node<K, V>> cache;
 
 	/**
-	 * This helps keeping the frequencies
+	 * Head of the frequencies list
+	 */
+	private FrequencyNode<K, V> lowestFrequency;
+
+	/**
+	 * Tail of the frequencies list
+	 */
+	private FrequencyNode<K, V> highestFrequency;
+
+	/**
+	 * Last frequency left empty, reused by the next new frequency so that hits don't allocate
 	 */
-	private ConcurrentHashMap<Integer, Set<K>> frequencies;
+	private FrequencyNode<K, V> spareFrequency;
+
+	/**
+	 * First entry stored in memory. All the entries before it are stored on disk.
+	 */
+	private Node<K, V> leastFrequentMemory;
 
 	public LFUCache() {
 		super();
@@ -47,145 +86,253 @@ public class LFUCache<K, V extends Serializable> extends ACache<K, V> {
 		super(builder);
 	}
 
+	@Override
+	protected boolean isWeightSupported() {
+		return true;
+	}
+
+	@Override
+	protected boolean isExpirationSupported() {
+		return true;
+	}
+
+	@Override
+	protected boolean isWarmRestartSupported() {
+		return true;
+	}
+
+	// Lowest frequency first, oldest first within a frequency
+	@Override
+	protected void writeManifest(Manifest<K, V> manifest) throws IOException {
+		for (FrequencyNode<K, V> frequencyNode = lowestFrequency; frequencyNode != null; frequencyNode = frequencyNode.next) {
+			for (Node<K, V> node = frequencyNode.first; node != null; node = node.next)
+				manifest.write(node.cacheEntry, frequencyNode.frequency);
+		}
+	}
+
+	// Disk entries are restored first, then the preloaded memory ones
+	@Override
+	protected void restore(CacheEntry<K, V> cacheEntry, int frequency) {
+		Node<K, V> restoredNode = new Node<K, V>(cacheEntry);
+		FrequencyNode<K, V> frequencyNode = highestFrequency;
+		// written in increasing frequencies
+		if (frequencyNode == null || frequencyNode.frequency < frequency)
+			frequencyNode = addFrequencyAfter(frequencyNode, frequency);
+		link(restoredNode, frequencyNode);
+		cache.put(cacheEntry.getKey(), restoredNode);
+		if (!cacheEntry.isDiskStored() && leastFrequentMemory == null)
+			leastFrequentMemory = restoredNode;
+		size++;
+
+		// the memory and disk may be smaller than when the entries were written
+		while (store.isMemoryOverflow() && demoteLeastFrequentMemory())
+			;
+		trim();
+	}
+
 	protected void initializeStrategy() {
 		setCacheStrategy(LFU);
-		frequencies = new ConcurrentHashMap<Integer, Set<K>>();
 		cache = new ConcurrentHashMap<K, Node<K, V>>();
+		lowestFrequency = null;
+		highestFrequency = null;
+		leastFrequentMemory = null;
 		logger.debug("{} | {} Cache initialized", this, cacheStrategy);
 	}
 
-	public synchronized void put(K key, V value) {
+	protected synchronized void doPut(K key, V value) {
 
 		logger.debug("{} | Adding object with key {} ", this, key);
-		
-		if (cache.containsKey(key)) {
-			if (isUpdateExisting())
-					cache.get(key).cacheEntry.updateValue(value);
+
+		expireEntries();
+
+		int weight = store.weigh(key, value);
+
+		Node<K, V> cachedNode = cache.get(key);
+		// an expired entry is replaced like a missing one
+		if (cachedNode != null && isExpired(cachedNode.cacheEntry)) {
+			removeNode(cachedNode, false);
+			cachedNode = null;
+		}
+		if (cachedNode != null) {
+			if (isUpdateExisting()) {
+				if (store.isTooHeavy(weight)) {
+					remove(key);
+					return;
+				}
+				cachedNode.cacheEntry.updateValue(value);
+				scheduleExpiration(cachedNode.cacheEntry, value, false);
+				// a heavier value may not fit anymore
+				while (store.isMemoryOverflow() && demoteLeastFrequentMemory())
+					;
+				trim();
+			}
 			return;
 		}
 
-		// new object -> add to the least frequent list
-		Set<K> leastFrequents = frequencies.get(0);
-		if (leastFrequents == null)
-			leastFrequents = Collections.synchronizedSet(new LinkedHashSet<K>());
+		if (store.isTooHeavy(weight)) {
+			logger.debug("  {} too heavy to be cached", key);
+			return;
+		}
 
 		if (size == getMaxSize()) {
 			evictLeastFrequentItem();
 		}
 
-		leastFrequents.add(key);
+		// New entries have the lowest frequency and are added as the newest entry of frequency 0.
+		// That is above the memory boundary unless a more frequent entry is on disk:
+		// make room by moving the boundary entries to disk.
+		Node<K, V> mostFrequentDisk = leastFrequentMemory == null ? last() : lower(leastFrequentMemory);
+		boolean memoryAllowed = !store.isDiskEnabled() || mostFrequentDisk == null || mostFrequentDisk.getFrequency() == 0;
+		if (memoryAllowed) {
+			while (!store.fitsInMemory(weight) && leastFrequentMemory != null
+					&& leastFrequentMemory.getFrequency() == 0 && demoteLeastFrequentMemory())
+				;
+		}
+		if (!store.isDiskEnabled()) {
+			while (size > 0 && !store.fitsInMemory(weight))
+				evictLeastFrequentItem();
+		}
+
+		// The store decides where the value goes: memory if it has room, disk otherwise
+		CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store, memoryAllowed);
+		scheduleExpiration(newEntry, value, true);
+		Node<K, V> newNode = new Node<K, V>(newEntry);
+
+		FrequencyNode<K, V> frequencyNode = lowestFrequency;
+		if (frequencyNode == null || frequencyNode.frequency != 0)
+			frequencyNode = addFrequencyAfter(null, 0);
+		link(newNode, frequencyNode);
 
-		frequencies.put(0, leastFrequents);
-		
-		CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store);
+		if (!newEntry.isDiskStored() && (leastFrequentMemory == null || leastFrequentMemory.getFrequency() > 0))
+			// nothing in memory below: the new entry is the first one in memory
+			leastFrequentMemory = newNode;
 
-		Node<K, V> newNode = new Node<K, V>(newEntry, 0);
 		cache.put(key, newNode);
 		size++;
 
-		super.put(key, value);
+		// Demoted entries may exceed the disk limits
+		trim();
+
+		if (isPrintInternalsDebug())
+			logger.debug("  Strategy info: {}", internals());
 	}
 
-	private synchronized void evictLeastFrequentItem() {
-		// make some room for new node
-		// wost case scenario: all items are on highest frequency 
-		//     and we have to go through all freqeuncies and all items in the last frequency
-		boolean evicted = false;
-		int index = 0;
-		while (!evicted) {
-			Set<K> frequency = frequencies.get(index);
-			if (!frequency.isEmpty()) {
-				Iterator<K> keysIterator = frequency.iterator();
-				K lastKey = keysIterator.next();
-
-				// we used LinkedHashSet to make sure we delete the last added item on the frequency
-				//   this ensures us that if we delete from a frequency set that has memory and disk items
-				//   we delete a disk item (which is the last added one)
-				while (keysIterator.hasNext()) {
-					lastKey = keysIterator.next();
-				}
+	/**
+	 * Move the boundary entry to disk. Returns false if there is nothing to move.
+	 */
+	private boolean demoteLeastFrequentMemory() {
+		if (!store.isDiskEnabled() || leastFrequentMemory == null)
+			return false;
+		Node<K, V> demoted = leastFrequentMemory;
+		leastFrequentMemory = higher(demoted);
+		demoted.cacheEntry.switchStore();
+		logger.debug("  {} moved to disk", demoted.getKey());
+		return true;
+	}
 
-				frequency.remove(lastKey);
-				cache.get(lastKey).cacheEntry.removeFromStore();
-				cache.remove(lastKey);
-				evicted = true;
+	/**
+	 * Move the most frequent disk entries to memory while they fit
+	 */
+	private void promoteMostFrequentDisk() {
+		Node<K, V> mostFrequentDisk = leastFrequentMemory == null ? last() : lower(leastFrequentMemory);
+		while (mostFrequentDisk != null && mostFrequentDisk.cacheEntry.isDiskStored()
+				&& store.fitsInMemory(mostFrequentDisk.cacheEntry.getWeight()) && !isExpired(mostFrequentDisk.cacheEntry)) {
+			Node<K, V> node = mostFrequentDisk;
+			mostFrequentDisk = lower(node);
+			if (!prefetch(node.getKey(), node.cacheEntry)) {
+				removeNode(node, false);
+				continue;
 			}
-			index++;
+			node.cacheEntry.switchStore();
+			leastFrequentMemory = node;
 		}
+	}
+
+	/**
+	 * Evict the least frequent entries while the disk (or the memory, without disk) is over its limits
+	 */
+	private void trim() {
+		while (store.isDiskOverflow())
+			evictLeastFrequentItem();
+		if (!store.isDiskEnabled()) {
+			while (store.isMemoryOverflow())
+				evictLeastFrequentItem();
+		}
+	}
+
+	private synchronized void evictLeastFrequentItem() {
+		// the first entry of the lowest frequency is the least frequent and oldest one
+		Node<K, V> evicted = lowestFrequency.first;
+		if (evicted == leastFrequentMemory)
+			leastFrequentMemory = higher(evicted);
+
+		unlink(evicted);
+		cache.remove(evicted.getKey());
+		descheduleExpiration(evicted.cacheEntry);
+		evicted.cacheEntry.discardFromStore();
 		size--;
+		recordEviction();
+		logger.debug("  {} evicted", evicted.getKey());
 	}
 
-	public synchronized V get(K key) {
+	protected synchronized V doGet(K key) {
 
 		logger.debug("{} | Getting object with key {} ", this, key);
 
+		expireEntries();
+
 		Node<K, V> cachedNode = cache.get(key);
 		if (cachedNode == null) {
 			return null;
 		}
+		if (isExpired(cachedNode.cacheEntry)) {
+			removeNode(cachedNode, false);
+			return null;
+		}
+		// an unreadable disk value is dropped before the frequencies change
+		if (!prefetch(key, cachedNode.cacheEntry)) {
+			removeNode(cachedNode, false);
+			return null;
+		}
 
-		// remove from current frequency
-		frequencies.get(cachedNode.frequency).remove(key);
-
-		// increase node freqeuncy
-		cachedNode.frequency++;
-
-		// add the new freqeuncy list if it does not exist
-		if (!frequencies.containsKey(cachedNode.frequency))
-			frequencies.put(cachedNode.frequency, Collections.synchronizedSet(new LinkedHashSet<K>()));
-
-		// add the current key to the frequency list
-		frequencies.get(cachedNode.frequency).add(key);
-
-		// see if other value should be sent to disk
-		if (store.isDiskEnabled() && cachedNode.cacheEntry.isDiskStored()) {
-			// we have a disk entry - we must see if it overpassed any memory stored value
-			// this happens only if first item in previous (not empty frequency) is in memory
-			boolean overpassed = false;
-			boolean setFound = false;
-			boolean stopSearch = false;
-			CacheEntry<K, V> lastMemoryEntry = null; //used for finding the last memory entry
-			int startingIndex = cachedNode.frequency - 1;
-
-			for (int index = startingIndex; index >=0 && !setFound; index--) {
-				Set<K> currentFrequency = frequencies.get(index);
-				if (!currentFrequency.isEmpty()) {
-					// found the previous not empty frequency
-					setFound = true;
-					Iterator<K> keysIterator = currentFrequency.iterator();
-					
-					// look until we've seen all elements or found the key to move to disk
-					while (keysIterator.hasNext() && !stopSearch) {
-						CacheEntry<K, V> nextEntry = cache.get(keysIterator.next()).cacheEntry;
-						if (!nextEntry.isDiskStored()) {
-							//we found the first entry that is stored in memory
-							overpassed = true;
-							//if this is the last memory entry next iteration will not enter this block of code
-							lastMemoryEntry = nextEntry; 
-						}
-						if (overpassed && nextEntry.isDiskStored()) {
-							//we've already passed all memory items. we can stop.
-							stopSearch = true;
-						}
-					}
-
-
-				}
-			}
-
-			if (lastMemoryEntry != null) {
-				//switch stores
-				lastMemoryEntry.switchStore(); //move to disk
+		Node<K, V> higherNode = higher(cachedNode);
+
+		increaseFrequency(cachedNode);
+
+		if (!cachedNode.cacheEntry.isDiskStored()) {
+			// the node moved up, the next one becomes the memory boundary
+			if (cachedNode == leastFrequentMemory && higherNode != null)
+				leastFrequentMemory = higherNode;
+		} else if (leastFrequentMemory == null ? cachedNode == last()
+				: leastFrequentMemory.getFrequency() <= cachedNode.getFrequency()) {
+			// disk entry passed over the memory boundary: move the boundary entries to disk until it fits
+			int weight = cachedNode.cacheEntry.getWeight();
+			while (!store.fitsInMemory(weight) && leastFrequentMemory != null
+					&& leastFrequentMemory != cachedNode && demoteLeastFrequentMemory())
+				;
+			if (store.fitsInMemory(weight)) {
 				cachedNode.cacheEntry.switchStore(); //move in memory
+				if (leastFrequentMemory == null || leastFrequentMemory == cachedNode
+						|| leastFrequentMemory.getFrequency() > cachedNode.getFrequency())
+					leastFrequentMemory = cachedNode;
+			} else {
+				// the more frequent memory entries leave no room: stay on disk, below them
+				leastFrequentMemory = higher(cachedNode);
 			}
-
+			trim();
 		}
 
-		return cachedNode.cacheEntry.getValue();
+		if (isPrintInternalsDebug())
+			logger.debug("  Strategy info: {}", internals());
+
+		V value = cachedNode.cacheEntry.getValue();
+		recordAccess(key, cachedNode.cacheEntry, value);
+		return value;
 	}
 
 	public boolean containsKey(K key) {
-		return cache.contains(key);
+		Node<K, V> cachedNode = cache.get(key);
+		return cachedNode != null && !isExpired(cachedNode.cacheEntry);
 	}
 
 	public synchronized V remove(K key) {
@@ -197,49 +344,185 @@ public class LFUCache<K, V extends Serializable> extends ACache<K, V> {
 			return null;
 		}
 
-		CacheEntry<K, V> cachedEntry = cache.get(key).cacheEntry;
-
-		// if this is memory entry move another entry from disk to memory
-		if (!cachedEntry.isDiskStored() && store.isDiskEnabled()) {
-			
-			//find the first previous disk entry
-			CacheEntry<K, V> firstPrevEntry = null;
-			
-			//start from this frequency and item backwards
-			int currentFrequency = cachedNode.frequency;
-			
-			boolean passedCurrent = false;
-
-			while (currentFrequency >= 0 && firstPrevEntry == null) {
-
-				Set<K> currentFrequencySet = frequencies.get(cachedNode.frequency);
-
-				Iterator<K> keysIterator = currentFrequencySet.iterator();
-				while (keysIterator.hasNext() && firstPrevEntry == null) {
-					CacheEntry<K, V> currentEntry = cache.get(keysIterator.next()).cacheEntry;
-					
-					if (passedCurrent && currentEntry.isDiskStored()) {
-						firstPrevEntry = currentEntry;
-					}
-
-					if (currentEntry.getKey().equals(cachedEntry.getKey())) {
-						passedCurrent = true;
-					}
-				}
+		// the value of an expired entry is not read
+		return removeNode(cachedNode, !isExpired(cachedNode.cacheEntry));
+	}
 
-				currentFrequency--;
-			}
+	/**
+	 * Values are discarded without being read, disk ones in disk order, and the freed memory
+	 * is filled from disk once for the batch
+	 */
+	@Override
+	public synchronized void removeAll(Collection<? extends K> keys) {
+		List<CacheEntry<K, V>> cacheEntries = new ArrayList<CacheEntry<K, V>>();
+		for (K key : keys) {
+			Node<K, V> cachedNode = cache.get(key);
+			if (cachedNode != null)
+				cacheEntries.add(cachedNode.cacheEntry);
+		}
+		store.sortByLocation(cacheEntries);
 
-			if (firstPrevEntry != null) {
-				firstPrevEntry.switchStore();
-			}
+		boolean memoryFreed = false;
+		for (CacheEntry<K, V> cacheEntry : cacheEntries) {
+			memoryFreed |= !cacheEntry.isDiskStored();
+			removeNode(cache.get(cacheEntry.getKey()), false, false);
 		}
+		if (memoryFreed)
+			promoteMostFrequentDisk();
+	}
 
-		frequencies.get(cachedNode.frequency).remove(key);
-		V returnValue = store.remove(cachedEntry);
-		cache.remove(key);
+	/**
+	 * Remove the node from the cache and its value from the store (read only if <code>read</code>)
+	 */
+	private V removeNode(Node<K, V> cachedNode, boolean read) {
+		return removeNode(cachedNode, read, true);
+	}
 
-		return returnValue;
+	private V removeNode(Node<K, V> cachedNode, boolean read, boolean promote) {
+		boolean memoryStored = !cachedNode.cacheEntry.isDiskStored();
+		if (cachedNode == leastFrequentMemory)
+			leastFrequentMemory = higher(cachedNode);
+
+		unlink(cachedNode);
+		cache.remove(cachedNode.getKey());
+		size--;
+		descheduleExpiration(cachedNode.cacheEntry);
+		V removedValue = null;
+		if (read)
+			removedValue = cachedNode.cacheEntry.removeFromStore();
+		else
+			cachedNode.cacheEntry.discardFromStore();
+
+		// if this was a memory entry move the most frequent disk entries to memory
+		if (memoryStored && promote)
+			promoteMostFrequentDisk();
+
+		return removedValue;
+	}
+
+	@Override
+	protected void expire(CacheEntry<K, V> cacheEntry) {
+		Node<K, V> cachedNode = cache.get(cacheEntry.getKey());
+		if (cachedNode != null && cachedNode.cacheEntry == cacheEntry)
+			removeNode(cachedNode, false, false);
+	}
+
+	@Override
+	protected void afterExpiration() {
+		promoteMostFrequentDisk();
+	}
+
+	/**
+	 * Move the node at the end of the next frequency
+	 */
+	private void increaseFrequency(Node<K, V> node) {
+		FrequencyNode<K, V> current = node.frequencyNode;
+		FrequencyNode<K, V> next = current.next;
+		if (next == null || next.frequency != current.frequency + 1)
+			next = addFrequencyAfter(current, current.frequency + 1);
+		unlink(node);
+		link(node, next);
+	}
+
+	/**
+	 * Create a new frequency node after <code>previous</code> (or as the lowest one if <code>null</code>)
+	 */
+	private FrequencyNode<K, V> addFrequencyAfter(FrequencyNode<K, V> previous, int frequency) {
+		FrequencyNode<K, V> frequencyNode = spareFrequency;
+		if (frequencyNode == null) {
+			frequencyNode = new FrequencyNode<K, V>(frequency);
+		} else {
+			spareFrequency = null;
+			frequencyNode.frequency = frequency;
+		}
+		frequencyNode.previous = previous;
+		if (previous == null) {
+			frequencyNode.next = lowestFrequency;
+			lowestFrequency = frequencyNode;
+		} else {
+			frequencyNode.next = previous.next;
+			previous.next = frequencyNode;
+		}
+		if (frequencyNode.next != null)
+			frequencyNode.next.previous = frequencyNode;
+		else
+			highestFrequency = frequencyNode;
+		return frequencyNode;
+	}
+
+	/**
+	 * Add the node as the newest one of the frequency
+	 */
+	private void link(Node<K, V> node, FrequencyNode<K, V> frequencyNode) {
+		node.frequencyNode = frequencyNode;
+		node.previous = frequencyNode.last;
+		node.next = null;
+		if (frequencyNode.last == null)
+			frequencyNode.first = node;
+		else
+			frequencyNode.last.next = node;
+		frequencyNode.last = node;
+	}
+
+	/**
+	 * Remove the node from its frequency. Frequencies left empty are removed as well.
+	 */
+	private void unlink(Node<K, V> node) {
+		FrequencyNode<K, V> frequencyNode = node.frequencyNode;
+		if (node.previous == null)
+			frequencyNode.first = node.next;
+		else
+			node.previous.next = node.next;
+		if (node.next == null)
+			frequencyNode.last = node.previous;
+		else
+			node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+		node.frequencyNode = null;
+
+		if (frequencyNode.first == null) {
+			if (frequencyNode.previous == null)
+				lowestFrequency = frequencyNode.next;
+			else
+				frequencyNode.previous.next = frequencyNode.next;
+			if (frequencyNode.next != null)
+				frequencyNode.next.previous = frequencyNode.previous;
+			else
+				highestFrequency = frequencyNode.previous;
+			frequencyNode.previous = null;
+			frequencyNode.next = null;
+			spareFrequency = frequencyNode;
+		}
+	}
+
+	/**
+	 * Next entry in the eviction order (more frequent or newer)
+	 */
+	private Node<K, V> higher(Node<K, V> node) {
+		if (node.next != null)
+			return node.next;
+		FrequencyNode<K, V> nextFrequency = node.frequencyNode.next;
+		return nextFrequency == null ? null : nextFrequency.first;
+	}
+
+	/**
+	 * Last entry in the eviction order (most frequent and newest)
+	 */
+	private Node<K, V> last() {
+		return highestFrequency == null ? null : highestFrequency.last;
+	}
+
+	/**
+	 * Previous entry in the eviction order (less frequent or older)
+	 */
+	private Node<K, V> lower(Node<K, V> node) {
+		if (node == null)
+			return null;
+		if (node.previous != null)
+			return node.previous;
+		FrequencyNode<K, V> previousFrequency = node.frequencyNode.previous;
+		return previousFrequency == null ? null : previousFrequency.last;
 	}
 
 	public boolean isEmpty() {
@@ -252,31 +535,43 @@ public class LFUCache<K, V extends Serializable> extends ACache<K, V> {
 
 	public synchronized void clear() {
 		cache.clear();
-		frequencies.clear();
 		store.clear();
+		clearExpiration();
+		lowestFrequency = null;
+		highestFrequency = null;
+		leastFrequentMemory = null;
 		size = 0;
 	}
 
 	@Override
 	public String internals() {
-		StringBuilder sb = new StringBuilder();
-		for (Entry<K, Node<K, V>> entry : cache.entrySet()) {
-			Node<K, V> node = entry.getValue();
-			sb.append(node.getKey())
-				.append("(")
-					.append(node.frequency).append("|")
+		StringBuilder sb = new StringBuilder("  Low | ");
+		for (FrequencyNode<K, V> frequencyNode = lowestFrequency; frequencyNode != null; frequencyNode = frequencyNode.next) {
+			sb.append(frequencyNode.frequency).append(": ");
+			for (Node<K, V> node = frequencyNode.first; node != null; node = node.next) {
+				sb.append(node.getKey())
+					.append("[")
 					.append(node.cacheEntry.isDiskStored() ? "D" : "M")
-				.append(") ");
-		}
-		sb.append(" | ");
-		for (Entry<Integer, Set<K>> entry : frequencies.entrySet()) {
-			sb.append(entry.getKey()).append(":");
-			for (K key : entry.getValue()) {
-				sb.append(key).append(" ");
+					.append("] ");
 			}
 		}
-
+		sb.append("| High    |   ").append(store.toString());
 		return sb.toString();
 	}
 
-}
\ No newline at end of file
+	@Override
+	protected CacheEntry<K, V> getEntry(K key) {
+		Node<K, V> cachedNode = cache.get(key);
+		return cachedNode == null ? null : cachedNode.cacheEntry;
+	}
+
+	// Method used for unit testing purposes!
+	public boolean isEntryDiskStored(K key) {
+		Node<K, V> foundNode = cache.get(key);
+		if (foundNode == null)
+			throw new NoSuchElementException(key + " not in cache");
+		else
+			return foundNode.cacheEntry.isDiskStored();
+	}
+
+}
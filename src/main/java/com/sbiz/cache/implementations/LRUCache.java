@@ -1,11 +1,17 @@
 package com.sbiz.cache.implementations;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import com.sbiz.cache.CacheBuilder;
 import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.Manifest;
+import com.sbiz.cache.utils.ReadBuffer;
 
 /**
  * Least-recently used (LRU) implementation of a cache
@@ -13,9 +19,9 @@ import com.sbiz.cache.utils.CacheEntry;
  *  - https://stackoverflow.com/a/23772103/1531903
  *  - https://commons.apache.org/proper/commons-collections/apidocs/src-html/org/apache/commons/collections4/map/LRUMap.html
  */
-public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
+public class LRUCache<K, V> extends ACache<K, V> {
 
-    private class Node<Key, Value extends Serializable> {
+    private class Node<Key, Value> {
         Node<Key, Value> previous;
         Node<Key, Value> next;
         CacheEntry<Key, Value> cacheEntry;
@@ -36,6 +42,17 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
     private Node<K, V> leastRecently;
     private Node<K, V> mostRecently;
     private Node<K, V> leastRecentlyMemory;
+
+    // When enabled, memory hits are only recorded here and replayed later under the lock
+    private ReadBuffer<Node<K, V>> readBuffer;
+
+    private final Consumer<Node<K, V>> replayRead = new Consumer<Node<K, V>>() {
+        public void accept(Node<K, V> node) {
+            // skip nodes removed or moved to disk after the read was recorded
+            if (cache.get(node.getKey()) == node && !node.cacheEntry.isDiskStored())
+                moveToMostRecent(node);
+        }
+    };
     
     public LRUCache() {
         super();
@@ -43,6 +60,52 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
 
     public LRUCache(CacheBuilder builder) {
         super(builder);
+        if (builder.isBufferedReads())
+            readBuffer = new ReadBuffer<Node<K, V>>();
+    }
+
+    @Override
+    protected boolean isWeightSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean isExpirationSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean isWarmRestartSupported() {
+        return true;
+    }
+
+    // Least recent first: the disk entries come before the memory ones
+    @Override
+    protected void writeManifest(Manifest<K, V> manifest) throws IOException {
+        for (Node<K, V> node = leastRecently; size > 0 && node != null; node = node.next)
+            manifest.write(node.cacheEntry, 0);
+    }
+
+    // Disk entries are restored first, then the preloaded memory ones
+    @Override
+    protected void restore(CacheEntry<K, V> cacheEntry, int frequency) {
+        Node<K, V> restoredNode = new Node<K, V>(size == 0 ? null : mostRecently, null, cacheEntry);
+        cache.put(cacheEntry.getKey(), restoredNode);
+        if (size == 0)
+            leastRecently = restoredNode;
+        else
+            mostRecently.next = restoredNode;
+        mostRecently = restoredNode;
+        if (cacheEntry.isDiskStored())
+            leastRecentlyMemory = null;
+        else if (size == 0 || leastRecentlyMemory == null)
+            leastRecentlyMemory = restoredNode;
+        size++;
+
+        // the memory and disk may be smaller than when the entries were written
+        while (store.isMemoryOverflow() && demoteLeastRecentMemory())
+            ;
+        trim();
     }
 
     protected void initializeStrategy() {
@@ -54,71 +117,151 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
         logger.debug("{} | {} Cache initialized", this, cacheStrategy);
     }
 
-    public synchronized void put(K key, V value) {
+    protected synchronized void doPut(K key, V value) {
 
         logger.debug("{} | Adding object with key {} ", this, key);
 
-        if (cache.containsKey(key)) {
-            if (isUpdateExisting())
-                cache.get(key).cacheEntry.updateValue(value);
+        drainReadBuffer();
+        expireEntries();
+
+        int weight = store.weigh(key, value);
+
+        Node<K, V> cachedNode = cache.get(key);
+        // an expired entry is replaced like a missing one
+        if (cachedNode != null && isExpired(cachedNode.cacheEntry)) {
+            removeNode(cachedNode, false);
+            cachedNode = null;
+        }
+
+        if (cachedNode != null) {
+            if (isUpdateExisting()) {
+                if (store.isTooHeavy(weight)) {
+                    remove(key);
+                    return;
+                }
+                cachedNode.cacheEntry.updateValue(value);
+                scheduleExpiration(cachedNode.cacheEntry, value, false);
+                // a heavier value may not fit anymore
+                while (store.isMemoryOverflow() && demoteLeastRecentMemory())
+                    ;
+                trim();
+            }
+            return;
+        }
+
+        if (store.isTooHeavy(weight)) {
+            logger.debug("  {} too heavy to be cached", key);
             return;
         }
 
         // Based on LRU strategy new items should be most recent and stored in memory
-        // Move the least recent item from memory to disk
+        // Move the least recent items from memory to disk until the new one fits
         // Always update the stores before removing items
-        demoteLeastRecentMemory();
+        while (!store.fitsInMemory(weight) && demoteLeastRecentMemory())
+            ;
 
         // Now make sure we have space for the new value
 
-        // Delete the left-most entry and update the LRU pointer
-        if (size == getMaxSize()) {
-            // Remove from cache
-            cache.remove(leastRecently.getKey());
-
-            // Remove value from store
-            leastRecently.cacheEntry.removeFromStore();
-            leastRecently = leastRecently.next;
-            leastRecently.previous = null;
-
-            size--;
+        // Delete the left-most entries and update the LRU pointer
+        if (size == getMaxSize())
+            evictLeastRecent();
+        if (!store.isDiskEnabled()) {
+            while (size > 0 && !store.fitsInMemory(weight))
+                evictLeastRecent();
         }
         
         // Create a new cache Entry. This will add the value to either memory or disk depending on space availabilty
         CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store);
+        scheduleExpiration(newEntry, value, true);
 
         // Put the new node at the right-most end of the linked-list
-        Node<K, V> myNode = new Node<K, V>(mostRecently, null, newEntry);
-        mostRecently.next = myNode;
+        Node<K, V> myNode = new Node<K, V>(size == 0 ? null : mostRecently, null, newEntry);
         cache.put(key, myNode);
-        mostRecently = myNode;
 
-        // Update cache size and for the first added entry update the LRU pointer
+        // For the first added entry update the LRU pointers
         if (size == 0) {
             leastRecently = myNode;
             leastRecentlyMemory = myNode;
-            leastRecentlyMemory.next = myNode;
-            leastRecently.next = myNode;
+        } else {
+            mostRecently.next = myNode;
         }
+        mostRecently = myNode;
+        // The demotion may have moved the last memory entry to disk
+        if (leastRecentlyMemory == null)
+            leastRecentlyMemory = myNode;
         size++;
 
+        // Demoted entries may exceed the disk limits
+        trim();
+
         if (isPrintInternalsDebug())
             logger.debug("  Strategy info: {}", internals());
 
     }
 
-    public synchronized V get(K key) {
+    protected V doGet(K key) {
 
         logger.debug("{} | Getting object with key {} ", this, key);
 
+        if (readBuffer != null) {
+            // Memory hits don't need the lock: just record the read, the list is reordered later
+            Node<K, V> cachedNode = cache.get(key);
+            if (cachedNode == null) {
+                return null;
+            }
+            V value = cachedNode.cacheEntry.getMemoryValue();
+            // expired entries are removed under the lock
+            if (value != null && !isExpired(cachedNode.cacheEntry)) {
+                readBuffer.offer(cachedNode);
+                recordAccess(key, cachedNode.cacheEntry, value);
+                return value;
+            }
+        }
+
+        return getAndReorder(key);
+    }
+
+    private synchronized V getAndReorder(K key) {
+
+        drainReadBuffer();
+        expireEntries();
+
         Node<K, V> cachedNode = cache.get(key);
         if (cachedNode == null) {
             return null;
         }
+        if (isExpired(cachedNode.cacheEntry)) {
+            removeNode(cachedNode, false);
+            return null;
+        }
+        // an unreadable disk value is dropped before the list changes
+        if (!prefetch(key, cachedNode.cacheEntry)) {
+            removeNode(cachedNode, false);
+            return null;
+        }
+
+        moveToMostRecent(cachedNode);
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+
+        V value = cachedNode.cacheEntry.getValue();
+        recordAccess(key, cachedNode.cacheEntry, value);
+        return value;
+    }
+
+    // Replay the reads recorded without holding the lock
+    private synchronized void drainReadBuffer() {
+        if (readBuffer != null)
+            readBuffer.drain(replayRead);
+    }
+
+    // Move the node to the right-most end of the list, bringing it in memory if needed
+    private synchronized void moveToMostRecent(Node<K, V> cachedNode) {
 
         // If MRU leave the list as it is
         if (cachedNode.getKey().equals(mostRecently.getKey())) {
-            return mostRecently.cacheEntry.getValue();
+            return;
         }
 
         // Get the next and previous nodes
@@ -134,7 +277,7 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
                 leastRecentlyMemory = nextNode;
             else 
                 //update and move to disk leastRecentMemory
-                demoteLeastRecentMemory();
+                makeRoomInMemory(cachedNode);
             leastRecently = nextNode;
             
         } else if (!cachedNode.getKey().equals(mostRecently.getKey())) {
@@ -146,7 +289,7 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
                 
                 if (cachedNode.cacheEntry.isDiskStored())
                     // Current node on disk memory?
-                    demoteLeastRecentMemory();
+                    makeRoomInMemory(cachedNode);
                 else if (cachedNode.getKey().equals(leastRecentlyMemory.getKey())) {
                     // If the leastRecentlyMemory point to the next
                     leastRecentlyMemory = leastRecentlyMemory.next;
@@ -160,87 +303,194 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
         mostRecently.next = cachedNode;
         mostRecently = cachedNode;
         mostRecently.next = null;
+        if (leastRecentlyMemory == null)
+            leastRecentlyMemory = mostRecently;
 
         //if mostRecently was on disk -> switch to memory
-        if (mostRecently.cacheEntry.isDiskStored())
+        if (mostRecently.cacheEntry.isDiskStored()) {
             mostRecently.cacheEntry.switchStore();
+            trim();
+        }
 
-        if (isPrintInternalsDebug())
-            logger.debug("  Strategy info: {}", internals());
+    }
+
+    // Move least recent objects to disk until the node (moved out of the list) fits in memory
+    private void makeRoomInMemory(Node<K, V> cachedNode) {
+        while (!store.fitsInMemory(cachedNode.cacheEntry.getWeight()) && demoteLeastRecentMemory())
+            ;
+    }
+
+    // Move least recent object to disk. Returns false if there is nothing to move.
+    private synchronized boolean demoteLeastRecentMemory() {
+        if (!store.isDiskEnabled() || leastRecentlyMemory == null || leastRecentlyMemory.cacheEntry == null
+                || leastRecentlyMemory.cacheEntry.isDiskStored())
+            return false;
+        boolean movedToDisk = leastRecentlyMemory.cacheEntry.switchStore();
+        logger.debug("  {} moved to {}", leastRecentlyMemory.getKey(), (movedToDisk ? "disk" : "memory"));
+        leastRecentlyMemory = leastRecentlyMemory.next;
+        return true;
+    }
+
+    // Delete the left-most entry and update the LRU pointer
+    private void evictLeastRecent() {
+        Node<K, V> evictedNode = leastRecently;
+
+        // Remove from cache
+        cache.remove(evictedNode.getKey());
 
-        return cachedNode.cacheEntry.getValue();
+        // Remove value from store, without reading it
+        descheduleExpiration(evictedNode.cacheEntry);
+        evictedNode.cacheEntry.discardFromStore();
+        unlink(evictedNode);
 
+        size--;
+        recordEviction();
+        logger.debug("  {} evicted", evictedNode.getKey());
     }
 
-    // Move least recent object to disk
-    private synchronized void demoteLeastRecentMemory() {
-        if (store.isDiskEnabled() && store.isMemoryFull() ) {
-            boolean movedToDisk = leastRecentlyMemory.cacheEntry.switchStore();
-            logger.debug("  {} moved to {}", leastRecentlyMemory.getKey(), (movedToDisk ? "disk" : "memory"));
-            leastRecentlyMemory = leastRecentlyMemory.next;
+    // Evict the left-most entries while the disk is over its limits
+    private void trim() {
+        while (store.isDiskOverflow())
+            evictLeastRecent();
+        if (!store.isDiskEnabled()) {
+            while (store.isMemoryOverflow())
+                evictLeastRecent();
         }
     }
 
-    // Move least recent object to memory
+    // Move the most recent disk objects to memory while they fit
     private synchronized void promoteLeastRecentMemory() {
         if (store.isDiskEnabled()) {
-            Node<K, V> prevNode = leastRecentlyMemory.previous;
+            Node<K, V> prevNode = leastRecentlyMemory == null ? mostRecently : leastRecentlyMemory.previous;
             // see if leastRecentlyMemory is last and if previous is diskStored
-            if (prevNode != null && prevNode.cacheEntry.isDiskStored()) {
-                boolean moveToMemory = prevNode.cacheEntry.switchStore();
-                logger.debug("  {} moved to {}", prevNode.getKey(), (moveToMemory ? "disk" : "memory"));
-                leastRecentlyMemory = prevNode;
+            while (prevNode != null && prevNode.cacheEntry != null && prevNode.cacheEntry.isDiskStored()
+                    && store.fitsInMemory(prevNode.cacheEntry.getWeight()) && !isExpired(prevNode.cacheEntry)) {
+                Node<K, V> node = prevNode;
+                prevNode = prevNode.previous;
+                if (!prefetch(node.getKey(), node.cacheEntry)) {
+                    removeNode(node, false);
+                    continue;
+                }
+                boolean moveToMemory = node.cacheEntry.switchStore();
+                logger.debug("  {} moved to {}", node.getKey(), (moveToMemory ? "disk" : "memory"));
+                leastRecentlyMemory = node;
             }
         }
     }
 
     public boolean containsKey(K key) {
-        return cache.containsKey(key);
+        Node<K, V> cachedNode = cache.get(key);
+        return cachedNode != null && !isExpired(cachedNode.cacheEntry);
     }
 
     public synchronized V remove(K key) {
         logger.debug("{} | Removing object with key {} ", this, key);
 
+        drainReadBuffer();
+
         Node<K, V> currentNode = cache.get(key);
         if (currentNode == null) {
             return null;
         }
 
-        // Get the next and previous nodes
-        Node<K, V> nextNode = currentNode.next;
-        Node<K, V> previousNode = currentNode.previous;
+        // The value of an expired entry is not read
+        V removedValue = removeNode(currentNode, !isExpired(currentNode.cacheEntry));
+        
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+        
+        return removedValue;
+    }
 
-        // Remove the object from the cache
-        cache.remove(key);
+    /**
+     * Values are discarded without being read, disk ones in disk order, and the freed memory
+     * is filled from disk once for the batch
+     */
+    @Override
+    public synchronized void removeAll(Collection<? extends K> keys) {
+        drainReadBuffer();
+
+        List<CacheEntry<K, V>> cacheEntries = new ArrayList<CacheEntry<K, V>>();
+        for (K key : keys) {
+            Node<K, V> currentNode = cache.get(key);
+            if (currentNode != null)
+                cacheEntries.add(currentNode.cacheEntry);
+        }
+        store.sortByLocation(cacheEntries);
 
-        // If current node is in memory then promote one from disk (if possible) 
-        if (!currentNode.cacheEntry.isDiskStored())
-            promoteLeastRecentMemory(); 
+        boolean memoryFreed = false;
+        for (CacheEntry<K, V> cacheEntry : cacheEntries) {
+            memoryFreed |= !cacheEntry.isDiskStored();
+            removeNode(cache.get(cacheEntry.getKey()), false, false);
+        }
+        if (memoryFreed)
+            promoteLeastRecentMemory();
+    }
+
+    // Remove the node from the cache and its value from the store (read only if <code>read</code>)
+    private V removeNode(Node<K, V> node, boolean read) {
+        return removeNode(node, read, true);
+    }
+
+    private V removeNode(Node<K, V> node, boolean read, boolean promote) {
+        cache.remove(node.getKey());
+
+        boolean memoryStored = !node.cacheEntry.isDiskStored();
+        unlink(node);
+        size--;
+        descheduleExpiration(node.cacheEntry);
+        V removedValue = null;
+        if (read)
+            removedValue = node.cacheEntry.removeFromStore();
+        else
+            node.cacheEntry.discardFromStore();
+
+        // If the node was in memory then promote from disk (if possible)
+        if (memoryStored && promote)
+            promoteLeastRecentMemory();
+        return removedValue;
+    }
+
+    @Override
+    protected void expire(CacheEntry<K, V> cacheEntry) {
+        Node<K, V> cachedNode = cache.get(cacheEntry.getKey());
+        if (cachedNode != null && cachedNode.cacheEntry == cacheEntry)
+            removeNode(cachedNode, false, false);
+    }
+
+    @Override
+    protected void afterExpiration() {
+        promoteLeastRecentMemory();
+    }
 
-        if (currentNode.getKey().equals(mostRecently.getKey())) {
+    // Remove the node from the linked-list, keeping the LRU pointers up to date
+    private void unlink(Node<K, V> node) {
+        Node<K, V> nextNode = node.next;
+        Node<K, V> previousNode = node.previous;
+
+        if (node == leastRecentlyMemory)
+            leastRecentlyMemory = nextNode;
+
+        if (previousNode == null && nextNode == null) {
+            // Last entry: back to the initial state
+            leastRecently = new Node<K, V>(null, null, null);
+            mostRecently = leastRecently;
+            leastRecentlyMemory = leastRecently;
+        } else if (nextNode == null) {
             // MR
             previousNode.next = null;
-            currentNode.previous = null;
             mostRecently = previousNode;
-        } else if (currentNode.getKey().equals(leastRecently.getKey())) {
+        } else if (previousNode == null) {
             // LR
             nextNode.previous = null;
-            currentNode.next = null;
             leastRecently = nextNode;
         } else {
             // Middle
             previousNode.next = nextNode;
             nextNode.previous = previousNode;
-            currentNode.next = null;
-            currentNode.previous = null;
         }
-        size--;
-        V removedValue = currentNode.cacheEntry.removeFromStore();
-        
-        if (isPrintInternalsDebug())
-            logger.debug("  Strategy info: {}", internals());
-        
-        return removedValue;
+        node.next = null;
+        node.previous = null;
     }
 
     public boolean isEmpty() {
@@ -248,9 +498,13 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
     }
 
     public synchronized void clear() {
+        //forget recorded reads
+        drainReadBuffer();
+
         //clear map
         cache.clear();
         store.clear();
+        clearExpiration();
 
         //reinitilize internals 
         leastRecently = new Node<K, V>(null, null, null);
@@ -262,6 +516,8 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
     @Override
     public String internals() {
         StringBuffer sb = new StringBuffer("  Old | ");
+        if (size == 0)
+            return sb.append(" | New     |   ").append(store.toString()).toString();
         Node<K, V> current = leastRecently;
         sb.append(current.getKey())
             .append("[")
@@ -278,6 +534,12 @@ public class LRUCache<K, V extends Serializable> extends ACache<K, V> {
         return sb.toString();
     }
 
+    @Override
+    protected CacheEntry<K, V> getEntry(K key) {
+        Node<K, V> cachedNode = cache.get(key);
+        return cachedNode == null ? null : cachedNode.cacheEntry;
+    }
+
     // Method used for unit testing purposes!
     public boolean isEntryDiskStored(K key) {
         Node<K, V> foundNode = cache.get(key);
@@ -0,0 +1,100 @@
+package com.sbiz.cache.implementations;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.sbiz.cache.LoadingCache;
+
+/**
+ * {@link LoadingCache} on top of a cache (ex. LRUCache, LFUCache) <br><br>
+ * Misses go through {@link ACache#get(Object, Function)}: one thread loads the value while the others
+ * wait for it, then the value is put in the cache by the strategy like any other put.
+ */
+public class LoadingCacheWrapper<K, V> implements LoadingCache<K, V> {
+
+    private final ACache<K, V> cache;
+
+    private final Function<? super K, ? extends V> loader;
+
+    public LoadingCacheWrapper(ACache<K, V> cache, Function<? super K, ? extends V> loader) {
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    public V get(K key) {
+        return cache.get(key, loader);
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return cache.get(key, loader);
+    }
+
+    public V getIfPresent(K key) {
+        return cache.get(key);
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    public boolean containsKey(K key) {
+        return cache.containsKey(key);
+    }
+
+    public V remove(K key) {
+        return cache.remove(key);
+    }
+
+    /**
+     * Present values in one batch, then the missing ones loaded one by one
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> values = cache.getAll(keys);
+        for (K key : keys) {
+            if (!values.containsKey(key)) {
+                V value = cache.get(key, loader);
+                if (value != null)
+                    values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        cache.putAll(entries);
+    }
+
+    public void removeAll(Collection<? extends K> keys) {
+        cache.removeAll(keys);
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public void close() {
+        cache.close();
+    }
+
+    public long getLoadCount() {
+        return cache.getLoadCount();
+    }
+
+    public long getLoadFailureCount() {
+        return cache.getLoadFailureCount();
+    }
+
+    public double getAverageLoadPenalty() {
+        return cache.getAverageLoadPenalty();
+    }
+
+}
@@ -0,0 +1,299 @@
+package com.sbiz.cache.implementations;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.CacheStats;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.IoExecutors;
+
+/**
+ * Segmented Least-recently used (LRU) implementation of a cache <br><br>
+ * Keys are hashed into a number of independent {@link LRUCache} segments. Each segment has its own
+ * lock, linked list and share of the memory/disk sizes, so operations on different segments
+ * do not wait for each other. The LRU order is kept only within a segment (approximate LRU globally).
+ * Sources of inspiration:
+ *  - https://github.com/google/guava/blob/master/guava/src/com/google/common/cache/LocalCache.java
+ */
+public class SegmentedLRUCache<K, V> extends ACache<K, V> {
+
+    private LRUCache<K, V>[] segments;
+
+    private int segmentMask;
+
+    // Shared refresh pool created here, shut down on close
+    private ExecutorService ownRefreshExecutor;
+
+    public SegmentedLRUCache() {
+        this(new CacheBuilder().segments(Runtime.getRuntime().availableProcessors()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public SegmentedLRUCache(CacheBuilder builder) {
+        // the segments hold the entries, each one with its own disk folder (and restores its own entries)
+        super(new CacheBuilder(builder).memoryOnly());
+        // each segment records its own statistics, merged by getStats(), the operations are traced here
+        stats = null;
+
+        int count = segmentsCount(builder);
+        segments = new LRUCache[count];
+        segmentMask = count - 1;
+
+        // the segments share one refresh pool
+        Executor refreshExecutor = builder.getRefreshExecutor();
+        if (builder.getRefreshAfterWrite() > 0 && refreshExecutor == null) {
+            ownRefreshExecutor = IoExecutors.newBoundedExecutor("jcache-refresh", DEFAULT_REFRESH_THREADS, DEFAULT_REFRESH_QUEUE_SIZE);
+            refreshExecutor = ownRefreshExecutor;
+        }
+
+        for (int index = 0; index < count; index++) {
+            CacheBuilder segmentBuilder = new CacheBuilder(builder)
+                    .refreshExecutor(refreshExecutor)
+                    .memorySize(share(builder.getMaxMemorySize(), count, index))
+                    .statsMBean(null)
+                    .statsReportInterval(0, TimeUnit.NANOSECONDS)
+                    .tracing(0);
+            if (builder.isDiskEnabled())
+                segmentBuilder.diskLocation(new File(builder.getDiskLocation(), "segment-" + index).getPath())
+                        .diskSize(share(builder.getMaxDiskSize(), count, index))
+                        .offHeapSize(builder.getOffHeapSize() / count)
+                        .writeBehindQueueSize(Math.max(1, builder.getWriteBehindQueueSize() / count));
+            if (builder.getMaxMemoryWeight() > 0)
+                segmentBuilder.maxMemoryWeight(Math.max(1, builder.getMaxMemoryWeight() / count));
+            if (builder.getMaxDiskWeight() > 0)
+                segmentBuilder.maxDiskWeight(Math.max(1, builder.getMaxDiskWeight() / count));
+            segments[index] = new LRUCache<K, V>(segmentBuilder);
+        }
+        logger.debug("{} | {} segments initialized", this, count);
+    }
+
+    @Override
+    protected boolean isWeightSupported() {
+        return true;
+    }
+
+    @Override
+    protected boolean isExpirationSupported() {
+        return true;
+    }
+
+    @Override
+    public void checkpoint() {
+        for (LRUCache<K, V> segment : segments)
+            segment.checkpoint();
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        for (LRUCache<K, V> segment : segments)
+            segment.close();
+        if (ownRefreshExecutor != null) {
+            ownRefreshExecutor.shutdown();
+            ownRefreshExecutor = null;
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        for (LRUCache<K, V> segment : segments)
+            segment.cleanUp();
+    }
+
+    /**
+     * Number of segments is a power of two (for cheap hashing) and not larger than the memory size
+     * (each segment must be able to store at least one object in memory)
+     */
+    private static int segmentsCount(CacheBuilder builder) {
+        int limit = Math.min(builder.getSegments(), builder.getMaxMemorySize());
+        if (builder.isDiskEnabled())
+            limit = Math.min(limit, builder.getMaxDiskSize());
+        int count = 1;
+        while (count * 2 <= limit)
+            count *= 2;
+        return count;
+    }
+
+    /**
+     * Split <code>total</code> between segments. First segments get the remainder.
+     */
+    private static int share(int total, int count, int index) {
+        return total / count + (index < total % count ? 1 : 0);
+    }
+
+    protected void initializeStrategy() {
+        setCacheStrategy(LRU);
+    }
+
+    private LRUCache<K, V> segmentFor(K key) {
+        return segments[segmentIndex(key)];
+    }
+
+    private int segmentIndex(K key) {
+        int hash = key.hashCode();
+        // spread higher bits downwards as only the lower bits are used for selecting the segment
+        hash ^= (hash >>> 16);
+        return hash & segmentMask;
+    }
+
+    // Keys grouped by segment, each group is then done under the lock of its segment
+    @SuppressWarnings("unchecked")
+    private List<K>[] partition(Collection<? extends K> keys) {
+        List<K>[] groups = new List[segments.length];
+        for (K key : keys) {
+            int index = segmentIndex(key);
+            if (groups[index] == null)
+                groups[index] = new ArrayList<K>();
+            groups[index].add(key);
+        }
+        return groups;
+    }
+
+    protected void doPut(K key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    protected V doGet(K key) {
+        return segmentFor(key).get(key);
+    }
+
+    public boolean containsKey(K key) {
+        return segmentFor(key).containsKey(key);
+    }
+
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> values = new HashMap<K, V>();
+        List<K>[] groups = partition(keys);
+        for (int index = 0; index < segments.length; index++) {
+            if (groups[index] != null)
+                values.putAll(segments[index].getAll(groups[index]));
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        Map<K, V>[] groups = new Map[segments.length];
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            int index = segmentIndex(entry.getKey());
+            if (groups[index] == null)
+                groups[index] = new LinkedHashMap<K, V>();
+            groups[index].put(entry.getKey(), entry.getValue());
+        }
+        for (int index = 0; index < segments.length; index++) {
+            if (groups[index] != null)
+                segments[index].putAll(groups[index]);
+        }
+    }
+
+    public void removeAll(Collection<? extends K> keys) {
+        List<K>[] groups = partition(keys);
+        for (int index = 0; index < segments.length; index++) {
+            if (groups[index] != null)
+                segments[index].removeAll(groups[index]);
+        }
+    }
+
+    public boolean isEmpty() {
+        for (LRUCache<K, V> segment : segments) {
+            if (!segment.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (LRUCache<K, V> segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public void clear() {
+        for (LRUCache<K, V> segment : segments)
+            segment.clear();
+    }
+
+    public int getMaxSize() {
+        int maxSize = 0;
+        for (LRUCache<K, V> segment : segments)
+            maxSize += segment.getMaxSize();
+        return maxSize;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        CacheStats stats = CacheStats.EMPTY;
+        for (LRUCache<K, V> segment : segments)
+            stats = stats.plus(segment.getStats());
+        return stats;
+    }
+
+    @Override
+    protected String fillRate() {
+        return "[Size: " + size() + "/" + getMaxSize() + "]";
+    }
+
+    public int getSegmentsCount() {
+        return segments.length;
+    }
+
+    @Override
+    public String internals() {
+        StringBuilder sb = new StringBuilder();
+        for (int index = 0; index < segments.length; index++) {
+            sb.append("  Segment ").append(index).append(":")
+                .append(segments[index].internals());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    protected CacheEntry<K, V> getEntry(K key) {
+        return segmentFor(key).getEntry(key);
+    }
+
+    @Override
+    protected V putIfAbsent(K key, V value) {
+        LRUCache<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            V present = get(key);
+            if (present == null)
+                put(key, value);
+            return present;
+        }
+    }
+
+    @Override
+    protected boolean isDiskEnabled() {
+        return segments[0].isDiskEnabled();
+    }
+
+    @Override
+    protected V getMemoryValue(K key) {
+        // demotions happen under the lock of the segment
+        LRUCache<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.getMemoryEntry(key) == null ? null : get(key);
+        }
+    }
+
+    // Method used for unit testing purposes!
+    public boolean isEntryDiskStored(K key) {
+        return segmentFor(key).isEntryDiskStored(key);
+    }
+
+}
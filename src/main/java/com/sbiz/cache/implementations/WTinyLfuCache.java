@@ -0,0 +1,274 @@
+package com.sbiz.cache.implementations;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.FrequencySketch;
+import com.sbiz.cache.utils.NodeList;
+import com.sbiz.cache.utils.NodeList.Node;
+
+/**
+ * Window TinyLFU (W-TinyLFU) implementation of a cache <br><br>
+ * Memory is split in a small LRU admission window (1%) and a segmented LRU main area
+ * (probation 20% and protected 80%). New entries go to the window; entries leaving the window go on probation
+ * while memory has room and, once it is full, compete with the oldest probation entry (victim).
+ * A 4-bit Count-Min sketch with periodic aging estimates the frequencies: the most frequent one stays.
+ * The loser is moved to disk (a plain LRU area) when disk caching is enabled, otherwise it is evicted.
+ * Sources of inspiration:
+ *  - https://arxiv.org/pdf/1512.00727.pdf (TinyLFU: A Highly Efficient Cache Admission Policy)
+ *  - https://github.com/ben-manes/caffeine/wiki/Efficiency
+ */
+public class WTinyLfuCache<K, V> extends ACache<K, V> {
+
+    private static final int WINDOW_PERCENTAGE = 1;
+
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    private ConcurrentHashMap<K, Node<CacheEntry<K, V>>> cache;
+
+    private NodeList<CacheEntry<K, V>> window;
+
+    private NodeList<CacheEntry<K, V>> probation;
+
+    private NodeList<CacheEntry<K, V>> protectedArea;
+
+    private NodeList<CacheEntry<K, V>> disk;
+
+    private FrequencySketch<K> sketch;
+
+    private int maxWindowSize;
+
+    private int maxProtectedSize;
+
+    public WTinyLfuCache() {
+        super();
+        initializeSizes();
+    }
+
+    public WTinyLfuCache(CacheBuilder builder) {
+        super(builder);
+        initializeSizes();
+    }
+
+    protected void initializeStrategy() {
+        setCacheStrategy(WTINYLFU);
+        cache = new ConcurrentHashMap<K, Node<CacheEntry<K, V>>>();
+        window = new NodeList<CacheEntry<K, V>>("Window");
+        probation = new NodeList<CacheEntry<K, V>>("Probation");
+        protectedArea = new NodeList<CacheEntry<K, V>>("Protected");
+        disk = new NodeList<CacheEntry<K, V>>("Disk");
+        logger.debug("{} | {} Cache initialized", this, cacheStrategy);
+    }
+
+    // Sizes are known only after the store is configured
+    private void initializeSizes() {
+        int maxMemorySize = store.getMaxMemorySize();
+        maxWindowSize = Math.max(1, maxMemorySize * WINDOW_PERCENTAGE / 100);
+        maxProtectedSize = (maxMemorySize - maxWindowSize) * PROTECTED_PERCENTAGE / 100;
+        sketch = new FrequencySketch<K>(getMaxSize());
+    }
+
+    protected synchronized void doPut(K key, V value) {
+
+        logger.debug("{} | Adding object with key {} ", this, key);
+
+        sketch.increment(key);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        if (cachedNode != null) {
+            if (isUpdateExisting())
+                cachedNode.getItem().updateValue(value);
+            return;
+        }
+
+        if (memorySize() == store.getMaxMemorySize())
+            makeRoomInMemory();
+
+        // Memory has room: the store will keep the new value in memory
+        CacheEntry<K, V> newEntry = new CacheEntry<K, V>(key, value, store);
+        Node<CacheEntry<K, V>> newNode = new Node<CacheEntry<K, V>>(newEntry);
+        window.addLast(newNode);
+        cache.put(key, newNode);
+        size++;
+        trimWindow();
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+    }
+
+    protected synchronized V doGet(K key) {
+
+        logger.debug("{} | Getting object with key {} ", this, key);
+
+        // Misses are counted too: a key requested often deserves to be admitted once loaded
+        sketch.increment(key);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        NodeList<CacheEntry<K, V>> list = cachedNode.getList();
+        if (list == window || list == protectedArea) {
+            list.moveToLast(cachedNode);
+        } else if (list == probation) {
+            // second hit: promote to the protected area, the oldest protected entry goes back on probation
+            probation.remove(cachedNode);
+            protectedArea.addLast(cachedNode);
+            if (protectedArea.size() > maxProtectedSize)
+                probation.addLast(protectedArea.pollFirst());
+        } else {
+            // disk hit: bring it back in memory through the window
+            if (!prefetch(key, cachedNode.getItem())) {
+                remove(key);
+                return null;
+            }
+            disk.remove(cachedNode);
+            if (memorySize() == store.getMaxMemorySize())
+                makeRoomInMemory();
+            cachedNode.getItem().switchStore();
+            window.addLast(cachedNode);
+            trimWindow();
+        }
+
+        if (isPrintInternalsDebug())
+            logger.debug("  Strategy info: {}", internals());
+
+        return cachedNode.getItem().getValue();
+    }
+
+    /**
+     * Entries leaving the window while memory has room go on probation without competing
+     */
+    private void trimWindow() {
+        while (window.size() > maxWindowSize)
+            probation.addLast(window.pollFirst());
+    }
+
+    /**
+     * Free one memory slot for an entry entering the window: the oldest window entry, about to leave it,
+     * competes with the oldest probation entry (victim). The winner stays on probation, the loser leaves memory.
+     */
+    private void makeRoomInMemory() {
+        Node<CacheEntry<K, V>> candidate = window.size() < maxWindowSize ? null : window.first();
+        Node<CacheEntry<K, V>> victim = probation.isEmpty() ? protectedArea.first() : probation.first();
+
+        if (victim == null) {
+            // the whole memory is the window
+            moveOutOfMemory(window.first());
+        } else if (candidate == null) {
+            moveOutOfMemory(victim);
+        } else if (admit(candidate.getItem().getKey(), victim.getItem().getKey())) {
+            moveOutOfMemory(victim);
+            window.remove(candidate);
+            probation.addLast(candidate);
+        } else {
+            moveOutOfMemory(candidate);
+        }
+    }
+
+    /**
+     * The candidate is admitted only if it is more frequent than the victim
+     */
+    private boolean admit(K candidateKey, K victimKey) {
+        return sketch.frequency(candidateKey) > sketch.frequency(victimKey);
+    }
+
+    /**
+     * Move to disk if enabled (dropping the least recent disk entry when full), otherwise evict
+     */
+    private void moveOutOfMemory(Node<CacheEntry<K, V>> node) {
+        node.getList().remove(node);
+        if (store.isDiskEnabled()) {
+            if (disk.size() == store.getMaxDiskSize())
+                evict(disk.pollFirst());
+            node.getItem().switchStore();
+            disk.addLast(node);
+            logger.debug("  {} moved to disk", node.getItem().getKey());
+        } else {
+            evict(node);
+        }
+    }
+
+    private void evict(Node<CacheEntry<K, V>> node) {
+        cache.remove(node.getItem().getKey());
+        node.getItem().discardFromStore();
+        size--;
+        recordEviction();
+        logger.debug("  {} evicted", node.getItem().getKey());
+    }
+
+    private int memorySize() {
+        return window.size() + probation.size() + protectedArea.size();
+    }
+
+    public boolean containsKey(K key) {
+        return cache.containsKey(key);
+    }
+
+    public synchronized V remove(K key) {
+
+        logger.debug("{} | Removing object with key {} ", this, key);
+
+        Node<CacheEntry<K, V>> cachedNode = cache.remove(key);
+        if (cachedNode == null) {
+            return null;
+        }
+
+        cachedNode.getList().remove(cachedNode);
+        size--;
+        return cachedNode.getItem().removeFromStore();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        store.clear();
+        window.clear();
+        probation.clear();
+        protectedArea.clear();
+        disk.clear();
+        sketch.clear();
+        size = 0;
+    }
+
+    @Override
+    public String internals() {
+        StringBuilder sb = new StringBuilder();
+        appendList(sb, window);
+        appendList(sb, probation);
+        appendList(sb, protectedArea);
+        appendList(sb, disk);
+        sb.append("|   ").append(store.toString());
+        return sb.toString();
+    }
+
+    private void appendList(StringBuilder sb, NodeList<CacheEntry<K, V>> list) {
+        sb.append("  ").append(list.getName()).append(" | ");
+        for (Node<CacheEntry<K, V>> node = list.first(); node != null; node = node.getNext()) {
+            K key = node.getItem().getKey();
+            sb.append(key).append("(").append(sketch.frequency(key)).append(") ");
+        }
+    }
+
+    @Override
+    protected CacheEntry<K, V> getEntry(K key) {
+        Node<CacheEntry<K, V>> cachedNode = cache.get(key);
+        return cachedNode == null ? null : cachedNode.getItem();
+    }
+
+    // Method used for unit testing purposes!
+    public boolean isEntryDiskStored(K key) {
+        Node<CacheEntry<K, V>> foundNode = cache.get(key);
+        if (foundNode == null)
+            throw new NoSuchElementException(key + " not in cache");
+        else
+            return foundNode.getItem().isDiskStored();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.sbiz.cache.simulator;
+
+import com.sbiz.cache.CacheBuilder;
+import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.implementations.ACache;
+
+/**
+ * One strategy with one memory/disk sizing, replaying the accesses of a trace. <br><br>
+ * The cache runs in policy-only mode: every entry shares the same value and the disk level
+ * keeps nothing ({@link CacheDefaults#DISK_STORE_NULL}), so only the keys take memory.
+ */
+public class Simulation {
+
+    private final String strategy;
+
+    private final int memorySize;
+
+    private final int diskSize;
+
+    private final ACache<Long, Boolean> cache;
+
+    private long memoryHits;
+
+    private long diskHits;
+
+    private long misses;
+
+    public Simulation(String strategy, int memorySize, int diskSize) {
+        this.strategy = strategy;
+        this.memorySize = memorySize;
+        this.diskSize = diskSize;
+        CacheBuilder builder = new CacheBuilder()
+                .strategy(strategy)
+                .memorySize(memorySize);
+        if (diskSize > 0)
+            builder.diskSize(diskSize).diskStore(CacheDefaults.DISK_STORE_NULL);
+        this.cache = (ACache<Long, Boolean>) builder.<Long, Boolean>build();
+    }
+
+    /**
+     * Get the key, putting it on a miss
+     */
+    public void access(long key) {
+        Long boxedKey = key;
+        if (!cache.containsKey(boxedKey)) {
+            misses++;
+            cache.put(boxedKey, Boolean.TRUE);
+            return;
+        }
+        if (cache.isEntryDiskStored(boxedKey))
+            diskHits++;
+        else
+            memoryHits++;
+        cache.get(boxedKey);
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    public int getDiskSize() {
+        return diskSize;
+    }
+
+    public long getRequests() {
+        return memoryHits + diskHits + misses;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public long getDiskHits() {
+        return diskHits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getMemoryHitRatio() {
+        return ratio(memoryHits);
+    }
+
+    public double getDiskHitRatio() {
+        return ratio(diskHits);
+    }
+
+    public double getHitRatio() {
+        return ratio(memoryHits + diskHits);
+    }
+
+    private double ratio(long hits) {
+        long requests = getRequests();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public String toString() {
+        return String.format("%-8s %10d %10d %12d %8.2f%% %8.2f%% %8.2f%%", strategy, memorySize, diskSize,
+                getRequests(), getMemoryHitRatio() * 100, getDiskHitRatio() * 100, getHitRatio() * 100);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.sbiz.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+import com.sbiz.cache.CacheDefaults;
+
+/**
+ * Replays an access trace through several strategies and sizings at once and reports their hit ratios,
+ * to compare the strategies on real accesses. The trace is read once, streaming, whatever its size. <br><br>
+ * Usage: <code>java -cp simple-cache.jar com.sbiz.cache.simulator.Simulator trace [format] [strategies]
+ * [memorySizes] [diskSizes]</code>, ex: <code>Simulator trace.gz ARC LRU,LFU 1000,10000 0,100000</code>
+ * (lists are comma separated, gzipped traces are read as is)
+ */
+public class Simulator implements LongConsumer {
+
+    private final List<Simulation> simulations = new ArrayList<Simulation>();
+
+    /**
+     * Simulate the strategy with the sizing, a <code>diskSize</code> of 0 for a memory only cache
+     */
+    public Simulator add(String strategy, int memorySize, int diskSize) {
+        simulations.add(new Simulation(strategy, memorySize, diskSize));
+        return this;
+    }
+
+    public void accept(long key) {
+        for (Simulation simulation : simulations)
+            simulation.access(key);
+    }
+
+    /**
+     * Replay all the keys of the trace
+     * @return the number of keys replayed
+     */
+    public long replay(BufferedReader trace, String format) throws IOException {
+        return TraceReader.read(trace, format, this);
+    }
+
+    public List<Simulation> getSimulations() {
+        return Collections.unmodifiableList(simulations);
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder(String.format("%-8s %10s %10s %12s %9s %9s %9s%n",
+                "Strategy", "Memory", "Disk", "Requests", "Memory", "Disk", "Total"));
+        for (Simulation simulation : simulations)
+            sb.append(simulation).append(String.format("%n"));
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: Simulator trace [PLAIN|ARC|LIRS] [strategies] [memorySizes] [diskSizes]");
+            System.exit(1);
+        }
+        String format = args.length > 1 ? args[1] : TraceReader.PLAIN;
+        String[] strategies = (args.length > 2 ? args[2] : CacheDefaults.LRU + "," + CacheDefaults.LFU).split(",");
+        String[] memorySizes = (args.length > 3 ? args[3] : "1000,10000,100000").split(",");
+        String[] diskSizes = (args.length > 4 ? args[4] : "0").split(",");
+
+        Simulator simulator = new Simulator();
+        for (String strategy : strategies) {
+            for (String memorySize : memorySizes) {
+                for (String diskSize : diskSizes)
+                    simulator.add(strategy, Integer.parseInt(memorySize), Integer.parseInt(diskSize));
+            }
+        }
+
+        InputStream in = new FileInputStream(args[0]);
+        if (args[0].endsWith(".gz"))
+            in = new GZIPInputStream(in, 64 * 1024);
+        BufferedReader trace = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        try {
+            simulator.replay(trace, format);
+        } finally {
+            trace.close();
+        }
+        System.out.print(simulator.report());
+    }
+
+}
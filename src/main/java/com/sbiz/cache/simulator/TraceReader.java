@@ -0,0 +1,97 @@
+package com.sbiz.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams the keys of an access trace, one line at a time, so traces of any size are read in constant memory.
+ * Supported formats:
+ *  - PLAIN: one key per line (first column, the others are ignored). Non numeric keys are hashed to 64 bits.
+ *  - ARC: <code>startBlock blockCount ignored requestNumber</code>, each line accessing <code>blockCount</code> blocks
+ *  - LIRS: one block number per line, lines starting with '*' are ignored
+ * Empty lines and lines starting with '#' are skipped in all formats.
+ * Sources of inspiration:
+ *  - https://researcher.watson.ibm.com/researcher/view_person_subpage.php?id=4700 (ARC traces)
+ *  - https://github.com/ben-manes/caffeine/wiki/Simulator
+ */
+public final class TraceReader {
+
+    public static final String PLAIN = "PLAIN";
+
+    public static final String ARC = "ARC";
+
+    public static final String LIRS = "LIRS";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TraceReader() {
+    }
+
+    /**
+     * Pass every key of the trace to the consumer
+     * @return the number of keys read
+     */
+    public static long read(BufferedReader in, String format, LongConsumer consumer) throws IOException {
+        if (!PLAIN.equals(format) && !ARC.equals(format) && !LIRS.equals(format))
+            throw new IllegalArgumentException("Unknown trace format: " + format);
+
+        long count = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            int start = skipSpaces(line, 0);
+            if (start == line.length() || line.charAt(start) == '#')
+                continue;
+            int end = nextSpace(line, start);
+
+            if (ARC.equals(format)) {
+                long block = Long.parseLong(line.substring(start, end));
+                int next = skipSpaces(line, end);
+                long blocks = Long.parseLong(line.substring(next, nextSpace(line, next)));
+                for (long i = 0; i < blocks; i++)
+                    consumer.accept(block + i);
+                count += blocks;
+            } else if (LIRS.equals(format)) {
+                if (line.charAt(start) == '*')
+                    continue;
+                consumer.accept(Long.parseLong(line.substring(start, end)));
+                count++;
+            } else {
+                consumer.accept(key(line, start, end));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Numeric keys as is, other ones hashed with FNV-1a (collisions are negligible for simulations)
+    private static long key(String line, int start, int end) {
+        boolean numeric = end - start <= 18;
+        for (int i = start; i < end && numeric; i++)
+            numeric = Character.isDigit(line.charAt(i));
+        if (numeric)
+            return Long.parseLong(line.substring(start, end));
+
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash ^= line.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int skipSpaces(String line, int from) {
+        while (from < line.length() && Character.isWhitespace(line.charAt(from)))
+            from++;
+        return from;
+    }
+
+    private static int nextSpace(String line, int from) {
+        while (from < line.length() && !Character.isWhitespace(line.charAt(from)))
+            from++;
+        return from;
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.sbiz.cache.utils;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.Serializer;
+import com.sbiz.cache.Serializers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for the disk level of the cache. Implementations decide how values are laid out on disk.
+ */
+public abstract class ADiskStore<K, V> {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // Disk location of the cache
+    protected String diskLocation;
+
+    // Subfolder first, then the file name (key hash)
+    private final Comparator<CacheEntry<K, V>> byFile = new Comparator<CacheEntry<K, V>>() {
+        public int compare(CacheEntry<K, V> a, CacheEntry<K, V> b) {
+            String folderA = a.getSubFolder() == null ? "" : a.getSubFolder();
+            String folderB = b.getSubFolder() == null ? "" : b.getSubFolder();
+            int byFolder = folderA.compareTo(folderB);
+            return byFolder != 0 ? byFolder : Integer.compare(a.getKey().hashCode(), b.getKey().hashCode());
+        }
+    };
+
+    protected Serializer<V> serializer = Serializers.java();
+
+    private final SerializationBuffer buffer = new SerializationBuffer();
+
+    // null when compression is disabled
+    private Compressor compressor;
+
+    protected ADiskStore() {
+        setDiskLocation(CacheDefaults.DEFAULT_DISK_LOCATION);
+    }
+
+    /**
+     * Add (<code>add</code> is <code>true</code>) or update the value of the entry.
+     * Throws an UncheckedIOException if the value could not be written.
+     */
+    public abstract void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add);
+
+    /**
+     * Throws an UncheckedIOException if the stored value can't be read back intact (ex. checksum mismatch),
+     * see {@link StoreManager#prefetch(CacheEntry)}
+     */
+    public abstract V getValue(CacheEntry<K, V> cacheEntry);
+
+    public abstract void remove(CacheEntry<K, V> cacheEntry);
+
+    /**
+     * @return the number of entries stored
+     */
+    public abstract int size();
+
+    /**
+     * @return the number of bytes stored
+     */
+    public abstract long getDiskSize();
+
+    public abstract void clear();
+
+    /**
+     * Force the values written so far to the storage device
+     */
+    public void sync() {
+    }
+
+    /**
+     * Write what is pending and release the threads and files of the store, which is not used afterwards.
+     * The values stay on disk.
+     */
+    public void close() {
+        sync();
+    }
+
+    /**
+     * Order the entries of a batch in the order their values are best read (same file or folder together,
+     * increasing offsets). By default by subfolder then file name.
+     */
+    public void sortByLocation(List<CacheEntry<K, V>> cacheEntries) {
+        Collections.sort(cacheEntries, byFile);
+    }
+
+    /**
+     * Whether the values survive a restart, found again with {@link #writeLocation(CacheEntry, DataOutput)}
+     * and {@link #restoreLocation(CacheEntry, DataInput)}
+     */
+    public boolean isRestartable() {
+        return false;
+    }
+
+    /**
+     * Write what the store needs to find the value of the entry after a restart
+     */
+    public void writeLocation(CacheEntry<K, V> cacheEntry, DataOutput out) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " values don't survive a restart");
+    }
+
+    /**
+     * Read the location written by {@link #writeLocation(CacheEntry, DataOutput)} and index the entry
+     * without reading its value. Returns <code>false</code> if the value is gone.
+     */
+    public boolean restoreLocation(CacheEntry<K, V> cacheEntry, DataInput in) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " values don't survive a restart");
+    }
+
+    /**
+     * Called by a checkpoint, after {@link #sync()}, before the locations are written. Stores moving
+     * their values in the background (ex. compaction) finish first.
+     */
+    public void prepareCheckpoint() throws IOException {
+    }
+
+    /**
+     * Called before the entries are restored, with the number of threads the store may use to check its
+     * records (ex. drop the records torn by a crash)
+     */
+    public void beginRestore(int threads) throws IOException {
+    }
+
+    /**
+     * Called once all the entries are restored (ex. to drop the files of the entries left out)
+     */
+    public void endRestore() {
+    }
+
+    /**
+     * Subfolder to be kept on new cache entries, <code>null</code> if the store doesn't use them
+     */
+    public String getNextSubFolder() {
+        return null;
+    }
+
+    public void setDiskLocation(String diskLocation) {
+        if (diskLocation.lastIndexOf(File.separator) != (diskLocation.length()-1))
+            diskLocation += File.separator;
+        this.diskLocation = diskLocation;
+    }
+
+    public void setSerializer(Serializer<V> serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Compress the records of at least <code>threshold</code> bytes
+     */
+    public void setCompression(int threshold) {
+        this.compressor = new Compressor(threshold);
+    }
+
+    /**
+     * @return the bytes written before compression, 0 when compression is disabled
+     */
+    public synchronized long getUncompressedBytes() {
+        return compressor == null ? 0 : compressor.getUncompressedBytes();
+    }
+
+    /**
+     * @return the bytes written after compression, 0 when compression is disabled
+     */
+    public synchronized long getCompressedBytes() {
+        return compressor == null ? 0 : compressor.getCompressedBytes();
+    }
+
+    /**
+     * Serialize (and compress) the value in the reusable buffers of the store. The returned bytes
+     * are valid until the next call, so callers must hold the store lock.
+     */
+    protected ByteBuffer serialize(V value) throws IOException {
+        ByteBuffer bytes = buffer.write(serializer, value);
+        return compressor == null ? bytes : compressor.compress(bytes);
+    }
+
+    /**
+     * CRC32C of a record: the length then the remaining bytes of <code>payload</code> (left unchanged)
+     */
+    protected static int checksum(Crc32c crc, ByteBuffer payload) {
+        crc.reset();
+        crc.updateInt(payload.remaining());
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    protected V deserialize(ByteBuffer bytes) throws IOException {
+        if (compressor != null)
+            bytes = compressor.decompress(bytes);
+        return serializer.deserialize(new DataInputStream(new ByteBufferInputStream(bytes)));
+    }
+
+    public String getDiskLocation() {
+        return diskLocation;
+    }
+
+    public void initLocation() {
+        new File(diskLocation).mkdirs();
+    }
+
+    protected void delete(File f) {
+        if (f.isDirectory()) {
+            for (File c : f.listFiles())
+                delete(c);
+        }
+        if (!f.delete())
+            throw new SecurityException("Failed to delete file: " + f);
+    }
+
+}
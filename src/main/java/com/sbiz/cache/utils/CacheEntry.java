@@ -1,35 +1,125 @@
 package com.sbiz.cache.utils;
 
-import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-public class CacheEntry<K, V extends Serializable> {
+public class CacheEntry<K, V> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<CacheEntry> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "refreshing");
 
     private K key;
-    private boolean diskStored;
+    private volatile boolean diskStored;
     private String subFolder;
+    private int weight;
     private StoreManager<K, V> manager;
 
+    // Completed future of the memory value, reused by the asynchronous gets
+    private volatile CompletableFuture<V> completed;
+
+    // Store time of the last add or update of the value
+    private volatile long writeTime;
+
+    // 1 while a background reload of the value is running
+    private volatile int refreshing;
+
+    // Store time after which the entry is expired, Long.MAX_VALUE for never
+    private volatile long expirationTime = Long.MAX_VALUE;
+
+    static final int NOT_SCHEDULED = -1;
+
+    // Links of the timer wheel bucket holding the entry
+    int wheelBucket = NOT_SCHEDULED;
+    CacheEntry<K, V> previousInWheel;
+    CacheEntry<K, V> nextInWheel;
+
     /**
      * Each cached entry has a key and the information regarding where is stored (memory or disk).
      * The manager will also decide where to store the value.
      */
     public CacheEntry(K key, V value, StoreManager<K, V> manager) {
+        this(key, value, manager, true);
+    }
+
+    /**
+     * With <code>memoryAllowed</code> false the entry is stored on disk, for strategies
+     * placing the new entry below the disk entries.
+     */
+    public CacheEntry(K key, V value, StoreManager<K, V> manager, boolean memoryAllowed) {
         this.key = key;
         this.manager = manager;
+        this.weight = manager.weigh(key, value);
+        this.writeTime = manager.now();
         
         // Generate subfolder key only if cache has second level (disk) enabled
         if (manager.isDiskEnabled())
-            this.subFolder = DiskStore.getNextSubFolder();
+            this.subFolder = manager.getNextSubFolder();
 
-        this.diskStored = manager.put(this, value);
+        this.diskStored = manager.put(this, value, memoryAllowed);
+    }
+
+    /**
+     * Entry restored from a {@link Manifest}: its value is already on disk, where the disk store
+     * finds it with the restored location
+     */
+    CacheEntry(K key, int weight, StoreManager<K, V> manager) {
+        this.key = key;
+        this.manager = manager;
+        this.weight = weight;
+        this.writeTime = manager.now();
+        this.diskStored = true;
+    }
+
+    /**
+     * Entry preloaded from a {@link Snapshot}, its value goes to memory
+     */
+    CacheEntry(K key, V value, int weight, StoreManager<K, V> manager) {
+        this.key = key;
+        this.manager = manager;
+        this.weight = weight;
+        this.writeTime = manager.now();
+        manager.putRestored(this, value);
     }
 
     public String getSubFolder() {
         return subFolder;
     }
 
+    void setSubFolder(String subFolder) {
+        this.subFolder = subFolder;
+    }
+
     public void updateValue(V value) {
+        completed = null;
         manager.updateValue(this, value);
+        writeTime = manager.now();
+    }
+
+    /**
+     * Store time ({@link StoreManager#now()}) of the last add or update of the value
+     */
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    public void setExpirationTime(long expirationTime) {
+        this.expirationTime = expirationTime;
+    }
+
+    /**
+     * Mark the entry as being reloaded. Returns <code>false</code> if a reload is already running.
+     */
+    public boolean startRefresh() {
+        return REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    public void endRefresh() {
+        refreshing = 0;
     }
 
     public K getKey() {
@@ -43,11 +133,34 @@ public class CacheEntry<K, V extends Serializable> {
         return manager.getValue(this);//key, diskStored);
     }
 
+    /**
+     * Load the value only if it is stored in memory. Returns <code>null</code> otherwise.
+     * Safe to call without holding the cache lock.
+     */
+    public V getMemoryValue() {
+        return manager.getMemoryValue(this);
+    }
+
+    /**
+     * Completed future of the memory <code>value</code>, reused while the value doesn't change
+     */
+    public CompletableFuture<V> completedFuture(V value) {
+        CompletableFuture<V> future = completed;
+        if (future == null || future.getNow(null) != value) {
+            future = CompletableFuture.completedFuture(value);
+            completed = future;
+        }
+        return future;
+    }
+
     /**
      * Method for moving this cache entry between memory and disk
      */
     public boolean switchStore() {
         diskStored = manager.switchStore(this);
+        // don't keep the demoted value on the heap
+        if (diskStored)
+            completed = null;
         return diskStored;
     }
 
@@ -55,6 +168,24 @@ public class CacheEntry<K, V extends Serializable> {
         return manager.remove(this);
     }
 
+    /**
+     * Remove the value from its store without reading it (no disk read for disk entries)
+     */
+    public void discardFromStore() {
+        manager.discard(this);
+    }
+
+    /**
+     * Weight computed by the weigher of the store when the value was added or last updated
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    void setWeight(int weight) {
+        this.weight = weight;
+    }
+
     public boolean isDiskStored() {
         return diskStored;
     }
@@ -0,0 +1,120 @@
+package com.sbiz.cache.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per record compression of the serialized values. <br><br>
+ * Records smaller than the threshold, or not getting smaller, are kept raw.
+ * Record format: <code>[byte RAW][bytes]</code> or <code>[byte DEFLATED][int raw length][deflated bytes]</code>
+ * The Deflater, Inflater and buffers are reused for every record: not thread safe,
+ * each store keeps its own and uses it under its lock.
+ */
+public class Compressor {
+
+    private static final byte RAW = 0;
+
+    private static final byte DEFLATED = 1;
+
+    private static final int DEFLATED_HEADER_SIZE = 5;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final Inflater inflater = new Inflater();
+
+    private final int threshold;
+
+    private byte[] output = new byte[4 * 1024];
+
+    private byte[] inflated = new byte[4 * 1024];
+
+    // Compressed bytes copied out of direct or mapped buffers
+    private byte[] input = new byte[4 * 1024];
+
+    private long uncompressedBytes;
+
+    private long compressedBytes;
+
+    public Compressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Compress the raw bytes (backed by an array). The result is valid until the next call.
+     */
+    public ByteBuffer compress(ByteBuffer raw) {
+        int length = raw.remaining();
+        output = ensureCapacity(output, DEFLATED_HEADER_SIZE + length);
+        uncompressedBytes += length;
+
+        if (length >= threshold && length > DEFLATED_HEADER_SIZE) {
+            deflater.reset();
+            deflater.setInput(raw.array(), raw.arrayOffset() + raw.position(), length);
+            deflater.finish();
+            // keep it only if smaller than the raw record
+            int compressed = deflater.deflate(output, DEFLATED_HEADER_SIZE, length - DEFLATED_HEADER_SIZE);
+            if (deflater.finished()) {
+                output[0] = DEFLATED;
+                ByteBuffer.wrap(output, 1, 4).putInt(length);
+                compressedBytes += DEFLATED_HEADER_SIZE + compressed;
+                return ByteBuffer.wrap(output, 0, DEFLATED_HEADER_SIZE + compressed);
+            }
+        }
+
+        output[0] = RAW;
+        raw.duplicate().get(output, 1, length);
+        compressedBytes += 1 + length;
+        return ByteBuffer.wrap(output, 0, 1 + length);
+    }
+
+    /**
+     * Return the raw bytes of a record. The result is valid until the next call.
+     */
+    public ByteBuffer decompress(ByteBuffer record) throws IOException {
+        ByteBuffer view = record.duplicate();
+        if (view.get() == RAW)
+            return view;
+
+        int length = view.getInt();
+        int compressed = view.remaining();
+        inflater.reset();
+        if (view.hasArray()) {
+            inflater.setInput(view.array(), view.arrayOffset() + view.position(), compressed);
+        } else {
+            input = ensureCapacity(input, compressed);
+            view.get(input, 0, compressed);
+            inflater.setInput(input, 0, compressed);
+        }
+        inflated = ensureCapacity(inflated, length);
+        try {
+            int count = inflater.inflate(inflated, 0, length);
+            if (count != length)
+                throw new IOException("Corrupted record: " + count + " bytes inflated, " + length + " expected");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return ByteBuffer.wrap(inflated, 0, length);
+    }
+
+    /**
+     * @return the bytes of all the records before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return the bytes of all the records after compression
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int capacity) {
+        return buffer.length >= capacity ? buffer : new byte[Math.max(capacity, buffer.length * 2)];
+    }
+
+}
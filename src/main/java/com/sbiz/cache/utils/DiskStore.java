@@ -1,19 +1,28 @@
 package com.sbiz.cache.utils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.sbiz.cache.CacheDefaults;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
+ * Disk store keeping each entry in its own file, under time based subfolders.
+ * Each file is written to a temporary file, synced then renamed, so a crash never leaves a partial value
+ * under the final name. File format: <code>[int length][int crc32c][serialized value]</code>
  * Refrences:
  * - https://www.cacheonix.org/articles/How_to_Cache_a_File_in_Java.htm
  * 	
@@ -23,81 +32,204 @@ import org.slf4j.LoggerFactory;
  * 		TODO manage situations where files / directories are deleted externally
  */
 
-public class DiskStore<K, V extends Serializable> {
-
-    protected final Logger logger = LoggerFactory.getLogger(getClass());
+public class DiskStore<K, V> extends ADiskStore<K, V> {
 
 	private static String subfolderPattern = CacheDefaults.DEFAULT_SUBFOLDERS_PATTERN;
 
+	private static final int HEADER_SIZE = 8;
+
+	// Suffix of the file being written, renamed once complete
+	private static final String TEMP_SUFFIX = ".tmp";
+
 	private int size;
 
 	private long diskSize;
 
-    // Disk location of the cache
-    private String diskLocation;
+	// Files written and folders of the files renamed since the last sync
+	private final Set<String> unsyncedFiles = new HashSet<String>();
+
+	private final Set<String> unsynced = new HashSet<String>();
+
+	// Folder of the last write, known to exist: consecutive writes skip the mkdirs
+	private String lastFolder;
+
+	// Record header and checksum, reused for every write and read
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+	private final Crc32c crc = new Crc32c();
 
 	public DiskStore() {
 		this.size = 0;
 		this.diskSize = 0;
-		setDiskLocation(CacheDefaults.DEFAULT_DISK_LOCATION);
 	}
 
 	/**
 	 * Create subfolders for cache entires based on current time
 	 */
-	public static String getNextSubFolder() {
+	public String getNextSubFolder() {
 		return 
 			new SimpleDateFormat(subfolderPattern)
 					.format(System.currentTimeMillis())
 					.replace("|", File.separator);
 	}
 
-	public void remove(CacheEntry<K, V> cacheEntry) {
-		File fileToRemove = new File(getFileName(cacheEntry));
+	public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+		String fileName = getFileName(cacheEntry);
+		File fileToRemove = new File(fileName);
 		long fileSize = fileToRemove.length();
+		unsyncedFiles.remove(fileName);
 		if (fileToRemove.delete()) {
 			size--;
 			diskSize -= fileSize;
 		}
 	}
 
-	public void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+	public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+		String fileName = getFileName(cacheEntry);
+		File temp = new File(fileName + TEMP_SUFFIX);
 		try {
 			// Create folders
-			new File(getEntryFolder(cacheEntry)).mkdirs();
-			File file = new File(getFileName(cacheEntry));
+			String folder = getEntryFolder(cacheEntry);
+			if (!folder.equals(lastFolder)) {
+				new File(folder).mkdirs();
+				lastFolder = folder;
+			}
+			File file = new File(fileName);
+			long previousLength = add ? 0 : file.length();
 			
-			FileOutputStream fos = new FileOutputStream(file);
-			ObjectOutputStream out = new ObjectOutputStream(fos);
-			out.writeObject(value);
-			out.close();
-			diskSize += file.length();
+			ByteBuffer bytes = serialize(value);
+			header.clear();
+			header.putInt(bytes.remaining());
+			header.putInt(checksum(crc, bytes));
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(header.array(), 0, HEADER_SIZE);
+				out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			diskSize += HEADER_SIZE + bytes.remaining() - previousLength;
+			// synced with the batch: a file torn by a crash fails its length or checksum check and is dropped
+			unsyncedFiles.add(fileName);
+			unsynced.add(folder);
 			if (add)
 				size++;
-		} catch (Exception e) {
-			logger.error("We've got an error writing cache entry to file: {}",
-					e.getLocalizedMessage());
+		} catch (IOException e) {
+			temp.delete();
+			throw new UncheckedIOException("Failed to write cache entry file " + fileName, e);
 		}
 	}
 
-	public V getValue(CacheEntry<K, V> cacheEntry) {
+	public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+		String fileName = getFileName(cacheEntry);
 		try {
-			FileInputStream file = new FileInputStream(new File(getFileName(cacheEntry)));
-			ObjectInputStream in = new ObjectInputStream(file);
-			@SuppressWarnings("unchecked") 
-				V value = (V)in.readObject();
-			in.close();
-			return value;
-		} catch (Exception e) {
-			logger.error("We've got an error writing cache entry to file: {}", e.getLocalizedMessage());
+			RandomAccessFile file = new RandomAccessFile(fileName, "r");
+			try {
+				long fileLength = file.length();
+				int length = fileLength < HEADER_SIZE ? -1 : file.readInt();
+				if (length != fileLength - HEADER_SIZE)
+					throw new IOException("torn record");
+				int expected = file.readInt();
+				ByteBuffer bytes = ByteBuffer.allocate(length);
+				file.readFully(bytes.array());
+				if (checksum(crc, bytes) != expected)
+					throw new IOException("checksum mismatch");
+				return deserialize(bytes);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read cache entry file " + fileName, e);
+		}
+	}
+
+	/**
+	 * Sync the files written since the last sync, then their folders for the renames
+	 */
+	public synchronized void sync() {
+		for (String fileName : unsyncedFiles)
+			force(fileName);
+		unsyncedFiles.clear();
+		for (String folder : unsynced)
+			force(folder);
+		unsynced.clear();
+	}
+
+	private void force(String path) {
+		try {
+			FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			logger.error("We've got an error syncing {}: {}", path, e.getLocalizedMessage());
 		}
-		return null;
 	}
 
 	public int size() {
 		return size;
 	}
 
+	public boolean isRestartable() {
+		return true;
+	}
+
+	// The file name is the subfolder and the key hash
+	public void writeLocation(CacheEntry<K, V> cacheEntry, DataOutput out) throws IOException {
+		out.writeUTF(cacheEntry.getSubFolder());
+	}
+
+	// Only the header is read: a file whose length doesn't match it is torn and deleted.
+	// The checksum is checked on the first read.
+	public synchronized boolean restoreLocation(CacheEntry<K, V> cacheEntry, DataInput in) throws IOException {
+		cacheEntry.setSubFolder(in.readUTF());
+		File file = new File(getFileName(cacheEntry));
+		if (!file.isFile())
+			return false;
+		long fileLength = file.length();
+		int length = -1;
+		if (fileLength >= HEADER_SIZE) {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				length = raf.readInt();
+			} finally {
+				raf.close();
+			}
+		}
+		if (length != fileLength - HEADER_SIZE) {
+			logger.warn("Dropped torn cache entry file {}", file);
+			if (!file.delete())
+				logger.error("Failed to delete torn file {}", file);
+			return false;
+		}
+		diskSize += fileLength;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Delete the temporary files of the writes interrupted by a crash
+	 */
+	public synchronized void endRestore() {
+		deleteTempFiles(new File(diskLocation));
+	}
+
+	private void deleteTempFiles(File folder) {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (file.isDirectory())
+				deleteTempFiles(file);
+			else if (file.getName().endsWith(TEMP_SUFFIX) && !file.delete())
+				logger.error("Failed to delete temporary file {}", file);
+		}
+	}
+
 	private String getEntryFolder(CacheEntry<K, V> cacheEntry) {
 		return new StringBuilder(diskLocation)
 					.append(cacheEntry.getSubFolder())
@@ -111,12 +243,6 @@ public class DiskStore<K, V extends Serializable> {
 					.toString() ;
 	}
 
-	public void setDiskLocation(String diskLocation) {
-		if (diskLocation.lastIndexOf(File.separator) != (diskLocation.length()-1)) 
-			diskLocation += File.separator;
-		this.diskLocation = diskLocation;
-	}
-
 	/**
 	 * Change the default pattern for creating subfolders 
 	 * Must be one that is based on time and | separator ex: "yyyyMMdd|hh|mm|"
@@ -125,25 +251,17 @@ public class DiskStore<K, V extends Serializable> {
 		subfolderPattern = pattern;
 	}
 
-	public void initLocation() {
-		new File(diskLocation).mkdirs();
-	}
-
 	public long getDiskSize() {
 		return diskSize;
 	}
 
-	public void clear() {
+	public synchronized void clear() {
+		unsyncedFiles.clear();
+		unsynced.clear();
+		lastFolder = null;
 		delete(new File(diskLocation));
-	}
-
-	private void delete(File f) {
-		if (f.isDirectory()) {
-		  for (File c : f.listFiles())
-			delete(c);
-		}
-		if (!f.delete())
-		  throw new SecurityException("Failed to delete file: " + f);
+		size = 0;
+		diskSize = 0;
 	}
 
 }
\ No newline at end of file
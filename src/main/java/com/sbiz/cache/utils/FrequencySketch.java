@@ -0,0 +1,117 @@
+package com.sbiz.cache.utils;
+
+/**
+ * Count-Min sketch with 4-bit counters, used for estimating the access frequency of keys. <br><br>
+ * Each key is hashed to 4 counters (of 16 packed in a long) and the estimate is the minimum of them.
+ * When the number of increments reaches the sample size all counters are halved (aging), so keys
+ * that were popular long time ago lose their advantage.
+ * Sources of inspiration:
+ *  - https://arxiv.org/pdf/1512.00727.pdf (TinyLFU: A Highly Efficient Cache Admission Policy)
+ *  - https://github.com/ben-manes/caffeine/blob/master/caffeine/src/main/java/com/github/benmanes/caffeine/cache/FrequencySketch.java
+ */
+public class FrequencySketch<E> {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    // Keeps the lower 3 bits of each counter after shifting right (halving)
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // Lowest bit of each counter
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MAX_COUNTER = 15;
+
+    private long[] table;
+
+    private int tableMask;
+
+    private int sampleSize;
+
+    private int additions;
+
+    /**
+     * @param capacity the maximum number of entries of the cache
+     */
+    public FrequencySketch(long capacity) {
+        int maximum = (int) Math.min(Math.max(capacity, 1), 1 << 30);
+        int length = 1;
+        while (length < maximum)
+            length *= 2;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * maximum;
+        additions = 0;
+    }
+
+    /**
+     * Estimated number of times <code>item</code> was seen, at most 15
+     */
+    public int frequency(E item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNTER;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increment the counters of <code>item</code>, aging all the counters when the sample size is reached
+     */
+    public void increment(E item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+            added |= incrementAt(indexOf(hash, i), start + i);
+
+        if (added && ++additions == sampleSize)
+            reset();
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halve all counters
+     */
+    private void reset() {
+        int odd = 0;
+        for (int index = 0; index < table.length; index++) {
+            odd += Long.bitCount(table[index] & ONE_MASK);
+            table[index] = (table[index] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    public void clear() {
+        for (int index = 0; index < table.length; index++)
+            table[index] = 0L;
+        additions = 0;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    // Protect against weak hash codes
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+}
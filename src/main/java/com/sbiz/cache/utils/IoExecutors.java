@@ -0,0 +1,61 @@
+package com.sbiz.cache.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the work done outside the caller thread (disk I/O of non-blocking callers, refreshes, reports). <br><br>
+ * The I/O executor uses virtual threads when the runtime has them (Java 21+), a pool of daemon threads otherwise.
+ */
+public final class IoExecutors {
+
+    private IoExecutors() {
+    }
+
+    public static ExecutorService newIoExecutor(String name) {
+        try {
+            // looked up at runtime: the sources target Java 8
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool(daemonThreads(name));
+        }
+    }
+
+    /**
+     * Pool of <code>threads</code> daemon threads, stopped when idle, with at most <code>queueSize</code>
+     * tasks waiting. Tasks above are rejected with a RejectedExecutionException.
+     */
+    public static ExecutorService newBoundedExecutor(String name, int threads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), daemonThreads(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Single daemon thread running periodic tasks (ex. the statistics reports)
+     */
+    public static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreads(name));
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.sbiz.cache.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with logarithmic buckets (HDR style): each power of two of nanoseconds is split
+ * in 8 linear sub-buckets, so the recorded values are kept with a precision of 12.5%. <br><br>
+ * Recording only increments striped counters (no lock, no allocation once warm). The percentiles are
+ * computed from a copy of the buckets, see {@link #snapshot()}.
+ * Sources of inspiration:
+ *  - http://hdrhistogram.org/
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values above 2^36 ns (~69 s) are counted in the last bucket
+    private static final int MAX_MAGNITUDE = 36;
+
+    public static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        buckets[bucketIndex(nanos)].increment();
+        totalNanos.add(Math.max(0, nanos));
+    }
+
+    /**
+     * @return the count of each bucket, followed by the sum of the recorded values
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKETS + 1];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = buckets[i].sum();
+        counts[BUCKETS] = totalNanos.sum();
+        return counts;
+    }
+
+    /**
+     * Values below 8 have their own bucket, the other ones go to sub-bucket of their power of two
+     */
+    public static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) Math.max(0, nanos);
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude > MAX_MAGNITUDE)
+            return BUCKETS - 1;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the highest value counted in the bucket
+     */
+    public static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
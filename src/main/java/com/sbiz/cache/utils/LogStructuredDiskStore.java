@@ -0,0 +1,547 @@
+package com.sbiz.cache.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.CacheDefaults;
+
+/**
+ * Disk store appending the values to large segment files (a log) instead of creating a file per entry. <br><br>
+ * An in-memory index keeps for each key the segment, offset and length of its record.
+ * Updates append a new record and removes only drop the index entry, so the old records become garbage.
+ * When more than half of a sealed segment is garbage a background job copies its live records
+ * at the end of the log and deletes the segment file. <br><br>
+ * Each record has a CRC32C of its length and value and ends with a commit marker. On a warm restart
+ * the segments are scanned in parallel and cut at their first torn or corrupted record (ex. an append
+ * interrupted by a crash), so the restored entries only point to intact records.
+ * Record format: <code>[int length][int crc32c][serialized value][int commit marker]</code>
+ * Sources of inspiration:
+ *  - https://github.com/basho/bitcask/blob/develop/doc/bitcask-intro.pdf
+ */
+public class LogStructuredDiskStore<K, V> extends ADiskStore<K, V> {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int TRAILER_SIZE = 4;
+
+    private static final int RECORD_OVERHEAD = HEADER_SIZE + TRAILER_SIZE;
+
+    // Written after the value: a record without it was not completely appended
+    private static final int COMMIT = 0x4A43434D;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    // Compact sealed segments having less than half of their bytes alive
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        long length;
+        long liveBytes;
+        final Set<K> keys = new HashSet<K>();
+
+        Segment(int id) throws IOException {
+            this.id = id;
+            this.file = segmentFile(id);
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.length = channel.size();
+        }
+
+        boolean needsCompaction() {
+            return this != activeSegment && liveBytes < length * COMPACTION_THRESHOLD;
+        }
+    }
+
+    private class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final HashMap<K, Location> index = new HashMap<K, Location>();
+
+    private final HashMap<Integer, Segment> segments = new HashMap<Integer, Segment>();
+
+    private final Set<Segment> compactionScheduled = new HashSet<Segment>();
+
+    // Segments written since the last sync
+    private final Set<Segment> unsynced = new HashSet<Segment>();
+
+    private Segment activeSegment;
+
+    private int nextSegmentId;
+
+    private long segmentSize = CacheDefaults.DEFAULT_SEGMENT_SIZE;
+
+    private long diskSize;
+
+    // Record header, trailer and checksum, reused for every append
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    private final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+
+    private final Crc32c crc = new Crc32c();
+
+    // Set by close, the compactions not started yet are skipped
+    private boolean closed;
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jcache-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public LogStructuredDiskStore() {
+        this.nextSegmentId = 0;
+        this.diskSize = 0;
+    }
+
+    public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        try {
+            append(cacheEntry.getKey(), serialize(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append cache entry to segment", e);
+        }
+    }
+
+    public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+        Location location = index.get(cacheEntry.getKey());
+        if (location == null)
+            return null;
+        try {
+            return deserialize(read(location));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read cache entry from segment " + location.segment.file, e);
+        }
+    }
+
+    public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+        Location location = index.remove(cacheEntry.getKey());
+        if (location != null)
+            release(cacheEntry.getKey(), location);
+    }
+
+    /**
+     * By segment then offset, so a batch reads each segment forward. Entries missing from the index go first.
+     */
+    public synchronized void sortByLocation(List<CacheEntry<K, V>> cacheEntries) {
+        Collections.sort(cacheEntries, new Comparator<CacheEntry<K, V>>() {
+            public int compare(CacheEntry<K, V> a, CacheEntry<K, V> b) {
+                Location locationA = index.get(a.getKey());
+                Location locationB = index.get(b.getKey());
+                if (locationA == null || locationB == null)
+                    return locationA == null ? (locationB == null ? 0 : -1) : 1;
+                int bySegment = Integer.compare(locationA.segment.id, locationB.segment.id);
+                return bySegment != 0 ? bySegment : Long.compare(locationA.offset, locationB.offset);
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    public synchronized void sync() {
+        for (Segment segment : unsynced) {
+            try {
+                if (segment.channel.isOpen())
+                    segment.channel.force(false);
+            } catch (IOException e) {
+                logger.error("We've got an error syncing segment {}: {}", segment.file, e.getLocalizedMessage());
+            }
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * Wait for the scheduled compactions: they move records, so a manifest written meanwhile would point
+     * to deleted segments. The records they moved are synced.
+     */
+    public void prepareCheckpoint() throws IOException {
+        // a compaction may schedule others (new sealed segment): wait until none is left
+        while (true) {
+            synchronized (this) {
+                if (compactionScheduled.isEmpty())
+                    break;
+            }
+            try {
+                compactor.submit(new Runnable() {
+                    public void run() {
+                    }
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the compactions");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        sync();
+    }
+
+    /**
+     * Stop the compactor, letting a running compaction finish its segment (the others are left for the next
+     * start), then sync and close the segments
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            sync();
+            for (Segment segment : segments.values())
+                closeQuietly(segment);
+            segments.clear();
+            compactionScheduled.clear();
+        }
+    }
+
+    public synchronized void clear() {
+        for (Segment segment : segments.values())
+            closeQuietly(segment);
+        segments.clear();
+        index.clear();
+        compactionScheduled.clear();
+        unsynced.clear();
+        activeSegment = null;
+        diskSize = 0;
+        File location = new File(diskLocation);
+        if (location.exists())
+            delete(location);
+    }
+
+    public boolean isRestartable() {
+        return true;
+    }
+
+    // Segment id, offset and length of the record, -1 as id when it was never written
+    public synchronized void writeLocation(CacheEntry<K, V> cacheEntry, DataOutput out) throws IOException {
+        Location location = index.get(cacheEntry.getKey());
+        out.writeInt(location == null ? -1 : location.segment.id);
+        out.writeLong(location == null ? 0 : location.offset);
+        out.writeInt(location == null ? 0 : location.length);
+    }
+
+    /**
+     * Open the segments and scan them in parallel, one per thread: each is cut after its last intact record
+     */
+    public synchronized void beginRestore(int threads) throws IOException {
+        File[] files = new File(diskLocation).listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+                continue;
+            int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(id, new Segment(id));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+        }
+        if (segments.isEmpty())
+            return;
+
+        ExecutorService scanners = IoExecutors.newBoundedExecutor("jcache-recovery", threads, segments.size());
+        try {
+            Map<Segment, Future<Long>> scans = new HashMap<Segment, Future<Long>>();
+            for (Segment segment : segments.values())
+                scans.put(segment, scanners.submit(new RecoveryScan(segment)));
+            for (Map.Entry<Segment, Future<Long>> scan : scans.entrySet()) {
+                Segment segment = scan.getKey();
+                long intact = scan.getValue().get();
+                if (intact < segment.length) {
+                    logger.warn("Dropped {} bytes of torn or corrupted records at the end of segment {}",
+                            segment.length - intact, segment.file);
+                    segment.channel.truncate(intact);
+                    segment.length = intact;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Recovery scan of " + diskLocation + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Recovery scan of " + diskLocation + " failed", e.getCause());
+        } finally {
+            scanners.shutdownNow();
+        }
+    }
+
+    /**
+     * Index the record if its segment still has it after the recovery scan. New records go to a new segment.
+     */
+    public synchronized boolean restoreLocation(CacheEntry<K, V> cacheEntry, DataInput in) throws IOException {
+        int id = in.readInt();
+        long offset = in.readLong();
+        int length = in.readInt();
+        if (id < 0)
+            return false;
+        Segment segment = segments.get(id);
+        if (segment == null || offset + length > segment.length)
+            return false;
+        index.put(cacheEntry.getKey(), new Location(segment, offset, length));
+        segment.liveBytes += length;
+        segment.keys.add(cacheEntry.getKey());
+        diskSize += length;
+        return true;
+    }
+
+    /**
+     * Delete the segments left without restored records and compact the mostly dead ones
+     */
+    public synchronized void endRestore() {
+        for (Iterator<Segment> it = segments.values().iterator(); it.hasNext();) {
+            Segment segment = it.next();
+            if (!segment.keys.isEmpty())
+                continue;
+            it.remove();
+            closeQuietly(segment);
+            if (!segment.file.delete())
+                logger.error("Failed to delete segment {}", segment.file);
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.needsCompaction() && compactionScheduled.add(segment))
+                compactor.execute(new Compaction(segment));
+        }
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Append the record at the end of the log and point the index to it
+     */
+    private void append(K key, ByteBuffer payload) throws IOException {
+        int recordLength = RECORD_OVERHEAD + payload.remaining();
+        if (activeSegment == null || (activeSegment.length > 0 && activeSegment.length + recordLength > segmentSize))
+            rollSegment();
+
+        header.clear();
+        header.putInt(payload.remaining());
+        header.putInt(checksum(crc, payload));
+        header.flip();
+        trailer.clear();
+        trailer.putInt(COMMIT);
+        trailer.flip();
+
+        long offset = activeSegment.length;
+        long position = offset;
+        while (header.hasRemaining())
+            position += activeSegment.channel.write(header, position);
+        while (payload.hasRemaining())
+            position += activeSegment.channel.write(payload, position);
+        while (trailer.hasRemaining())
+            position += activeSegment.channel.write(trailer, position);
+        activeSegment.length = position;
+        activeSegment.liveBytes += recordLength;
+        activeSegment.keys.add(key);
+        unsynced.add(activeSegment);
+        diskSize += recordLength;
+
+        Location previous = index.put(key, new Location(activeSegment, offset, recordLength));
+        if (previous != null)
+            release(key, previous);
+    }
+
+    private File segmentFile(int id) {
+        return new File(diskLocation + SEGMENT_PREFIX + String.format("%06d", id) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Read the whole record and return its checked value
+     */
+    private ByteBuffer read(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        long position = location.offset;
+        while (buffer.hasRemaining()) {
+            int read = location.segment.channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of segment " + location.segment.file);
+            position += read;
+        }
+        ByteBuffer payload = intactPayload(buffer.array(), location.length, crc);
+        if (payload == null)
+            throw new IOException("Corrupted record at offset " + location.offset + " of segment " + location.segment.file);
+        return payload;
+    }
+
+    /**
+     * Value of the record held by the first <code>recordLength</code> bytes of <code>record</code>,
+     * <code>null</code> if the record is incomplete or doesn't match its checksum
+     */
+    private static ByteBuffer intactPayload(byte[] record, int recordLength, Crc32c crc) {
+        ByteBuffer buffer = ByteBuffer.wrap(record, 0, recordLength);
+        int length = buffer.getInt(0);
+        if (length != recordLength - RECORD_OVERHEAD || buffer.getInt(recordLength - TRAILER_SIZE) != COMMIT)
+            return null;
+        ByteBuffer payload = ByteBuffer.wrap(record, HEADER_SIZE, length).slice();
+        return checksum(crc, payload) == buffer.getInt(4) ? payload : null;
+    }
+
+    /**
+     * Mark the record as garbage and schedule the compaction of its segment if needed
+     */
+    private void release(K key, Location location) {
+        Segment segment = location.segment;
+        segment.liveBytes -= location.length;
+        diskSize -= location.length;
+        Location current = index.get(key);
+        if (current == null || current.segment != segment)
+            segment.keys.remove(key);
+        if (segment.needsCompaction() && compactionScheduled.add(segment))
+            compactor.execute(new Compaction(segment));
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeSegment == null)
+            initLocation();
+        activeSegment = new Segment(nextSegmentId++);
+        segments.put(activeSegment.id, activeSegment);
+        // sealed segments may have been waiting for the active one to change
+        for (Segment segment : segments.values()) {
+            if (segment.needsCompaction() && compactionScheduled.add(segment))
+                compactor.execute(new Compaction(segment));
+        }
+    }
+
+    /**
+     * Copy the live records of a sealed segment at the end of the log and delete it.
+     * The lock is taken for every record, so the cache is not blocked for the whole segment.
+     */
+    private class Compaction implements Runnable {
+        private final Segment segment;
+
+        Compaction(Segment segment) {
+            this.segment = segment;
+        }
+
+        public void run() {
+            List<K> keys;
+            synchronized (LogStructuredDiskStore.this) {
+                if (closed || segments.get(segment.id) != segment)
+                    return;
+                keys = new ArrayList<K>(segment.keys);
+            }
+            try {
+                for (K key : keys) {
+                    synchronized (LogStructuredDiskStore.this) {
+                        Location location = index.get(key);
+                        if (location != null && location.segment == segment)
+                            append(key, read(location));
+                    }
+                }
+                synchronized (LogStructuredDiskStore.this) {
+                    if (segments.remove(segment.id) == segment) {
+                        unsynced.remove(segment);
+                        closeQuietly(segment);
+                        if (!segment.file.delete())
+                            logger.error("Failed to delete compacted segment {}", segment.file);
+                    }
+                    compactionScheduled.remove(segment);
+                }
+                logger.debug("Segment {} compacted", segment.file);
+            } catch (Exception e) {
+                logger.error("We've got an error compacting segment {}: {}", segment.file, e.getLocalizedMessage());
+                synchronized (LogStructuredDiskStore.this) {
+                    compactionScheduled.remove(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a segment from the start and return the end of its last intact record. Records are appended
+     * one at a time, so the ones after a torn record are dropped with it.
+     */
+    private class RecoveryScan implements Callable<Long> {
+        private final Segment segment;
+
+        RecoveryScan(Segment segment) {
+            this.segment = segment;
+        }
+
+        public Long call() throws IOException {
+            Crc32c scanCrc = new Crc32c();
+            byte[] record = new byte[SCAN_BUFFER_SIZE];
+            long offset = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), SCAN_BUFFER_SIZE));
+            try {
+                while (segment.length - offset >= RECORD_OVERHEAD) {
+                    in.readFully(record, 0, HEADER_SIZE);
+                    int length = ByteBuffer.wrap(record).getInt(0);
+                    if (length < 0 || length > segment.length - offset - RECORD_OVERHEAD)
+                        break;
+                    int recordLength = RECORD_OVERHEAD + length;
+                    if (record.length < recordLength)
+                        record = Arrays.copyOf(record, recordLength);
+                    in.readFully(record, HEADER_SIZE, length + TRAILER_SIZE);
+                    if (intactPayload(record, recordLength, scanCrc) == null)
+                        break;
+                    offset += recordLength;
+                }
+            } finally {
+                in.close();
+            }
+            return offset;
+        }
+    }
+
+    private void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            logger.error("We've got an error closing segment {}: {}", segment.file, e.getLocalizedMessage());
+        }
+    }
+
+}
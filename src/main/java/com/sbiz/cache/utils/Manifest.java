@@ -0,0 +1,197 @@
+package com.sbiz.cache.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.sbiz.cache.Serializer;
+
+/**
+ * Index of the disk entries of a cache, written by a checkpoint and read back by the next cache
+ * started on the same disk location (warm restart). <br><br>
+ * The entries are listed in the order of the strategy (first to evict first) with their frequency,
+ * weight, key and the location of their value in the disk store. Values are not part of the manifest.
+ * It is written to a temporary file, synced and renamed, so a crash leaves the previous manifest intact.
+ * The memory entries go with their values to the {@link Snapshot} of the same checkpoint.
+ * Format: <code>[magic][version][disk store type] ([frequency][weight][key length][key][location])* [-1][count]</code>
+ */
+public class Manifest<K, V> {
+
+    public static final String FILE_NAME = "manifest";
+
+    private static final int MAGIC = 0x4A434D46;
+
+    private static final int VERSION = 1;
+
+    // Frequency field marking the end of the entries
+    private static final int END = -1;
+
+    /**
+     * Writes the entries of a checkpoint, see {@link StoreManager#checkpoint(EntrySource)}
+     */
+    public interface EntrySource<K, V> {
+        void writeEntries(Manifest<K, V> manifest) throws IOException;
+    }
+
+    /**
+     * Receives the restored entries, in the order they were written
+     */
+    public interface RestoreHandler<K, V> {
+        void restore(CacheEntry<K, V> cacheEntry, int frequency);
+    }
+
+    private final File file;
+
+    private final Serializer<K> keySerializer;
+
+    private final ADiskStore<K, V> diskStore;
+
+    private final String diskStoreType;
+
+    private final Snapshot<K, V> snapshot;
+
+    // Open while writing
+    private File tempFile;
+
+    private FileOutputStream fileOut;
+
+    private DataOutputStream out;
+
+    private int count;
+
+    private final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+
+    Manifest(ADiskStore<K, V> diskStore, String diskStoreType, Serializer<K> keySerializer, Snapshot<K, V> snapshot) {
+        this.file = new File(diskStore.getDiskLocation() + FILE_NAME);
+        this.keySerializer = keySerializer;
+        this.diskStore = diskStore;
+        this.diskStoreType = diskStoreType;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Start a new manifest, the current one is kept until {@link #commit()}
+     */
+    void open() throws IOException {
+        snapshot.open();
+        tempFile = new File(file.getPath() + ".tmp");
+        fileOut = new FileOutputStream(tempFile);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(diskStoreType);
+        count = 0;
+    }
+
+    /**
+     * Add an entry: its location if it is on disk, its value to the snapshot if it is in memory
+     */
+    public void write(CacheEntry<K, V> cacheEntry, int frequency) throws IOException {
+        if (!cacheEntry.isDiskStored()) {
+            snapshot.write(cacheEntry, frequency);
+            return;
+        }
+        keyBytes.reset();
+        keySerializer.serialize(cacheEntry.getKey(), new DataOutputStream(keyBytes));
+        out.writeInt(frequency);
+        out.writeInt(cacheEntry.getWeight());
+        out.writeInt(keyBytes.size());
+        keyBytes.writeTo(out);
+        diskStore.writeLocation(cacheEntry, out);
+        count++;
+    }
+
+    /**
+     * Close the new manifest and snapshot and replace the current ones with them
+     */
+    void commit() throws IOException {
+        snapshot.commit();
+        out.writeInt(END);
+        out.writeInt(count);
+        out.flush();
+        fileOut.getFD().sync();
+        out.close();
+        out = null;
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void abort() {
+        snapshot.abort();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            out = null;
+        }
+        if (tempFile != null)
+            tempFile.delete();
+    }
+
+    /**
+     * Drop the manifest and snapshot: the cache changed since they were written
+     */
+    void delete() {
+        snapshot.delete();
+        if (file.exists() && !file.delete())
+            throw new SecurityException("Failed to delete manifest: " + file);
+    }
+
+    /**
+     * Read the manifest and delete it: it no longer matches the disk once the cache changes.
+     * The disk store first checks its records with <code>threads</code> threads, entries whose value
+     * is gone or torn are skipped. On an exception the entries already restored
+     * must be dropped by the caller.
+     *
+     * @return the number of entries restored, -1 when there is no manifest
+     */
+    int restore(StoreManager<K, V> manager, RestoreHandler<K, V> handler, int threads) throws IOException {
+        if (!file.exists())
+            return -1;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a manifest: " + file);
+            String type = in.readUTF();
+            if (!type.equals(diskStoreType))
+                throw new IOException("Manifest of a " + type + " disk store: " + file);
+            diskStore.beginRestore(threads);
+
+            int read = 0;
+            int restored = 0;
+            int frequency;
+            while ((frequency = in.readInt()) != END) {
+                read++;
+                int weight = in.readInt();
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                CacheEntry<K, V> cacheEntry = new CacheEntry<K, V>(
+                        keySerializer.deserialize(new DataInputStream(new ByteArrayInputStream(key))), weight, manager);
+                if (diskStore.restoreLocation(cacheEntry, in)) {
+                    handler.restore(cacheEntry, frequency);
+                    restored++;
+                }
+            }
+            if (in.readInt() != read)
+                throw new IOException("Corrupted manifest: " + file);
+            diskStore.endRestore();
+            return restored;
+        } finally {
+            in.close();
+            if (!file.delete())
+                throw new IOException("Failed to delete manifest: " + file);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.sbiz.cache.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.utils.SlabAllocator.Slot;
+
+/**
+ * Disk store keeping the values in memory mapped slab files. <br><br>
+ * Slabs are split in slots by a {@link SlabAllocator}. Reads are served from a view of the mapped buffer,
+ * handed to the deserializer without any intermediate copy.
+ */
+public class MappedDiskStore<K, V> extends ADiskStore<K, V> {
+
+    private static final String SLAB_PREFIX = "slab-";
+
+    private static final String SLAB_SUFFIX = ".dat";
+
+    private final HashMap<K, Slot> index = new HashMap<K, Slot>();
+
+    private final List<FileChannel> channels = new ArrayList<FileChannel>();
+
+    private final List<MappedByteBuffer> slabs = new ArrayList<MappedByteBuffer>();
+
+    private SlabAllocator allocator = newAllocator((int) CacheDefaults.DEFAULT_SEGMENT_SIZE);
+
+    private long diskSize;
+
+    public MappedDiskStore() {
+        this.diskSize = 0;
+    }
+
+    public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        ByteBuffer payload;
+        Slot slot = index.get(cacheEntry.getKey());
+        try {
+            payload = serialize(value);
+            if (slot == null || !slot.fits(payload.remaining())) {
+                // the old slot is released only once the new one is allocated: a failure leaves the index valid
+                Slot newSlot = allocator.allocate(payload.remaining());
+                if (slot != null)
+                    release(slot);
+                slot = newSlot;
+                index.put(cacheEntry.getKey(), slot);
+            } else {
+                diskSize -= slot.getLength();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write cache entry to slab", e);
+        }
+        slot.write(payload);
+        diskSize += slot.getLength();
+    }
+
+    public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+        Slot slot = index.get(cacheEntry.getKey());
+        if (slot == null)
+            return null;
+        try {
+            return deserialize(slot.read());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read cache entry from slab", e);
+        }
+    }
+
+    public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+        Slot slot = index.remove(cacheEntry.getKey());
+        if (slot != null)
+            release(slot);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    public synchronized void sync() {
+        for (MappedByteBuffer slab : slabs)
+            slab.force();
+    }
+
+    /**
+     * Force the slabs and close their files, the mappings are released when collected
+     */
+    public synchronized void close() {
+        sync();
+        closeChannels();
+        slabs.clear();
+    }
+
+    public synchronized void clear() {
+        closeChannels();
+        slabs.clear();
+        allocator.clear();
+        index.clear();
+        diskSize = 0;
+        File location = new File(diskLocation);
+        if (location.exists())
+            delete(location);
+    }
+
+    private void closeChannels() {
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("We've got an error closing slab: {}", e.getLocalizedMessage());
+            }
+        }
+        channels.clear();
+    }
+
+    public void setSlabSize(long slabSize) {
+        this.allocator = newAllocator((int) Math.min(slabSize, Integer.MAX_VALUE));
+    }
+
+    private void release(Slot slot) {
+        diskSize -= slot.getLength();
+        allocator.release(slot);
+    }
+
+    // Slabs are files mapped in memory, the disk is the limit
+    private SlabAllocator newAllocator(int slabSize) {
+        return new SlabAllocator(slabSize, Long.MAX_VALUE) {
+            protected ByteBuffer newSlab(int size) throws IOException {
+                if (channels.isEmpty())
+                    initLocation();
+                File file = new File(diskLocation + SLAB_PREFIX + String.format("%06d", channels.size()) + SLAB_SUFFIX);
+                FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+                channels.add(channel);
+                MappedByteBuffer slab = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                slabs.add(slab);
+                return slab;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.sbiz.cache.utils;
+
+/**
+ * Doubly-linked list where the nodes know the list they belong to, so
+ * removing or moving a node is O(1). Used by the strategies keeping several access ordered lists.
+ * First node is the oldest one, last node is the newest one.
+ */
+public class NodeList<E> {
+
+    public static class Node<E> {
+        private final E item;
+        private Node<E> previous;
+        private Node<E> next;
+        private NodeList<E> list;
+
+        public Node(E item) {
+            this.item = item;
+        }
+
+        public E getItem() {
+            return item;
+        }
+
+        public Node<E> getNext() {
+            return next;
+        }
+
+        /**
+         * @return the list containing this node or <code>null</code>
+         */
+        public NodeList<E> getList() {
+            return list;
+        }
+    }
+
+    private final String name;
+
+    private Node<E> first;
+
+    private Node<E> last;
+
+    private int size;
+
+    public NodeList(String name) {
+        this.name = name;
+    }
+
+    public void addLast(Node<E> node) {
+        if (node.list != null)
+            throw new IllegalStateException("Node already in list " + node.list.name);
+        node.list = this;
+        node.previous = last;
+        node.next = null;
+        if (last == null)
+            first = node;
+        else
+            last.next = node;
+        last = node;
+        size++;
+    }
+
+    public void remove(Node<E> node) {
+        if (node.list != this)
+            throw new IllegalStateException("Node not in list " + name);
+        if (node.previous == null)
+            first = node.next;
+        else
+            node.previous.next = node.next;
+        if (node.next == null)
+            last = node.previous;
+        else
+            node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        node.list = null;
+        size--;
+    }
+
+    public void moveToLast(Node<E> node) {
+        if (node != last) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    /**
+     * Remove and return the oldest node, <code>null</code> if empty
+     */
+    public Node<E> pollFirst() {
+        Node<E> node = first;
+        if (node != null)
+            remove(node);
+        return node;
+    }
+
+    public Node<E> first() {
+        return first;
+    }
+
+    public Node<E> last() {
+        return last;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        while (first != null)
+            remove(first);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
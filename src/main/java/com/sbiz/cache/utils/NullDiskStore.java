@@ -0,0 +1,45 @@
+package com.sbiz.cache.utils;
+
+/**
+ * Disk store keeping no values, only their count: lets the strategies be simulated (ex. the hit ratios
+ * of a trace) without any I/O or value storage. <br><br>
+ * Reads return the last value written, so all the entries are expected to share the same value.
+ */
+public class NullDiskStore<K, V> extends ADiskStore<K, V> {
+
+    private int size;
+
+    private V value;
+
+    public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        this.value = value;
+        if (add)
+            size++;
+    }
+
+    public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+        return value;
+    }
+
+    public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+        size--;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getDiskSize() {
+        return 0;
+    }
+
+    public synchronized void clear() {
+        size = 0;
+        value = null;
+    }
+
+    public void initLocation() {
+        // nothing written, no folder needed
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.sbiz.cache.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.utils.SlabAllocator.Slot;
+
+/**
+ * Second level of the cache keeping the values serialized in direct memory (out of the GC heap),
+ * in front of a disk store. <br><br>
+ * Direct buffer slabs are split in slots by a {@link SlabAllocator} bounded to the off-heap size in bytes.
+ * When no slot of the needed size class is left, the oldest entries of that size class are spilled
+ * to the disk store; values that still don't fit go straight to disk.
+ * The cache strategies see a single second level: heap, then off-heap, then disk.
+ */
+public class OffHeapStore<K, V> extends ADiskStore<K, V> {
+
+    private final ADiskStore<K, V> diskStore;
+
+    private final SlabAllocator allocator;
+
+    private final HashMap<K, Slot> index = new HashMap<K, Slot>();
+
+    // Off-heap entries of each size class, oldest first
+    private final List<LinkedHashMap<K, CacheEntry<K, V>>> sizeClasses = new ArrayList<LinkedHashMap<K, CacheEntry<K, V>>>();
+
+    // Entries spilled to the disk store
+    private final Set<K> spilled = new HashSet<K>();
+
+    private long offHeapBytes;
+
+    public OffHeapStore(ADiskStore<K, V> diskStore, long offHeapSize) {
+        this.diskStore = diskStore;
+        int slabSize = (int) Math.min(CacheDefaults.DEFAULT_OFF_HEAP_SLAB_SIZE, offHeapSize);
+        this.allocator = new SlabAllocator(slabSize, offHeapSize) {
+            protected ByteBuffer newSlab(int size) {
+                return ByteBuffer.allocateDirect(size);
+            }
+        };
+        this.offHeapBytes = 0;
+    }
+
+    public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        K key = cacheEntry.getKey();
+        try {
+            ByteBuffer payload = serialize(value);
+            Slot slot = index.get(key);
+            if (slot != null && slot.fits(payload.remaining())) {
+                offHeapBytes -= slot.getLength();
+                slot.write(payload);
+                offHeapBytes += slot.getLength();
+                return;
+            }
+            if (slot != null)
+                release(key, slot);
+            else if (spilled.remove(key))
+                diskStore.remove(cacheEntry);
+
+            // spilling writes with the buffer of the disk store: the payload stays valid
+            slot = allocate(payload.remaining());
+            if (slot == null) {
+                spill(cacheEntry, value);
+                return;
+            }
+            slot.write(payload);
+            index.put(key, slot);
+            sizeClass(slot.getSizeClass()).put(key, cacheEntry);
+            offHeapBytes += slot.getLength();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write cache entry off-heap", e);
+        }
+    }
+
+    public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+        Slot slot = index.get(cacheEntry.getKey());
+        if (slot == null)
+            return spilled.contains(cacheEntry.getKey()) ? diskStore.getValue(cacheEntry) : null;
+        try {
+            return deserialize(slot.read());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read cache entry off-heap", e);
+        }
+    }
+
+    public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+        K key = cacheEntry.getKey();
+        Slot slot = index.get(key);
+        if (slot != null)
+            release(key, slot);
+        else if (spilled.remove(key))
+            diskStore.remove(cacheEntry);
+    }
+
+    public synchronized int size() {
+        return index.size() + spilled.size();
+    }
+
+    public synchronized long getDiskSize() {
+        return diskStore.getDiskSize();
+    }
+
+    /**
+     * @return the number of entries kept off-heap
+     */
+    public synchronized int getOffHeapCount() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of value bytes kept off-heap
+     */
+    public synchronized long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public long getOffHeapSize() {
+        return allocator.getCapacity();
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        sizeClasses.clear();
+        spilled.clear();
+        allocator.clear();
+        offHeapBytes = 0;
+        diskStore.clear();
+    }
+
+    public void close() {
+        diskStore.close();
+    }
+
+    public synchronized long getUncompressedBytes() {
+        return super.getUncompressedBytes() + diskStore.getUncompressedBytes();
+    }
+
+    public synchronized long getCompressedBytes() {
+        return super.getCompressedBytes() + diskStore.getCompressedBytes();
+    }
+
+    /**
+     * Off-heap entries first (no I/O), then the spilled ones in the order of the disk store
+     */
+    public synchronized void sortByLocation(List<CacheEntry<K, V>> cacheEntries) {
+        List<CacheEntry<K, V>> onDisk = new ArrayList<CacheEntry<K, V>>();
+        int offHeap = 0;
+        for (CacheEntry<K, V> cacheEntry : cacheEntries) {
+            if (index.containsKey(cacheEntry.getKey()))
+                cacheEntries.set(offHeap++, cacheEntry);
+            else
+                onDisk.add(cacheEntry);
+        }
+        diskStore.sortByLocation(onDisk);
+        for (CacheEntry<K, V> cacheEntry : onDisk)
+            cacheEntries.set(offHeap++, cacheEntry);
+    }
+
+    public String getNextSubFolder() {
+        return diskStore.getNextSubFolder();
+    }
+
+    public void setDiskLocation(String diskLocation) {
+        super.setDiskLocation(diskLocation);
+        // called by the parent constructor, before the disk store is set
+        if (diskStore != null)
+            diskStore.setDiskLocation(diskLocation);
+    }
+
+    public void initLocation() {
+        diskStore.initLocation();
+    }
+
+    /**
+     * Allocate a slot, spilling to disk the oldest entries of the same size class when off-heap is full
+     */
+    private Slot allocate(int payloadLength) throws IOException {
+        Slot slot = allocator.allocate(payloadLength);
+        if (slot != null)
+            return slot;
+        LinkedHashMap<K, CacheEntry<K, V>> candidates = sizeClass(SlabAllocator.sizeClass(SlabAllocator.HEADER_SIZE + payloadLength));
+        Iterator<CacheEntry<K, V>> oldest = candidates.values().iterator();
+        if (!oldest.hasNext())
+            return null;
+        CacheEntry<K, V> victim = oldest.next();
+        slot = index.get(victim.getKey());
+        // the victim leaves off-heap only once it is on disk
+        spill(victim, deserialize(slot.read()));
+        oldest.remove();
+        index.remove(victim.getKey());
+        offHeapBytes -= slot.getLength();
+        return slot;
+    }
+
+    private void spill(CacheEntry<K, V> cacheEntry, V value) {
+        diskStore.addUpdate(cacheEntry, value, true);
+        spilled.add(cacheEntry.getKey());
+        logger.debug("  {} spilled to disk", cacheEntry.getKey());
+    }
+
+    private void release(K key, Slot slot) {
+        index.remove(key);
+        sizeClass(slot.getSizeClass()).remove(key);
+        offHeapBytes -= slot.getLength();
+        allocator.release(slot);
+    }
+
+    private LinkedHashMap<K, CacheEntry<K, V>> sizeClass(int sizeClass) {
+        while (sizeClasses.size() <= sizeClass)
+            sizeClasses.add(new LinkedHashMap<K, CacheEntry<K, V>>());
+        return sizeClasses.get(sizeClass);
+    }
+
+}
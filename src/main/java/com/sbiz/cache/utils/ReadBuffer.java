@@ -0,0 +1,85 @@
+package com.sbiz.cache.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy ring buffer used for recording reads without taking the cache lock. <br><br>
+ * Readers append to the stripe selected by their thread id using a single CAS. When the stripe is
+ * full (or the CAS is lost) the read is simply dropped: it only affects the accuracy of the policy.
+ * The buffer is drained by one thread at a time, the one holding the cache lock.
+ * Sources of inspiration:
+ *  - https://github.com/ben-manes/caffeine/wiki/Design#read-buffer
+ */
+public class ReadBuffer<E> {
+
+    // Must be a power of two
+    private static final int STRIPE_SIZE = 16;
+
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private static class Stripe<E> {
+        final AtomicLong writeCounter = new AtomicLong();
+        final AtomicReferenceArray<E> slots = new AtomicReferenceArray<E>(STRIPE_SIZE);
+        // Only updated by the draining thread
+        volatile long readCounter;
+    }
+
+    private final Stripe<E>[] stripes;
+
+    private final int stripesMask;
+
+    @SuppressWarnings("unchecked")
+    public ReadBuffer() {
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors())
+            count *= 2;
+        stripes = new Stripe[count];
+        for (int index = 0; index < count; index++)
+            stripes[index] = new Stripe<E>();
+        stripesMask = count - 1;
+    }
+
+    /**
+     * Record <code>element</code>. Returns <code>false</code> if the element was dropped.
+     */
+    public boolean offer(E element) {
+        Stripe<E> stripe = stripes[probe() & stripesMask];
+        long tail = stripe.writeCounter.get();
+        if (tail - stripe.readCounter >= STRIPE_SIZE)
+            return false;
+        if (!stripe.writeCounter.compareAndSet(tail, tail + 1))
+            return false;
+        stripe.slots.lazySet((int) (tail & STRIPE_MASK), element);
+        return true;
+    }
+
+    /**
+     * Replay all recorded elements. Must be called by only one thread at a time.
+     */
+    public void drain(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            while (head < tail) {
+                int index = (int) (head & STRIPE_MASK);
+                E element = stripe.slots.get(index);
+                if (element == null)
+                    // the writer won the slot but has not published the element yet
+                    break;
+                stripe.slots.lazySet(index, null);
+                consumer.accept(element);
+                head++;
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.sbiz.cache.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.sbiz.cache.Serializer;
+
+/**
+ * Reusable buffer values are serialized into, so writing an entry doesn't allocate a new stream.
+ * Not thread safe: each store keeps its own and uses it under its lock.
+ */
+public class SerializationBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_SIZE = 4 * 1024;
+
+    // Larger buffers are dropped after use, not to keep the largest value ever written
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private final DataOutputStream data = new DataOutputStream(this);
+
+    public SerializationBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * Serialize the value and return a view on the bytes, valid until the next call
+     */
+    public <V> ByteBuffer write(Serializer<V> serializer, V value) throws IOException {
+        if (buf.length > MAX_RETAINED_SIZE)
+            buf = new byte[INITIAL_SIZE];
+        reset();
+        serializer.serialize(value, data);
+        data.flush();
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+}
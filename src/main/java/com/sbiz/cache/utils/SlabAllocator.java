@@ -0,0 +1,141 @@
+package com.sbiz.cache.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slab allocator handing out slots of power of two size classes (64 bytes and up) carved from large buffers. <br><br>
+ * Freed slots are kept in a free list per size class and reused. Implementations decide where the slabs live
+ * (memory mapped files, direct memory).
+ * Slot format: <code>[int length][payload]</code>
+ * Sources of inspiration:
+ *  - https://github.com/memcached/memcached/wiki/UserInternals#how-memory-gets-allocated-for-items
+ */
+public abstract class SlabAllocator {
+
+    public static final int HEADER_SIZE = 4;
+
+    private static final int MIN_SLOT_SHIFT = 6;
+
+    public static class Slot {
+        private final ByteBuffer slab;
+        private final int offset;
+        private final int sizeClass;
+        private int length;
+
+        Slot(ByteBuffer slab, int offset, int sizeClass) {
+            this.slab = slab;
+            this.offset = offset;
+            this.sizeClass = sizeClass;
+        }
+
+        public void write(ByteBuffer payload) {
+            ByteBuffer view = slab.duplicate();
+            view.position(offset);
+            length = payload.remaining();
+            view.putInt(length).put(payload);
+        }
+
+        /**
+         * Bounds checked view on the payload: no copy
+         */
+        public ByteBuffer read() {
+            ByteBuffer view = slab.duplicate();
+            view.position(offset + HEADER_SIZE);
+            view.limit(offset + HEADER_SIZE + length);
+            return view;
+        }
+
+        public boolean fits(int payloadLength) {
+            return slotSize(sizeClass) >= HEADER_SIZE + payloadLength;
+        }
+
+        public int getSizeClass() {
+            return sizeClass;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final List<ArrayDeque<Slot>> freeSlots = new ArrayList<ArrayDeque<Slot>>();
+
+    private final int slabSize;
+
+    // Max bytes of all the slabs
+    private final long capacity;
+
+    private ByteBuffer currentSlab;
+
+    private long allocated;
+
+    protected SlabAllocator(int slabSize, long capacity) {
+        this.slabSize = slabSize;
+        this.capacity = capacity;
+    }
+
+    protected abstract ByteBuffer newSlab(int size) throws IOException;
+
+    /**
+     * Take a slot from the free list of the size class or carve it from the current slab.
+     * Returns <code>null</code> when the capacity is reached.
+     */
+    public Slot allocate(int payloadLength) throws IOException {
+        int sizeClass = sizeClass(HEADER_SIZE + payloadLength);
+        while (freeSlots.size() <= sizeClass)
+            freeSlots.add(new ArrayDeque<Slot>());
+        Slot free = freeSlots.get(sizeClass).pollFirst();
+        if (free != null)
+            return free;
+
+        int size = slotSize(sizeClass);
+        if (currentSlab == null || currentSlab.capacity() - currentSlab.position() < size) {
+            // records bigger than a slab get a slab of their own
+            int newSlabSize = Math.max(slabSize, size);
+            if (allocated + newSlabSize > capacity)
+                return null;
+            currentSlab = newSlab(newSlabSize);
+            allocated += newSlabSize;
+        }
+        Slot slot = new Slot(currentSlab, currentSlab.position(), sizeClass);
+        currentSlab.position(currentSlab.position() + size);
+        return slot;
+    }
+
+    public void release(Slot slot) {
+        freeSlots.get(slot.sizeClass).addFirst(slot);
+    }
+
+    public void clear() {
+        freeSlots.clear();
+        currentSlab = null;
+        allocated = 0;
+    }
+
+    /**
+     * @return the number of bytes of all the slabs
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public static int sizeClass(int recordLength) {
+        int sizeClass = 0;
+        while (slotSize(sizeClass) < recordLength)
+            sizeClass++;
+        return sizeClass;
+    }
+
+    public static int slotSize(int sizeClass) {
+        return 1 << (MIN_SLOT_SHIFT + sizeClass);
+    }
+
+}
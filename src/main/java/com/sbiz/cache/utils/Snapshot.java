@@ -0,0 +1,305 @@
+package com.sbiz.cache.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import com.sbiz.cache.Serializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Values of the memory entries of a cache, written by a checkpoint next to the {@link Manifest} and
+ * preloaded by the next cache started on the same location. <br><br>
+ * The entries are written in the order of the strategy, in chunks of about {@link #CHUNK_SIZE} bytes having
+ * each their own CRC32. The preload reads the chunks in sequence, checks and deserializes them in parallel
+ * and adds their entries in the written order. A corrupted chunk is skipped, a truncated file ends the preload.
+ * Format: <code>[magic][version] ([entry count][length][crc][entries])* [-1][count]</code>, each entry being
+ * <code>[frequency][weight][key length][key][value length][value]</code>
+ */
+public class Snapshot<K, V> {
+
+    public static final String FILE_NAME = "snapshot";
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final int MAGIC = 0x4A43534E;
+
+    private static final int VERSION = 1;
+
+    // Entry count marking the end of the chunks
+    private static final int END = -1;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File file;
+
+    private final Serializer<K> keySerializer;
+
+    private final Serializer<V> serializer;
+
+    // Open while writing
+    private File tempFile;
+
+    private FileOutputStream fileOut;
+
+    private DataOutputStream out;
+
+    private int count;
+
+    // Chunk being filled and its number of entries
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+    private final DataOutputStream chunkOut = new DataOutputStream(chunk);
+
+    private int chunkCount;
+
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+
+    private final CRC32 crc = new CRC32();
+
+    // Entry decoded from a chunk, added to the cache by the thread reading the snapshot
+    private static class Decoded<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        final int frequency;
+
+        Decoded(K key, V value, int weight, int frequency) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.frequency = frequency;
+        }
+    }
+
+    Snapshot(String location, Serializer<K> keySerializer, Serializer<V> serializer) {
+        this.file = new File(location + FILE_NAME);
+        this.keySerializer = keySerializer;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Start a new snapshot, the current one is kept until {@link #commit()}
+     */
+    void open() throws IOException {
+        file.getParentFile().mkdirs();
+        tempFile = new File(file.getPath() + ".tmp");
+        fileOut = new FileOutputStream(tempFile);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        chunk.reset();
+        chunkCount = 0;
+        count = 0;
+    }
+
+    /**
+     * Add a memory entry with its value
+     */
+    void write(CacheEntry<K, V> cacheEntry, int frequency) throws IOException {
+        V value = cacheEntry.getMemoryValue();
+        if (value == null)
+            return;
+        chunkOut.writeInt(frequency);
+        chunkOut.writeInt(cacheEntry.getWeight());
+        writeField(keySerializer, cacheEntry.getKey());
+        writeField(serializer, value);
+        chunkCount++;
+        count++;
+        if (chunk.size() >= CHUNK_SIZE)
+            writeChunk();
+    }
+
+    private <T> void writeField(Serializer<T> fieldSerializer, T field) throws IOException {
+        fieldBytes.reset();
+        fieldSerializer.serialize(field, new DataOutputStream(fieldBytes));
+        chunkOut.writeInt(fieldBytes.size());
+        fieldBytes.writeTo(chunkOut);
+    }
+
+    private void writeChunk() throws IOException {
+        if (chunkCount == 0)
+            return;
+        byte[] bytes = chunk.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(chunkCount);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+        chunk.reset();
+        chunkCount = 0;
+    }
+
+    /**
+     * Close the new snapshot and replace the current one with it
+     */
+    void commit() throws IOException {
+        writeChunk();
+        out.writeInt(END);
+        out.writeInt(count);
+        out.flush();
+        fileOut.getFD().sync();
+        out.close();
+        out = null;
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void abort() {
+        chunk.reset();
+        chunkCount = 0;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            out = null;
+        }
+        if (tempFile != null)
+            tempFile.delete();
+    }
+
+    /**
+     * Drop the snapshot: the cache changed since it was written
+     */
+    void delete() {
+        if (file.exists() && !file.delete())
+            throw new SecurityException("Failed to delete snapshot: " + file);
+    }
+
+    /**
+     * Read the snapshot with <code>threads</code> threads decoding the chunks and delete it.
+     * The entries of the chunks read before a corruption are kept.
+     *
+     * @return the number of entries restored, -1 when there is no snapshot
+     */
+    int restore(StoreManager<K, V> manager, Manifest.RestoreHandler<K, V> handler, int threads) throws IOException {
+        if (!file.exists())
+            return -1;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        ExecutorService decoders = IoExecutors.newBoundedExecutor("jcache-preload", threads, 2 * threads);
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a snapshot: " + file);
+
+            // chunks being decoded, in the file order
+            Deque<Future<List<Decoded<K, V>>>> decoding = new ArrayDeque<Future<List<Decoded<K, V>>>>();
+            long remaining = file.length();
+            int read = 0;
+            int restored = 0;
+            try {
+                int entries;
+                while ((entries = in.readInt()) != END) {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (entries < 0 || length < 0 || length > remaining)
+                        throw new IOException("invalid chunk header");
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    remaining -= length;
+                    read += entries;
+                    decoding.add(decoders.submit(new ChunkDecoder(bytes, entries, checksum)));
+                    if (decoding.size() == 2 * threads)
+                        restored += add(decoding.poll(), manager, handler);
+                }
+                if (in.readInt() != read)
+                    throw new IOException("invalid entry count");
+            } catch (EOFException e) {
+                logger.warn("Truncated snapshot {}, preloading the entries read", file);
+            } catch (IOException e) {
+                logger.warn("Corrupted snapshot {}, preloading the entries read: {}", file, e.getMessage());
+            }
+            while (!decoding.isEmpty())
+                restored += add(decoding.poll(), manager, handler);
+            return restored;
+        } finally {
+            decoders.shutdownNow();
+            in.close();
+            if (!file.delete())
+                throw new IOException("Failed to delete snapshot: " + file);
+        }
+    }
+
+    // Add the entries of a decoded chunk, nothing if it is corrupted
+    private int add(Future<List<Decoded<K, V>>> chunkEntries, StoreManager<K, V> manager,
+            Manifest.RestoreHandler<K, V> handler) throws IOException {
+        List<Decoded<K, V>> entries;
+        try {
+            entries = chunkEntries.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Preload of " + file + " interrupted");
+        } catch (ExecutionException e) {
+            logger.warn("Corrupted chunk skipped in snapshot {}: {}", file, e.getCause().toString());
+            return 0;
+        }
+        for (Decoded<K, V> entry : entries)
+            handler.restore(new CacheEntry<K, V>(entry.key, entry.value, entry.weight, manager), entry.frequency);
+        return entries.size();
+    }
+
+    // Checks and deserializes a chunk, in a decoder thread
+    private class ChunkDecoder implements Callable<List<Decoded<K, V>>> {
+
+        private final byte[] bytes;
+        private final int entries;
+        private final int checksum;
+
+        ChunkDecoder(byte[] bytes, int entries, int checksum) {
+            this.bytes = bytes;
+            this.entries = entries;
+            this.checksum = checksum;
+        }
+
+        public List<Decoded<K, V>> call() throws IOException {
+            CRC32 chunkCrc = new CRC32();
+            chunkCrc.update(bytes, 0, bytes.length);
+            if ((int) chunkCrc.getValue() != checksum)
+                throw new IOException("checksum mismatch");
+            DataInputStream chunkIn = new DataInputStream(new ByteArrayInputStream(bytes));
+            List<Decoded<K, V>> decoded = new ArrayList<Decoded<K, V>>(entries);
+            for (int i = 0; i < entries; i++) {
+                int frequency = chunkIn.readInt();
+                int weight = chunkIn.readInt();
+                K key = readField(keySerializer, chunkIn);
+                V value = readField(serializer, chunkIn);
+                decoded.add(new Decoded<K, V>(key, value, weight, frequency));
+            }
+            return decoded;
+        }
+
+        private <T> T readField(Serializer<T> fieldSerializer, DataInputStream chunkIn) throws IOException {
+            int length = chunkIn.readInt();
+            if (length < 0 || length > chunkIn.available())
+                throw new IOException("invalid field length");
+            byte[] field = new byte[length];
+            chunkIn.readFully(field);
+            return fieldSerializer.deserialize(new DataInputStream(new ByteArrayInputStream(field)));
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.sbiz.cache.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sbiz.cache.CacheStats;
+
+/**
+ * Statistics recorded by a cache built with <code>recordStats</code>: striped counters and latency
+ * histograms, cheap to update from many threads. A cache without stats has no counter at all,
+ * the recording sites only check for <code>null</code>.
+ */
+public class StatsCounter {
+
+    private final LongAdder memoryHits = new LongAdder();
+
+    private final LongAdder diskHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder promotions = new LongAdder();
+
+    private final LongAdder demotions = new LongAdder();
+
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+
+    private final LatencyHistogram diskReadLatency = new LatencyHistogram();
+
+    private final LatencyHistogram diskWriteLatency = new LatencyHistogram();
+
+    /**
+     * @param hit <code>false</code> for a miss
+     * @param diskStored whether the value was on the second level
+     */
+    public void recordGet(boolean hit, boolean diskStored, long nanos) {
+        if (!hit)
+            misses.increment();
+        else if (diskStored)
+            diskHits.increment();
+        else
+            memoryHits.increment();
+        getLatency.record(nanos);
+    }
+
+    public void recordPut(long nanos) {
+        puts.increment();
+        putLatency.record(nanos);
+    }
+
+    public void recordDiskRead(long nanos) {
+        diskReadLatency.record(nanos);
+    }
+
+    public void recordDiskWrite(long nanos) {
+        diskWriteLatency.record(nanos);
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    public void recordPromotion() {
+        promotions.increment();
+    }
+
+    public void recordDemotion() {
+        demotions.increment();
+    }
+
+    /**
+     * Copy of the current values. Taken without stopping the recording, so the values may be off
+     * by the operations running meanwhile.
+     */
+    public CacheStats snapshot() {
+        return new CacheStats(memoryHits.sum(), diskHits.sum(), misses.sum(), puts.sum(),
+                evictions.sum(), expirations.sum(), promotions.sum(), demotions.sum(),
+                new CacheStats.Latency(getLatency.snapshot()), new CacheStats.Latency(putLatency.snapshot()),
+                new CacheStats.Latency(diskReadLatency.snapshot()), new CacheStats.Latency(diskWriteLatency.snapshot()));
+    }
+
+}
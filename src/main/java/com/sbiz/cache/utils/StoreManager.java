@@ -1,20 +1,26 @@
 package com.sbiz.cache.utils;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.sbiz.cache.CacheDefaults;
+import com.sbiz.cache.Serializer;
+import com.sbiz.cache.Serializers;
+import com.sbiz.cache.Ticker;
+import com.sbiz.cache.Weigher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class StoreManager<K, V extends Serializable>  {
+public class StoreManager<K, V>  {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
     
     private ConcurrentHashMap<K, V> memoryStore;
 
-    private DiskStore<K, V> fileStore;
+    private ADiskStore<K, V> fileStore;
 
     /**
      *  Max disk size of the cache
@@ -30,11 +36,112 @@ public class StoreManager<K, V extends Serializable>  {
      *  Is disk storage enabled?
      */
     private boolean diskEnabled = CacheDefaults.DEFAULT_DISK_ENABLED;
+
+    /**
+     *  Type of disk store (one file per entry, log structured, memory mapped)
+     */
+    private String diskStoreType = CacheDefaults.DEFAULT_DISK_STORE;
+
+    private String diskLocation = CacheDefaults.DEFAULT_DISK_LOCATION;
+
+    private String subFoldersPattern = CacheDefaults.DEFAULT_SUBFOLDERS_PATTERN;
+
+    private long segmentSize = CacheDefaults.DEFAULT_SEGMENT_SIZE;
+
+    /**
+     *  Bytes of the off-heap tier in front of the disk store (0 for none)
+     */
+    private long offHeapSize = CacheDefaults.DEFAULT_OFF_HEAP_SIZE;
+
+    private OffHeapStore<K, V> offHeapStore;
+
+    /**
+     *  Values waiting for the background disk writer (0 for synchronous writes)
+     */
+    private int writeBehindQueueSize = 0;
+
+    private WriteBehindStore<K, V> writeBehindStore;
+
+    /**
+     *  Serializer of the values stored on disk and off-heap
+     */
+    private Serializer<V> serializer = Serializers.java();
+
+    /**
+     *  Values serialized in at least this number of bytes are compressed (-1 for no compression)
+     */
+    private int compressionThreshold = -1;
+
+    /**
+     *  Weight limits of the tiers (0 for none) and running totals
+     */
+    private Weigher<K, V> weigher;
+
+    private long maxMemoryWeight = CacheDefaults.DEFAULT_MAX_WEIGHT;
+
+    private long maxDiskWeight = CacheDefaults.DEFAULT_MAX_WEIGHT;
+
+    private long memoryWeight;
+
+    private long diskWeight;
+
+    /**
+     *  Time source of the entries and its reading when the store was created
+     */
+    private Ticker ticker = Ticker.SYSTEM;
+
+    private long origin;
+
+    // null when the statistics are not recorded
+    private StatsCounter stats;
+
+    /**
+     *  Keep the entries across restarts: disk ones indexed by a manifest, memory ones in a snapshot
+     */
+    private boolean warmRestart;
+
+    private Serializer<K> keySerializer = Serializers.java();
+
+    /**
+     *  Threads decoding the snapshot chunks on startup
+     */
+    private int preloadThreads = CacheDefaults.DEFAULT_PRELOAD_THREADS;
+
+    // null when warm restart is disabled
+    private Manifest<K, V> manifest;
+
+    private Snapshot<K, V> snapshot;
+
+    // True from a checkpoint to the next change making it stale
+    private boolean checkpointValid;
+
+    // Disk entry read ahead of its promotion and its value, see prefetch
+    private CacheEntry<K, V> prefetched;
+
+    private V prefetchedValue;
+
+    // Disk entry whose prefetch failed, removed without reading it again
+    private CacheEntry<K, V> unreadable;
     
     public StoreManager() {
         memoryStore = new ConcurrentHashMap<K, V>();
-        if (diskEnabled)
-            fileStore = new DiskStore<K, V>();
+        origin = ticker.read();
+    }
+
+    public void setTicker(Ticker ticker) {
+        this.ticker = ticker;
+        this.origin = ticker.read();
+    }
+
+    public void setStats(StatsCounter stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Nanoseconds since the store was created, never negative
+     */
+    public long now() {
+        return ticker.read() - origin;
     }
 
     /** 
@@ -42,27 +149,37 @@ public class StoreManager<K, V extends Serializable>  {
      */
 	public V getValue(CacheEntry<K, V> cacheEntry)  {
         if (cacheEntry.isDiskStored())
-            return fileStore.getValue(cacheEntry);
+            return readDisk(cacheEntry);
         else
             return memoryStore.get(cacheEntry.getKey());
 	}
 
+    /**
+     * Load the value from memory only. Returns <code>null</code> if not (or no longer) in memory.
+     */
+    public V getMemoryValue(CacheEntry<K, V> cacheEntry) {
+        return memoryStore.get(cacheEntry.getKey());
+    }
+
     /**
      * Method that will store this value depending on memory/disk load.<br><br>
      * Will return <code>true</code> if stored on disk or <code>false</code> if 
-     * stored on memory.
+     * stored on memory. With <code>memoryAllowed</code> false the value goes to disk.
      */
-	public boolean put(CacheEntry<K, V> cacheEntry, V value) {
+	public boolean put(CacheEntry<K, V> cacheEntry, V value, boolean memoryAllowed) {
+        int weight = cacheEntry.getWeight();
         
         // see first if memory has space
-        if (memoryStore.size() < maxMemorySize) {
+        if (memoryAllowed && fitsInMemory(weight)) {
             memoryStore.put(cacheEntry.getKey(), value);
+            memoryWeight += weight;
             return false;
         } 
         
-        // see if disk has space
-        if (diskEnabled && fileStore.size() < maxMemorySize) { 
-            fileStore.addUpdate(cacheEntry, value, true);
+        // see if disk has space (strategies moving entries to disk trim it right after)
+        if (diskEnabled) { 
+            writeDisk(cacheEntry, value, true);
+            diskWeight += weight;
             return true;
         }
 
@@ -89,8 +206,13 @@ public class StoreManager<K, V extends Serializable>  {
      */
 	private boolean moveToDisk(CacheEntry<K, V> cacheEntry) {
         V value = memoryStore.get(cacheEntry.getKey());
+        // written first: a failed write leaves the value in memory
+        writeDisk(cacheEntry, value, true);
         memoryStore.remove(cacheEntry.getKey());
-        fileStore.addUpdate(cacheEntry, value, true);
+        if (stats != null)
+            stats.recordDemotion();
+        memoryWeight -= cacheEntry.getWeight();
+        diskWeight += cacheEntry.getWeight();
         return true;
 	}
 
@@ -99,31 +221,156 @@ public class StoreManager<K, V extends Serializable>  {
      * from Disk to Memory. This will return <code>false</code> as will be stored in diskStored variable
      */
 	private boolean moveInMemory(CacheEntry<K, V> cacheEntry) {
-        V value = fileStore.getValue(cacheEntry);
+        V value = readDisk(cacheEntry);
+        invalidateCheckpoint();
         fileStore.remove(cacheEntry);
+        if (stats != null)
+            stats.recordPromotion();
         memoryStore.put(cacheEntry.getKey(), value);
+        diskWeight -= cacheEntry.getWeight();
+        memoryWeight += cacheEntry.getWeight();
         return false;
 	}
 
+    /**
+     * Called before every change of the disk and every update or removal in memory: a checkpoint
+     * pointing to replaced or removed values would restore stale values after a crash
+     */
+    private void invalidateCheckpoint() {
+        if (checkpointValid) {
+            manifest.delete();
+            checkpointValid = false;
+        }
+    }
+
+    /**
+     * Read the value of a disk entry ahead of its promotion, so a strategy finds an unreadable value (torn or
+     * corrupted record) before moving any entry. The value is kept for the next read of the entry. Throws an
+     * UncheckedIOException if the value can't be read: the removal of the entry then skips the read.
+     */
+    public void prefetch(CacheEntry<K, V> cacheEntry) {
+        prefetched = null;
+        prefetchedValue = null;
+        try {
+            prefetchedValue = readDisk(cacheEntry);
+        } catch (UncheckedIOException e) {
+            unreadable = cacheEntry;
+            throw e;
+        }
+        prefetched = cacheEntry;
+    }
+
+    private void forgetPrefetch(CacheEntry<K, V> cacheEntry) {
+        if (cacheEntry == prefetched) {
+            prefetched = null;
+            prefetchedValue = null;
+        }
+        if (cacheEntry == unreadable)
+            unreadable = null;
+    }
+
+    private V readDisk(CacheEntry<K, V> cacheEntry) {
+        if (cacheEntry == prefetched) {
+            V value = prefetchedValue;
+            forgetPrefetch(cacheEntry);
+            return value;
+        }
+        if (stats == null)
+            return fileStore.getValue(cacheEntry);
+        long start = System.nanoTime();
+        V value = fileStore.getValue(cacheEntry);
+        stats.recordDiskRead(System.nanoTime() - start);
+        return value;
+    }
+
+    private void writeDisk(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        invalidateCheckpoint();
+        forgetPrefetch(cacheEntry);
+        if (stats == null) {
+            fileStore.addUpdate(cacheEntry, value, add);
+            return;
+        }
+        long start = System.nanoTime();
+        fileStore.addUpdate(cacheEntry, value, add);
+        stats.recordDiskWrite(System.nanoTime() - start);
+    }
+
     /**
      *  Update an existing value
      */
 	public void updateValue(CacheEntry<K, V> cacheEntry, V value) {
-        if (cacheEntry.isDiskStored())
-            fileStore.addUpdate(cacheEntry, value, false);
-        else 
+        invalidateCheckpoint();
+        int weight = weigh(cacheEntry.getKey(), value);
+        if (cacheEntry.isDiskStored()) {
+            writeDisk(cacheEntry, value, false);
+            diskWeight += weight - cacheEntry.getWeight();
+        } else {
             memoryStore.put(cacheEntry.getKey(), value);
+            memoryWeight += weight - cacheEntry.getWeight();
+        }
+        cacheEntry.setWeight(weight);
 	}
 
+    /**
+     * Weight of the entry, 0 when no weigher is set
+     */
+    public int weigh(K key, V value) {
+        if (weigher == null)
+            return 0;
+        int weight = weigher.weigh(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("Negative weight for " + key);
+        return weight;
+    }
+
+    /**
+     * Is there room in memory for one more entry of this weight?
+     */
+    public boolean fitsInMemory(int weight) {
+        return memoryStore.size() < maxMemorySize
+                && (maxMemoryWeight == 0 || memoryWeight + weight <= maxMemoryWeight);
+    }
+
+    /**
+     * Entries heavier than the memory can hold are not cached
+     */
+    public boolean isTooHeavy(int weight) {
+        return maxMemoryWeight > 0 && weight > maxMemoryWeight;
+    }
+
+    public boolean isMemoryOverflow() {
+        return memoryStore.size() > maxMemorySize
+                || (maxMemoryWeight > 0 && memoryWeight > maxMemoryWeight);
+    }
+
+    public boolean isDiskOverflow() {
+        return diskEnabled && (fileStore.size() > maxDiskSize
+                || (maxDiskWeight > 0 && diskWeight > maxDiskWeight));
+    }
+
     /**
      *  Clear store 
      */
 	public void clear() {
+        checkpointValid = false;
+        prefetched = null;
+        prefetchedValue = null;
+        unreadable = null;
         if (diskEnabled)
             fileStore.clear();
         memoryStore.clear();
+        memoryWeight = 0;
+        diskWeight = 0;
 	}
 
+    /**
+     * Write the pending values and release the threads and files of the disk store
+     */
+    public void close() {
+        if (diskEnabled)
+            fileStore.close();
+    }
+
 	/**
 	 * @return the maxDiskSize
 	 */
@@ -161,11 +408,165 @@ public class StoreManager<K, V extends Serializable>  {
     }
 
     public void setDiskLocation(String diskLocation) {
-        if (fileStore == null)
-            fileStore = new DiskStore<K, V>();
-        fileStore.setDiskLocation(diskLocation);
+        this.diskLocation = diskLocation;
 	}
 
+    public void setDiskStoreType(String diskStoreType) {
+        this.diskStoreType = diskStoreType;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setOffHeapSize(long offHeapSize) {
+        this.offHeapSize = offHeapSize;
+    }
+
+    public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+        this.writeBehindQueueSize = writeBehindQueueSize;
+    }
+
+    public void setSerializer(Serializer<V> serializer) {
+        this.serializer = serializer;
+    }
+
+    public void setWarmRestart(boolean warmRestart) {
+        this.warmRestart = warmRestart;
+    }
+
+    public boolean isWarmRestart() {
+        return warmRestart;
+    }
+
+    public void setKeySerializer(Serializer<K> keySerializer) {
+        this.keySerializer = keySerializer;
+    }
+
+    public void setPreloadThreads(int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+    }
+
+    /**
+     * Write the manifest of the disk entries and the snapshot of the memory ones, listed by <code>entries</code>
+     * in the order of the strategy. The staged values are written and the disk synced first, so the manifest
+     * only points to values on disk.
+     */
+    public void checkpoint(Manifest.EntrySource<K, V> entries) {
+        try {
+            fileStore.sync();
+            fileStore.prepareCheckpoint();
+            manifest.open();
+            entries.writeEntries(manifest);
+            manifest.commit();
+            checkpointValid = true;
+        } catch (IOException e) {
+            manifest.abort();
+            throw new UncheckedIOException("Checkpoint of " + diskLocation + " failed", e);
+        }
+    }
+
+    /**
+     * Add the memory entries of the last checkpoint with their values, after the disk ones
+     * ({@link #restore(Manifest.RestoreHandler)}). The snapshot chunks are decoded in parallel.
+     *
+     * @return the number of entries preloaded, -1 when there is no snapshot
+     */
+    public int preload(Manifest.RestoreHandler<K, V> handler) throws IOException {
+        return snapshot.restore(this, handler, preloadThreads);
+    }
+
+    /**
+     * Put the value of an entry preloaded from the snapshot in memory
+     */
+    void putRestored(CacheEntry<K, V> cacheEntry, V value) {
+        memoryStore.put(cacheEntry.getKey(), value);
+        memoryWeight += cacheEntry.getWeight();
+    }
+
+    /**
+     * Index the disk entries of the last checkpoint, without reading their values. The disk records are
+     * checked first, with as many threads as the preload. On an exception
+     * the entries already passed to the handler must be cleared.
+     *
+     * @return the number of entries restored, -1 when there is no manifest
+     */
+    public int restore(final Manifest.RestoreHandler<K, V> handler) throws IOException {
+        return manifest.restore(this, new Manifest.RestoreHandler<K, V>() {
+            public void restore(CacheEntry<K, V> cacheEntry, int frequency) {
+                diskWeight += cacheEntry.getWeight();
+                handler.restore(cacheEntry, frequency);
+            }
+        }, preloadThreads);
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public void setWeigher(Weigher<K, V> weigher) {
+        this.weigher = weigher;
+    }
+
+    public void setMaxMemoryWeight(long maxMemoryWeight) {
+        this.maxMemoryWeight = maxMemoryWeight;
+    }
+
+    public void setMaxDiskWeight(long maxDiskWeight) {
+        this.maxDiskWeight = maxDiskWeight;
+    }
+
+    /**
+     * @return the total weight of the entries stored in memory
+     */
+    public long getMemoryWeight() {
+        return memoryWeight;
+    }
+
+    /**
+     * @return the total weight of the entries stored on disk
+     */
+    public long getDiskWeight() {
+        return diskWeight;
+    }
+
+    /**
+     * @return the number of second level entries kept off-heap
+     */
+    public int getOffHeapCount() {
+        return offHeapStore == null ? 0 : offHeapStore.getOffHeapCount();
+    }
+
+    /**
+     * @return the number of second level entries waiting to be written to disk
+     */
+    public int getStagedCount() {
+        return writeBehindStore == null ? 0 : writeBehindStore.getStagedCount();
+    }
+
+    /**
+     * Wait until the entries waiting for the background writer are on disk
+     */
+    public void flush() {
+        if (writeBehindStore != null)
+            writeBehindStore.flush();
+    }
+
+    /**
+     * Order second level entries of a batch to read their values with the fewest seeks
+     */
+    public void sortByLocation(List<CacheEntry<K, V>> cacheEntries) {
+        if (diskEnabled && cacheEntries.size() > 1)
+            fileStore.sortByLocation(cacheEntries);
+    }
+
+    /**
+     * Subfolder for a new cache entry, <code>null</code> if the disk store doesn't use them
+     */
+    public String getNextSubFolder() {
+        return fileStore.getNextSubFolder();
+    }
+
     public String toString() {
         String memoryFillRatio = String.format("%3d",(int)((memoryStore.size() * 100.0f)/maxMemorySize));
         String diskFillRatio = String.format("%3d",(int)((fileStore.size() * 100.0f)/maxDiskSize));
@@ -174,34 +575,115 @@ public class StoreManager<K, V extends Serializable>  {
         StringBuilder sb = new StringBuilder();
         
         sb.append("[Memory: ").append(memoryFillRatio).append("%]");
+        if (maxMemoryWeight > 0)
+            sb.append(" [MemoryWeight: ").append(memoryWeight).append("/").append(maxMemoryWeight).append("]");
+        if (offHeapStore != null) {
+            String offHeapFillRatio = String.format("%3d",(int)((offHeapStore.getOffHeapBytes() * 100.0f)/offHeapSize));
+            sb.append(" [OffHeap: ").append(offHeapFillRatio).append("%, ")
+                    .append(offHeapStore.getOffHeapCount()).append(" objects]");
+        }
         if (diskEnabled) {
             sb.append(" [DiskObjects: ").append(diskFillRatio).append("%]");
             sb.append(" [DiskSize: ").append(diskSize).append("]");
+            if (writeBehindStore != null)
+                sb.append(" [WriteBehind: ").append(writeBehindStore.getStagedCount()).append(" staged]");
+            if (compressionThreshold >= 0 && fileStore.getCompressedBytes() > 0) {
+                String ratio = String.format("%.2f", (double) fileStore.getUncompressedBytes() / fileStore.getCompressedBytes());
+                sb.append(" [Compression: ").append(ratio).append("x]");
+            }
+            if (maxDiskWeight > 0)
+                sb.append(" [DiskWeight: ").append(diskWeight).append("/").append(maxDiskWeight).append("]");
         }
         return sb.toString();
     }
 
 	public V remove(CacheEntry<K, V> cacheEntry) {
+        V value = null;
+        try {
+            // the prefetch already failed and logged
+            if (cacheEntry != unreadable)
+                value = getValue(cacheEntry);
+        } catch (UncheckedIOException e) {
+            // the value is lost anyway, the entry must still go
+            logger.error("[{}] - removing an unreadable value: {} ({})", cacheEntry.getKey(), e.getMessage(),
+                    e.getCause().getMessage());
+        }
+        discard(cacheEntry);
+        return value;
+	}
+
+    /**
+     * Remove the value without reading it
+     */
+    public void discard(CacheEntry<K, V> cacheEntry) {
         logger.debug("[{}] - removing from store", cacheEntry.getKey());
-        V value = getValue(cacheEntry);
-        if (cacheEntry.isDiskStored())
+        invalidateCheckpoint();
+        forgetPrefetch(cacheEntry);
+        if (cacheEntry.isDiskStored()) {
             fileStore.remove(cacheEntry);
-        else
+            diskWeight -= cacheEntry.getWeight();
+        } else {
             memoryStore.remove(cacheEntry.getKey());
-        return value;
-	}
+            memoryWeight -= cacheEntry.getWeight();
+        }
+    }
 
 	public void build() {
+        fileStore = createDiskStore();
+        fileStore.setDiskLocation(diskLocation);
+        fileStore.setSerializer(serializer);
+        if (compressionThreshold >= 0)
+            fileStore.setCompression(compressionThreshold);
         if (diskEnabled)
             fileStore.initLocation();
+        if (diskEnabled && writeBehindQueueSize > 0) {
+            writeBehindStore = new WriteBehindStore<K, V>(fileStore, writeBehindQueueSize);
+            fileStore = writeBehindStore;
+        }
+        // heap -> off-heap -> (write-behind) disk
+        if (diskEnabled && offHeapSize > 0) {
+            offHeapStore = new OffHeapStore<K, V>(fileStore, offHeapSize);
+            offHeapStore.setSerializer(serializer);
+            if (compressionThreshold >= 0)
+                offHeapStore.setCompression(compressionThreshold);
+            fileStore = offHeapStore;
+        }
+        if (warmRestart) {
+            if (!diskEnabled || !fileStore.isRestartable())
+                throw new IllegalArgumentException("Warm restart needs a " + CacheDefaults.DISK_STORE_FILES + " or "
+                        + CacheDefaults.DISK_STORE_LOG + " disk store without off-heap tier!");
+            snapshot = new Snapshot<K, V>(fileStore.getDiskLocation(), keySerializer, serializer);
+            manifest = new Manifest<K, V>(fileStore, diskStoreType, keySerializer, snapshot);
+        }
 	}
 
+    private ADiskStore<K, V> createDiskStore() {
+        if (CacheDefaults.DISK_STORE_LOG.equals(diskStoreType)) {
+            LogStructuredDiskStore<K, V> logStore = new LogStructuredDiskStore<K, V>();
+            logStore.setSegmentSize(segmentSize);
+            return logStore;
+        }
+        if (CacheDefaults.DISK_STORE_MMAP.equals(diskStoreType)) {
+            MappedDiskStore<K, V> mappedStore = new MappedDiskStore<K, V>();
+            mappedStore.setSlabSize(segmentSize);
+            return mappedStore;
+        }
+        if (CacheDefaults.DISK_STORE_NULL.equals(diskStoreType))
+            return new NullDiskStore<K, V>();
+        if (CacheDefaults.DISK_STORE_FILES.equals(diskStoreType)) {
+            DiskStore<K, V> diskStore = new DiskStore<K, V>();
+            diskStore.setSubFoldersPattern(subFoldersPattern);
+            return diskStore;
+        }
+        throw new IllegalArgumentException("Unknown disk store type: " + diskStoreType);
+    }
+
 	public boolean isMemoryFull() {
 		return memoryStore.size() == maxMemorySize;
 	}
 
 	public void setSubFoldersPattern(String subFoldersPattern) {
-        this.fileStore.setSubFoldersPattern(subFoldersPattern);
+        this.subFoldersPattern = subFoldersPattern;
 	}
 
 
@@ -0,0 +1,178 @@
+package com.sbiz.cache.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel holding the entries to expire. <br><br>
+ * Each level has 64 buckets, each bucket covering 64 times the time of a bucket of the level below
+ * (about 1 ms, 67 ms, 4 s, 4.6 min, 4.9 h and 13 days). An entry is put in the lowest level able to hold
+ * its expiration time, so scheduling and descheduling are O(1). When the time advances only the elapsed
+ * buckets are visited: their entries are expired or moved down to a finer level.
+ * The entries are linked in the buckets through their own fields, no node is allocated.
+ * Times are relative to the store origin, so never negative. Not thread safe: used under the cache lock.
+ * Sources of inspiration:
+ *  - http://www.cs.columbia.edu/~nahum/w6998/papers/ton97-timing-wheels.pdf
+ *  - https://github.com/ben-manes/caffeine/blob/master/caffeine/src/main/java/com/github/benmanes/caffeine/cache/TimerWheel.java
+ */
+public class TimerWheel<K, V> {
+
+    private static final int LEVELS = 6;
+
+    private static final int BUCKET_BITS = 6;
+
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+
+    private static final int BUCKET_MASK = BUCKETS - 1;
+
+    // 2^20 ns (about 1 ms) per bucket of the first level
+    private static final int FIRST_SHIFT = 20;
+
+    private final CacheEntry<K, V>[] buckets;
+
+    // Entries too far in the future for the last level
+    private CacheEntry<K, V> overflow;
+
+    private long time;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long time) {
+        this.buckets = new CacheEntry[LEVELS * BUCKETS];
+        this.time = time;
+    }
+
+    /**
+     * Add the entry, or move it if already scheduled, according to its expiration time
+     */
+    public void schedule(CacheEntry<K, V> cacheEntry) {
+        deschedule(cacheEntry);
+        if (cacheEntry.getExpirationTime() == Long.MAX_VALUE)
+            return;
+        link(cacheEntry, bucketOf(Math.max(cacheEntry.getExpirationTime(), time)));
+        size++;
+    }
+
+    public void deschedule(CacheEntry<K, V> cacheEntry) {
+        if (cacheEntry.wheelBucket == CacheEntry.NOT_SCHEDULED)
+            return;
+        CacheEntry<K, V> previous = cacheEntry.previousInWheel;
+        CacheEntry<K, V> next = cacheEntry.nextInWheel;
+        if (previous != null)
+            previous.nextInWheel = next;
+        else if (cacheEntry.wheelBucket == LEVELS * BUCKETS)
+            overflow = next;
+        else
+            buckets[cacheEntry.wheelBucket] = next;
+        if (next != null)
+            next.previousInWheel = previous;
+        cacheEntry.previousInWheel = null;
+        cacheEntry.nextInWheel = null;
+        cacheEntry.wheelBucket = CacheEntry.NOT_SCHEDULED;
+        size--;
+    }
+
+    /**
+     * Move the time to <code>now</code>, handing the expired entries to <code>expire</code>
+     * (already descheduled) and moving the others to finer buckets. Returns the number of expired entries.
+     */
+    public int advance(long now, Consumer<CacheEntry<K, V>> expire) {
+        long previous = time;
+        if (now <= previous && size == 0)
+            return 0;
+        time = now;
+        int expired = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = FIRST_SHIFT + level * BUCKET_BITS;
+            long previousTicks = previous >>> shift;
+            long currentTicks = now >>> shift;
+            // the upper levels didn't move either
+            if (level > 0 && previousTicks == currentTicks)
+                return expired;
+            // the current bucket of the first level may have new entries expiring soon
+            long first = level == 0 ? previousTicks : previousTicks + 1;
+            long last = Math.min(currentTicks, first + BUCKET_MASK);
+            for (long tick = first; tick <= last; tick++)
+                expired += expireBucket(level * BUCKETS + (int) (tick & BUCKET_MASK), now, expire);
+        }
+        return expired + expireBucket(LEVELS * BUCKETS, now, expire);
+    }
+
+    public void clear() {
+        for (int bucket = 0; bucket <= LEVELS * BUCKETS; bucket++) {
+            CacheEntry<K, V> cacheEntry = head(bucket);
+            while (cacheEntry != null) {
+                CacheEntry<K, V> next = cacheEntry.nextInWheel;
+                cacheEntry.previousInWheel = null;
+                cacheEntry.nextInWheel = null;
+                cacheEntry.wheelBucket = CacheEntry.NOT_SCHEDULED;
+                cacheEntry = next;
+            }
+        }
+        Arrays.fill(buckets, null);
+        overflow = null;
+        size = 0;
+    }
+
+    /**
+     * @return the number of scheduled entries
+     */
+    public int size() {
+        return size;
+    }
+
+    private int expireBucket(int bucket, long now, Consumer<CacheEntry<K, V>> expire) {
+        int expired = 0;
+        // detach the bucket first: the entries not expired yet may come back in it
+        CacheEntry<K, V> cacheEntry = head(bucket);
+        if (bucket == LEVELS * BUCKETS)
+            overflow = null;
+        else
+            buckets[bucket] = null;
+        while (cacheEntry != null) {
+            CacheEntry<K, V> next = cacheEntry.nextInWheel;
+            cacheEntry.previousInWheel = null;
+            cacheEntry.nextInWheel = null;
+            cacheEntry.wheelBucket = CacheEntry.NOT_SCHEDULED;
+            size--;
+            // the expiration time may have been pushed back by reads since it was scheduled
+            if (cacheEntry.getExpirationTime() <= now) {
+                expire.accept(cacheEntry);
+                expired++;
+            } else {
+                schedule(cacheEntry);
+            }
+            cacheEntry = next;
+        }
+        return expired;
+    }
+
+    private int bucketOf(long expirationTime) {
+        long delay = expirationTime - time;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = FIRST_SHIFT + level * BUCKET_BITS;
+            // within the range of the level: the bucket is not reused before it expires
+            if (delay < (1L << (shift + BUCKET_BITS)))
+                return level * BUCKETS + (int) ((expirationTime >>> shift) & BUCKET_MASK);
+        }
+        return LEVELS * BUCKETS;
+    }
+
+    private CacheEntry<K, V> head(int bucket) {
+        return bucket == LEVELS * BUCKETS ? overflow : buckets[bucket];
+    }
+
+    private void link(CacheEntry<K, V> cacheEntry, int bucket) {
+        CacheEntry<K, V> head = head(bucket);
+        cacheEntry.nextInWheel = head;
+        if (head != null)
+            head.previousInWheel = cacheEntry;
+        if (bucket == LEVELS * BUCKETS)
+            overflow = cacheEntry;
+        else
+            buckets[bucket] = cacheEntry;
+        cacheEntry.wheelBucket = bucket;
+    }
+
+}
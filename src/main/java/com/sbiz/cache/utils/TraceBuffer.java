@@ -0,0 +1,139 @@
+package com.sbiz.cache.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated ring buffer of the operations of a cache, recorded without allocation nor lock
+ * and drained by a single thread (the asynchronous flush). <br><br>
+ * Each event claims a sequence number, writes its fields in the slot <code>sequence % capacity</code>
+ * then publishes the sequence in the slot. When the writers get more than <code>capacity</code>
+ * events ahead of the drain the oldest events are overwritten and counted as dropped.
+ */
+public class TraceBuffer {
+
+    public static final int GET_MEMORY_HIT = 0;
+
+    public static final int GET_DISK_HIT = 1;
+
+    public static final int GET_MISS = 2;
+
+    public static final int PUT = 3;
+
+    private static final String[] TYPE_NAMES = { "GET memory hit", "GET disk hit", "GET miss", "PUT" };
+
+    // Fields of a slot, in the events array
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    private static final int DURATION = 2;
+    private static final int TYPE = 3;
+    private static final int FIELDS = 4;
+
+    /**
+     * Receives the drained events, oldest first
+     */
+    public interface EventHandler {
+        void onEvent(int type, Object key, long time, long duration);
+    }
+
+    private final int mask;
+
+    // Sequence, time (System.nanoTime()), duration and type of each slot
+    private final AtomicLongArray events;
+
+    private final AtomicReferenceArray<Object> keys;
+
+    // Next sequence to claim
+    private final AtomicLong cursor = new AtomicLong();
+
+    // Next sequence to drain, only used by the draining thread
+    private long next;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public TraceBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Trace capacity must be positive!");
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity)
+            slots <<= 1;
+        mask = slots - 1;
+        events = new AtomicLongArray(slots * FIELDS);
+        keys = new AtomicReferenceArray<Object>(slots);
+        for (int slot = 0; slot < slots; slot++)
+            events.set(slot * FIELDS + SEQUENCE, -1);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Record an event. The key is kept until its slot is reused.
+     */
+    public void record(int type, Object key, long time, long duration) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+        int base = slot * FIELDS;
+        // invalidate the slot first: a drain reading it meanwhile sees the event is overwritten
+        events.lazySet(base + SEQUENCE, -1);
+        events.lazySet(base + TIME, time);
+        events.lazySet(base + DURATION, duration);
+        events.lazySet(base + TYPE, type);
+        keys.lazySet(slot, key);
+        events.lazySet(base + SEQUENCE, sequence);
+    }
+
+    /**
+     * Pass the events recorded since the last drain to the handler, stopping at the first one still
+     * being written. Must not be called concurrently.
+     *
+     * @return the number of events handled
+     */
+    public int drain(EventHandler handler) {
+        int handled = 0;
+        long end = cursor.get();
+        while (next < end) {
+            if (end - next > mask + 1) {
+                dropped.addAndGet(end - next - mask - 1);
+                next = end - mask - 1;
+            }
+            int slot = (int) next & mask;
+            int base = slot * FIELDS;
+            if (events.get(base + SEQUENCE) != next) {
+                end = cursor.get();
+                if (end - next <= mask + 1)
+                    break; // not published yet
+                continue; // overwritten, skipped at the top of the loop
+            }
+            long time = events.get(base + TIME);
+            long duration = events.get(base + DURATION);
+            int type = (int) events.get(base + TYPE);
+            Object key = keys.get(slot);
+            if (events.get(base + SEQUENCE) == next) {
+                handler.onEvent(type, key, time, duration);
+                handled++;
+            } else {
+                dropped.incrementAndGet();
+            }
+            next++;
+        }
+        return handled;
+    }
+
+    /**
+     * @return the number of events overwritten before being drained
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public static String typeName(int type) {
+        return TYPE_NAMES[type];
+    }
+
+}
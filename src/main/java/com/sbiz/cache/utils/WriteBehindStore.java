@@ -0,0 +1,264 @@
+package com.sbiz.cache.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Disk store writing in the background: values are staged in memory and a writer thread
+ * writes them in batches to the real disk store, with one sync per batch. <br><br>
+ * Staged values stay readable until their write completes. When the staging area is full
+ * the callers wait for the writer (backpressure).
+ * Sources of inspiration:
+ *  - https://www.ehcache.org/documentation/3.8/writers.html
+ */
+public class WriteBehindStore<K, V> extends ADiskStore<K, V> {
+
+    private class Pending {
+        final CacheEntry<K, V> cacheEntry;
+        final V value;
+        final boolean add;
+
+        Pending(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+            this.cacheEntry = cacheEntry;
+            this.value = value;
+            this.add = add;
+        }
+    }
+
+    private final ADiskStore<K, V> diskStore;
+
+    private final int capacity;
+
+    // Values waiting for the writer, oldest first
+    private LinkedHashMap<K, Pending> staged = new LinkedHashMap<K, Pending>();
+
+    // Values being written by the writer
+    private HashMap<K, Pending> inFlight = new HashMap<K, Pending>();
+
+    private int size;
+
+    private final Thread writer;
+
+    public WriteBehindStore(ADiskStore<K, V> diskStore, int capacity) {
+        this.diskStore = diskStore;
+        this.capacity = capacity;
+        this.size = 0;
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "jcache-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public synchronized void addUpdate(CacheEntry<K, V> cacheEntry, V value, boolean add) {
+        K key = cacheEntry.getKey();
+        Pending previous = staged.get(key);
+        // an update of a value still waiting keeps its add flag
+        boolean stagedAdd = previous != null ? previous.add : add && !inFlight.containsKey(key);
+
+        while (previous == null && staged.size() >= capacity) {
+            // backpressure: wait for the writer to take the staged values
+            waitForWriter();
+            previous = staged.get(key);
+        }
+        staged.put(key, new Pending(cacheEntry, value, stagedAdd));
+        if (add)
+            size++;
+        notifyAll();
+    }
+
+    public synchronized V getValue(CacheEntry<K, V> cacheEntry) {
+        K key = cacheEntry.getKey();
+        Pending pending = staged.get(key);
+        if (pending == null)
+            pending = inFlight.get(key);
+        if (pending != null)
+            return pending.value;
+        return diskStore.getValue(cacheEntry);
+    }
+
+    public synchronized void remove(CacheEntry<K, V> cacheEntry) {
+        K key = cacheEntry.getKey();
+        Pending pending = staged.remove(key);
+        // wait for a running write not to have it back on disk after the remove
+        while (inFlight.containsKey(key))
+            waitForWriter();
+        // a staged add never reached the disk
+        if (pending == null || !pending.add)
+            diskStore.remove(cacheEntry);
+        size--;
+        notifyAll();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getDiskSize() {
+        return diskStore.getDiskSize();
+    }
+
+    /**
+     * @return the number of values waiting to be written
+     */
+    public synchronized int getStagedCount() {
+        return staged.size() + inFlight.size();
+    }
+
+    /**
+     * Wait until all the staged values are written
+     */
+    public synchronized void flush() {
+        while (!staged.isEmpty() || !inFlight.isEmpty())
+            waitForWriter();
+    }
+
+    public synchronized void clear() {
+        staged.clear();
+        while (!inFlight.isEmpty())
+            waitForWriter();
+        size = 0;
+        diskStore.clear();
+        notifyAll();
+    }
+
+    public void sync() {
+        flush();
+        diskStore.sync();
+    }
+
+    /**
+     * Write the staged values then stop the writer before closing the disk store
+     */
+    public void close() {
+        flush();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        diskStore.close();
+    }
+
+    public synchronized long getUncompressedBytes() {
+        return diskStore.getUncompressedBytes();
+    }
+
+    public synchronized long getCompressedBytes() {
+        return diskStore.getCompressedBytes();
+    }
+
+    public void sortByLocation(List<CacheEntry<K, V>> cacheEntries) {
+        diskStore.sortByLocation(cacheEntries);
+    }
+
+    public String getNextSubFolder() {
+        return diskStore.getNextSubFolder();
+    }
+
+    public boolean isRestartable() {
+        return diskStore.isRestartable();
+    }
+
+    /**
+     * Called after a {@link #flush()}: the value is on disk
+     */
+    public void writeLocation(CacheEntry<K, V> cacheEntry, DataOutput out) throws IOException {
+        diskStore.writeLocation(cacheEntry, out);
+    }
+
+    public synchronized boolean restoreLocation(CacheEntry<K, V> cacheEntry, DataInput in) throws IOException {
+        if (!diskStore.restoreLocation(cacheEntry, in))
+            return false;
+        size++;
+        return true;
+    }
+
+    public void beginRestore(int threads) throws IOException {
+        diskStore.beginRestore(threads);
+    }
+
+    public void endRestore() {
+        diskStore.endRestore();
+    }
+
+    public void prepareCheckpoint() throws IOException {
+        diskStore.prepareCheckpoint();
+    }
+
+    public void setDiskLocation(String diskLocation) {
+        super.setDiskLocation(diskLocation);
+        // called by the parent constructor, before the disk store is set
+        if (diskStore != null)
+            diskStore.setDiskLocation(diskLocation);
+    }
+
+    public void initLocation() {
+        diskStore.initLocation();
+    }
+
+    private void waitForWriter() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the disk writer", e);
+        }
+    }
+
+    /**
+     * Take all the staged values, write them and sync the disk store once for the batch
+     */
+    private void writeLoop() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                while (staged.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = new ArrayList<Pending>(staged.values());
+                for (Iterator<Pending> it = staged.values().iterator(); it.hasNext();) {
+                    Pending pending = it.next();
+                    inFlight.put(pending.cacheEntry.getKey(), pending);
+                    it.remove();
+                }
+                notifyAll();
+            }
+
+            try {
+                for (Pending pending : batch) {
+                    try {
+                        diskStore.addUpdate(pending.cacheEntry, pending.value, pending.add);
+                    } catch (RuntimeException e) {
+                        // nobody to throw to (ex. a failing serializer): the value is lost, as on a crash
+                        logger.error("We've got an error writing {} to disk: {}", pending.cacheEntry.getKey(), e.getMessage());
+                    }
+                }
+                diskStore.sync();
+                logger.debug("{} values written to disk", batch.size());
+            } catch (RuntimeException e) {
+                logger.error("We've got an error syncing the disk: {}", e.getMessage());
+            } finally {
+                // the callers waiting for the batch must not wait forever
+                synchronized (this) {
+                    inFlight.clear();
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+}
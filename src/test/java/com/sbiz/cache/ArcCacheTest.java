@@ -0,0 +1,88 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sbiz.cache.implementations.ArcCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ArcCacheTest {
+
+    @Test
+    @DisplayName("Test creating ArcCache through the builder")
+    void builderTest() {
+        Cache<String, String> cache = new CacheBuilder().strategy(CacheDefaults.ARC).build();
+        assertTrue(cache instanceof ArcCache);
+    }
+
+    @Test
+    @DisplayName("Test ArcCache with size 1")
+    void sizeOneTest() {
+        Cache<String, String> cache = new ArcCache<String, String>(new CacheBuilder().memorySize(1));
+        cache.put("One", "value");
+        cache.put("Second", "value");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Ghost hits adapt the target size")
+    void adaptTest() {
+        ArcCache<String, String> cache = new ArcCache<String, String>(
+                new CacheBuilder().memorySize(4).printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        cache.put("D", "Badabum");
+        cache.get("A");
+        cache.get("B");
+
+        // C is the least recent entry seen once: replaced and remembered in B1
+        cache.put("E", "Rapatam tap tap");
+        assertFalse(cache.containsKey("C"));
+        assertEquals(0, cache.getTargetRecentSize());
+
+        // C comes back: recency list was too small
+        cache.put("C", "Bum");
+        assertEquals(1, cache.getTargetRecentSize());
+        assertTrue(cache.containsKey("C"));
+        assertFalse(cache.containsKey("D"));
+        assertTrue(cache.containsKey("A"));
+        assertTrue(cache.containsKey("B"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    @DisplayName("Replaced entries are moved to disk")
+    void twoLevelTest() {
+        ArcCache<String, String> cache = new ArcCache<String, String>(
+                new CacheBuilder().memorySize(2).diskSize(2).printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        assertTrue(cache.isEntryDiskStored("A"));
+
+        // disk hit: back in memory
+        assertEquals("Bim", cache.get("A"));
+        assertFalse(cache.isEntryDiskStored("A"));
+        assertEquals(3, cache.size());
+
+        cache.put("D", "Badabum");
+        cache.put("E", "Rapatam tap tap");
+        assertEquals(4, cache.size());
+
+        // T1 took all the memory, so its entries were moved to disk without ghosts
+        assertFalse(cache.containsKey("B"));
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertEquals("Bim", cache.remove("A"));
+        assertEquals(3, cache.size());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+}
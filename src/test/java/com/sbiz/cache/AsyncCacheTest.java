@@ -0,0 +1,141 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.AsyncCacheWrapper;
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AsyncCacheTest {
+
+    private static final String LOCATION = TestFiles.location("async");
+
+    // Runs the tasks inline, counting them
+    private static class CountingExecutor implements Executor {
+        final AtomicInteger tasks = new AtomicInteger();
+
+        public void execute(Runnable command) {
+            tasks.incrementAndGet();
+            command.run();
+        }
+    }
+
+    // Keeps the tasks until run, the last one sent first
+    private static class DeferredExecutor implements Executor {
+        final Deque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        public void execute(Runnable command) {
+            tasks.push(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty())
+                tasks.pop().run();
+        }
+    }
+
+    @Test
+    @DisplayName("Memory hits complete inline with a reused future")
+    void memoryHitTest() throws Exception {
+        CountingExecutor executor = new CountingExecutor();
+        AsyncCache<String, String> cache = new AsyncCacheWrapper<String, String>(
+                new LRUCache<String, String>(new CacheBuilder().memorySize(10)), executor);
+
+        assertTrue(cache.putAsync("A", "Bim").isDone());
+        CompletableFuture<String> first = cache.getAsync("A");
+        assertTrue(first.isDone());
+        assertEquals("Bim", first.get());
+        assertSame(first, cache.getAsync("A"));
+        assertSame(cache.getAsync("missing"), cache.getAsync("other"));
+        assertNull(cache.getAsync("missing").get());
+
+        cache.putAsync("A", "Bam");
+        assertEquals("Bam", cache.getAsync("A").get());
+        assertEquals("Bam", cache.removeAsync("A").get());
+        assertFalse(cache.synchronous().containsKey("A"));
+        assertEquals(0, executor.tasks.get());
+    }
+
+    @Test
+    @DisplayName("Disk reads run on the I/O executor")
+    void diskHitTest() throws Exception {
+        CountingExecutor executor = new CountingExecutor();
+        LFUCache<String, String> lfu = new LFUCache<String, String>(new CacheBuilder()
+                .memorySize(1)
+                .diskSize(5)
+                .diskLocation(LOCATION));
+        AsyncCache<String, String> cache = new AsyncCacheWrapper<String, String>(lfu, executor);
+
+        cache.putAsync("A", "Bim").get();
+        cache.putAsync("B", "Bam").get();
+        assertEquals(2, executor.tasks.get());
+        String diskKey = lfu.isEntryDiskStored("A") ? "A" : "B";
+        assertTrue(lfu.isEntryDiskStored(diskKey));
+
+        assertEquals(diskKey.equals("A") ? "Bim" : "Bam", cache.getAsync(diskKey).get());
+        assertEquals(3, executor.tasks.get());
+        diskKey = lfu.isEntryDiskStored("A") ? "A" : "B";
+        cache.removeAsync(diskKey).get();
+        assertEquals(4, executor.tasks.get());
+        cache.synchronous().clear();
+    }
+
+    @Test
+    @DisplayName("Operations on a key run in the order they were called")
+    void orderTest() throws Exception {
+        DeferredExecutor executor = new DeferredExecutor();
+        AsyncCache<String, String> cache = new AsyncCacheWrapper<String, String>(new LRUCache<String, String>(
+                new CacheBuilder()
+                        .memorySize(1)
+                        .diskSize(5)
+                        .diskLocation(LOCATION)), executor);
+
+        CompletableFuture<Void> first = cache.putAsync("A", "Bim");
+        cache.putAsync("A", "Bam");
+        CompletableFuture<String> get = cache.getAsync("A");
+        CompletableFuture<String> removed = cache.removeAsync("A");
+        cache.putAsync("B", "Boum");
+        // the operations on A wait for the previous one, the put on B doesn't
+        assertEquals(2, executor.tasks.size());
+        assertFalse(get.isDone());
+
+        executor.runAll();
+        assertTrue(first.isDone());
+        assertEquals("Bam", get.get());
+        assertEquals("Bam", removed.get());
+        assertFalse(cache.synchronous().containsKey("A"));
+        assertEquals("Boum", cache.synchronous().get("B"));
+        cache.synchronous().clear();
+    }
+
+    @Test
+    @DisplayName("Default executor completes disk reads")
+    void defaultExecutorTest() throws Exception {
+        AsyncCache<String, String> cache = new CacheBuilder()
+                .memorySize(1)
+                .diskSize(5)
+                .diskLocation(LOCATION)
+                .buildAsync();
+
+        cache.putAsync("A", "Bim").get();
+        cache.putAsync("B", "Bam").get();
+        assertEquals("Bim", cache.getAsync("A").get());
+        assertEquals("Bam", cache.getAsync("B").get());
+        cache.synchronous().clear();
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.ACache;
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.implementations.SegmentedLRUCache;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.StoreManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class BulkOperationsTest {
+
+    private static final String LOCATION = TestFiles.location("bulk");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private static CacheBuilder builder(String diskStore) {
+        return new CacheBuilder()
+                .memorySize(8)
+                .diskSize(40)
+                .diskLocation(LOCATION)
+                .diskStore(diskStore)
+                .segmentSize(256)
+                .serializer(Serializers.STRING);
+    }
+
+    @Test
+    @DisplayName("Bulk operations on memory and disk entries of every strategy")
+    void cacheTest() {
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG,
+                CacheDefaults.DISK_STORE_MMAP }) {
+            List<ACache<String, String>> caches = new ArrayList<ACache<String, String>>();
+            caches.add(new LRUCache<String, String>(builder(diskStore)));
+            caches.add(new LFUCache<String, String>(builder(diskStore)));
+            caches.add(new SegmentedLRUCache<String, String>(builder(diskStore).segments(4)));
+
+            for (ACache<String, String> cache : caches) {
+                Map<String, String> entries = new LinkedHashMap<String, String>();
+                for (int i = 0; i < 40; i++)
+                    entries.put("key" + i, "value" + i);
+                cache.putAll(entries);
+                assertEquals(40, cache.size(), diskStore);
+
+                List<String> keys = new ArrayList<String>(entries.keySet());
+                keys.add("missing");
+                Collections.shuffle(keys, new Random(42));
+                assertEquals(entries, cache.getAll(keys), diskStore);
+
+                List<String> removed = new ArrayList<String>();
+                for (int i = 0; i < 40; i += 2)
+                    removed.add("key" + i);
+                cache.removeAll(removed);
+                assertEquals(20, cache.size(), diskStore);
+                assertTrue(cache.getAll(removed).isEmpty(), diskStore);
+                for (int i = 0; i < 40; i++)
+                    assertEquals(i % 2 == 1, cache.containsKey("key" + i), diskStore);
+
+                Map<String, String> left = cache.getAll(entries.keySet());
+                assertEquals(20, left.size(), diskStore);
+                assertEquals("value39", left.get("key39"), diskStore);
+
+                cache.removeAll(entries.keySet());
+                assertTrue(cache.isEmpty(), diskStore);
+                cache.clear();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Log entries of a batch are read by segment and offset")
+    void logOrderTest() {
+        StoreManager<String, String> store = new StoreManager<String, String>();
+        store.setDiskEnabled(true);
+        store.setDiskLocation(LOCATION);
+        store.setDiskStoreType(CacheDefaults.DISK_STORE_LOG);
+        store.setSegmentSize(64);
+        store.setSerializer(Serializers.STRING);
+        store.build();
+
+        List<CacheEntry<String, String>> written = new ArrayList<CacheEntry<String, String>>();
+        for (int i = 0; i < 20; i++)
+            written.add(new CacheEntry<String, String>("key" + i, "value" + i, store, false));
+
+        List<CacheEntry<String, String>> batch = new ArrayList<CacheEntry<String, String>>(written);
+        Collections.shuffle(batch, new Random(42));
+        store.sortByLocation(batch);
+        assertEquals(written, batch);
+
+        // removed entries are no longer in the index and come first
+        written.get(10).discardFromStore();
+        Collections.shuffle(batch, new Random(7));
+        store.sortByLocation(batch);
+        assertEquals(written.get(10), batch.get(0));
+        assertEquals(written.subList(0, 10), batch.subList(1, 11));
+        store.clear();
+        assertFalse(new File(LOCATION).exists());
+    }
+
+    @Test
+    @DisplayName("A loading cache loads the keys missing from the batch")
+    void loadingTest() {
+        LoadingCache<String, String> cache = new CacheBuilder().memorySize(10).build(key -> "loaded " + key);
+        cache.putAll(Collections.singletonMap("key1", "value1"));
+
+        Map<String, String> values = cache.getAll(Arrays.asList("key1", "key2"));
+        assertEquals("value1", values.get("key1"));
+        assertEquals("loaded key2", values.get("key2"));
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(2, cache.size());
+    }
+
+}
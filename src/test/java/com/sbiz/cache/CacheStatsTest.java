@@ -0,0 +1,122 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.implementations.SegmentedLRUCache;
+import com.sbiz.cache.utils.LatencyHistogram;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CacheStatsTest {
+
+    @Test
+    @DisplayName("Nothing is recorded by default")
+    void disabledTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder().memorySize(2));
+        cache.put("Bim", "Bam");
+        cache.get("Bim");
+        assertSame(CacheStats.EMPTY, cache.getStats());
+    }
+
+    @Test
+    @DisplayName("Hits by level, misses, evictions, promotions and demotions")
+    void countersTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(2)
+                .diskSize(4)
+                .diskStore(CacheDefaults.DISK_STORE_NULL)
+                .recordStats(true));
+
+        for (int i = 0; i < 4; i++)
+            cache.put("key" + i, "value");
+        assertEquals(2, cache.getStats().getDemotionCount());
+
+        cache.get("key3");
+        cache.get("key0");
+        cache.get("missing");
+        for (int i = 4; i < 7; i++)
+            cache.put("key" + i, "value");
+
+        CacheStats stats = cache.getStats();
+        assertEquals(3, stats.getRequestCount());
+        assertEquals(1, stats.getMemoryHitCount());
+        assertEquals(1, stats.getDiskHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2.0 / 3, stats.getHitRatio(), 1e-9);
+        assertEquals(7, stats.getPutCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(1, stats.getPromotionCount());
+        assertEquals(6, stats.getDemotionCount());
+        assertEquals(3, stats.getGetLatency().getCount());
+        assertEquals(7, stats.getPutLatency().getCount());
+        assertEquals(1, stats.getDiskReadLatency().getCount());
+        assertEquals(6, stats.getDiskWriteLatency().getCount());
+        assertTrue(stats.toString().startsWith("[Hits: 66.7% of 3"), stats.toString());
+    }
+
+    @Test
+    @DisplayName("Latency buckets keep the values within 12.5%")
+    void histogramTest() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long nanos = random.nextLong() >>> (1 + random.nextInt(40));
+            int index = LatencyHistogram.bucketIndex(nanos);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            if (nanos < (1L << 37)) {
+                assertTrue(nanos <= upperBound, nanos + " above " + upperBound);
+                assertTrue(upperBound - nanos <= nanos / 8, nanos + " far from " + upperBound);
+            }
+            assertTrue(index < LatencyHistogram.BUCKETS);
+        }
+        for (int index = 1; index < LatencyHistogram.BUCKETS; index++) {
+            assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(index)));
+            assertEquals(index - 1, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(index - 1)));
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000);
+        CacheStats.Latency latency = new CacheStats.Latency(histogram.snapshot());
+        assertEquals(1000, latency.getCount());
+        assertEquals(500500, latency.getMean(), 1e-9);
+        assertEquals(500000, latency.getPercentile(50), 500000 / 8);
+        assertEquals(990000, latency.getPercentile(99), 990000 / 8);
+        assertTrue(latency.getMax() >= 1000000);
+    }
+
+    @Test
+    @DisplayName("Segment statistics merged and exposed through JMX")
+    void mbeanTest() throws Exception {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(new CacheBuilder()
+                .memorySize(100)
+                .segments(4)
+                .statsMBean("segmented"));
+        for (int i = 0; i < 50; i++)
+            cache.put("key" + i, "value" + i);
+        for (int i = 0; i < 100; i++)
+            cache.get("key" + i);
+        assertEquals(100, cache.getStats().getRequestCount());
+        assertEquals(50, cache.getStats().getMemoryHitCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.sbiz.cache:type=CacheStats,name=" + ObjectName.quote("segmented"));
+        assertEquals(50L, server.getAttribute(name, "MissCount"));
+        assertEquals(0.5, (Double) server.getAttribute(name, "HitRatio"), 1e-9);
+        assertEquals(50, server.getAttribute(name, "Size"));
+
+        cache.closeStats();
+        assertFalse(server.isRegistered(name));
+    }
+
+}
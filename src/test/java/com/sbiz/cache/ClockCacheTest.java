@@ -0,0 +1,82 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sbiz.cache.implementations.ClockCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ClockCacheTest {
+
+    @Test
+    @DisplayName("Test creating ClockCache through the builder")
+    void builderTest() {
+        Cache<String, String> cache = new CacheBuilder().strategy(CacheDefaults.CLOCK).build();
+        assertTrue(cache instanceof ClockCache);
+    }
+
+    @Test
+    @DisplayName("Test ClockCache with size 1")
+    void sizeOneTest() {
+        Cache<String, String> cache = new ClockCache<String, String>(new CacheBuilder().memorySize(1));
+        cache.put("One", "value");
+        cache.put("Second", "value");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Referenced entries get a second chance")
+    void secondChanceTest() {
+        ClockCache<String, String> cache = new ClockCache<String, String>(
+                new CacheBuilder().memorySize(3).printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        cache.get("A");
+
+        // A is referenced, so the hand skips it and takes B
+        cache.put("D", "Badabum");
+        assertTrue(cache.containsKey("A"));
+        assertFalse(cache.containsKey("B"));
+
+        // slots of removed entries are reused
+        assertEquals("Bum", cache.remove("C"));
+        cache.put("E", "Rapatam tap tap");
+        assertEquals(3, cache.size());
+        assertTrue(cache.containsKey("A"));
+        assertTrue(cache.containsKey("D"));
+    }
+
+    @Test
+    @DisplayName("The hand picks the entries moved to disk")
+    void twoLevelTest() {
+        ClockCache<String, String> cache = new ClockCache<String, String>(
+                new CacheBuilder().memorySize(2).diskSize(2).printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.get("A");
+        cache.put("C", "Bum");
+        assertTrue(cache.isEntryDiskStored("B"));
+        assertFalse(cache.isEntryDiskStored("A"));
+
+        // disk hit: back in memory, another entry goes to disk
+        assertEquals("Bam", cache.get("B"));
+        assertFalse(cache.isEntryDiskStored("B"));
+        assertEquals(3, cache.size());
+
+        cache.put("D", "Badabum");
+        cache.put("E", "Rapatam tap tap");
+        assertEquals(4, cache.size());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertNull(cache.get("A"));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.Compressor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CompressionTest {
+
+    private static final String LOCATION = TestFiles.location("compression");
+
+    private static byte[] roundTrip(Compressor compressor, byte[] raw, boolean direct) throws IOException {
+        ByteBuffer compressed = compressor.compress(ByteBuffer.wrap(raw));
+        ByteBuffer record = direct ? ByteBuffer.allocateDirect(compressed.remaining()) : ByteBuffer.allocate(compressed.remaining());
+        record.put(compressed).flip();
+        ByteBuffer decompressed = compressor.decompress(record);
+        byte[] bytes = new byte[decompressed.remaining()];
+        decompressed.get(bytes);
+        return bytes;
+    }
+
+    private static String text(int i) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 2000)
+            sb.append("value ").append(i).append(" of the cache, ");
+        return sb.toString();
+    }
+
+    @Test
+    @DisplayName("Records are compressed only when large enough and worth it")
+    void compressorTest() throws IOException {
+        Compressor compressor = new Compressor(64);
+
+        byte[] small = "Bim Bam".getBytes("UTF-8");
+        assertArrayEquals(small, roundTrip(compressor, small, false));
+        assertEquals(small.length + 1, compressor.getCompressedBytes());
+
+        byte[] text = text(1).getBytes("UTF-8");
+        long before = compressor.getCompressedBytes();
+        assertArrayEquals(text, roundTrip(compressor, text, true));
+        assertTrue(compressor.getCompressedBytes() - before < text.length / 4);
+
+        byte[] random = new byte[1000];
+        new Random(42).nextBytes(random);
+        before = compressor.getCompressedBytes();
+        assertArrayEquals(random, roundTrip(compressor, random, false));
+        assertEquals(random.length + 1, compressor.getCompressedBytes() - before);
+    }
+
+    @Test
+    @DisplayName("Compressed values on disk and off-heap")
+    void cacheTest() {
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG,
+                CacheDefaults.DISK_STORE_MMAP }) {
+            for (long offHeapSize : new long[] { 0, 4096 }) {
+                LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                        .memorySize(2)
+                        .diskSize(20)
+                        .diskLocation(LOCATION)
+                        .diskStore(diskStore)
+                        .offHeapSize(offHeapSize)
+                        .serializer(Serializers.STRING)
+                        .compression(true));
+
+                for (int i = 0; i < 20; i++)
+                    cache.put("key" + i, text(i));
+                for (int i = 0; i < 20; i++)
+                    assertEquals(text(i), cache.get("key" + i), diskStore);
+                assertTrue(cache.internals().contains("[Compression: "), cache.internals());
+                cache.clear();
+            }
+        }
+    }
+
+}
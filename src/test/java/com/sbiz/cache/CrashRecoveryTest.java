@@ -0,0 +1,241 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.ACache;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.Crc32c;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CrashRecoveryTest {
+
+    private static final String LOCATION = TestFiles.location("crash");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private static CacheBuilder builder(String diskStore) {
+        return new CacheBuilder()
+                .memorySize(2)
+                .diskSize(6)
+                .diskLocation(LOCATION)
+                .diskStore(diskStore)
+                .serializer(Serializers.STRING)
+                .keySerializer(Serializers.STRING)
+                .warmRestart(true)
+                .preloadThreads(2);
+    }
+
+    // First file named name, under the cache location
+    private static File find(File folder, String name) {
+        File[] files = folder.listFiles();
+        if (files == null)
+            return null;
+        for (File file : files) {
+            File found = file.isDirectory() ? find(file, name) : (file.getName().equals(name) ? file : null);
+            if (found != null)
+                return found;
+        }
+        return null;
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    @DisplayName("CRC32C matches the standard check values")
+    void crcTest() {
+        Crc32c crc = new Crc32c();
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        crc.update(check, 0, check.length);
+        assertEquals(0xE3069283L, crc.getValue());
+
+        // iSCSI test vectors (RFC 3720), long enough for the 8 bytes steps
+        byte[] bytes = new byte[32];
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        assertEquals(0x8A9136AAL, crc.getValue());
+        Arrays.fill(bytes, (byte) 0xFF);
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        assertEquals(0x62A8AB43L, crc.getValue());
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+        crc.reset();
+        crc.update(bytes, 0, 5);
+        crc.update(bytes, 5, bytes.length - 5);
+        assertEquals(0x46DD794EL, crc.getValue());
+    }
+
+    // Flip the last byte of every file under folder
+    private static void corruptAll(File folder) throws IOException {
+        for (File file : folder.listFiles()) {
+            if (file.isDirectory())
+                corruptAll(file);
+            else
+                flipByte(file, file.length() - 1);
+        }
+    }
+
+    @Test
+    @DisplayName("A corrupted value is dropped on get and counted as a miss, by every strategy")
+    void corruptedGetTest() throws IOException {
+        for (String strategy : new String[] { CacheDefaults.LRU, CacheDefaults.LFU, CacheDefaults.WTINYLFU,
+                CacheDefaults.ARC, CacheDefaults.CLOCK }) {
+            cleanLocation();
+            ACache<String, String> cache = (ACache<String, String>) builder(CacheDefaults.DISK_STORE_FILES)
+                    .warmRestart(false)
+                    .strategy(strategy)
+                    .diskSize(2)
+                    .recordStats(true)
+                    .<String, String> build();
+            for (int i = 0; i < 4; i++)
+                cache.put("key" + i, "value" + i);
+            List<String> diskKeys = new ArrayList<String>();
+            for (int i = 0; i < 4; i++) {
+                if (cache.isEntryDiskStored("key" + i))
+                    diskKeys.add("key" + i);
+            }
+            assertFalse(diskKeys.isEmpty(), strategy);
+            corruptAll(new File(LOCATION));
+
+            for (String key : diskKeys) {
+                assertNull(cache.get(key), strategy);
+                assertFalse(cache.containsKey(key), strategy);
+                // dropped: the next get is a plain miss
+                assertNull(cache.get(key), strategy);
+            }
+            assertEquals(2 * diskKeys.size(), cache.getStats().getMissCount(), strategy);
+            assertEquals(4 - diskKeys.size(), cache.size(), strategy);
+
+            // the memory and disk areas are still consistent
+            for (int i = 4; i < 12; i++)
+                cache.put("key" + i, "value" + i);
+            for (int i = 0; i < 12; i++) {
+                if (cache.containsKey("key" + i))
+                    assertEquals("value" + i, cache.get("key" + i), strategy);
+            }
+            assertTrue(cache.size() <= cache.getMaxSize(), strategy);
+            cache.clear();
+        }
+    }
+
+    @Test
+    @DisplayName("Torn files are dropped on restart")
+    void tornFileTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+        File file = find(new File(LOCATION), String.valueOf("key0".hashCode()));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES));
+        assertEquals(7, restarted.size());
+        assertFalse(restarted.containsKey("key0"));
+        assertFalse(file.exists());
+        assertEquals("value1", restarted.get("key1"));
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("Files of interrupted writes are deleted on restart")
+    void tempFilesTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+        File folder = find(new File(LOCATION), String.valueOf("key0".hashCode())).getParentFile();
+        File temp = new File(folder, "12345.tmp");
+        assertTrue(temp.createNewFile());
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES));
+        assertEquals(8, restarted.size());
+        assertFalse(temp.exists());
+        assertEquals("value0", restarted.get("key0"));
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("Torn records at the end of a segment are dropped on restart")
+    void tornRecordTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+        // key5 is the last record appended: cut its commit marker, as a crash during the append would
+        File segment = find(new File(LOCATION), "segment-000000.log");
+        long length = segment.length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(length - 2);
+        }
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        assertEquals(7, restarted.size());
+        assertFalse(restarted.containsKey("key5"));
+        for (int i = 0; i < 5; i++)
+            assertEquals("value" + i, restarted.get("key" + i));
+        assertTrue(segment.length() < length - 2);
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("Records after a corrupted one are dropped on restart")
+    void corruptedRecordTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+        // in the value of the first record
+        flipByte(find(new File(LOCATION), "segment-000000.log"), 10);
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        // only the preloaded memory entries are left
+        assertEquals(2, restarted.size());
+        assertEquals("value6", restarted.get("key6"));
+        assertEquals("value7", restarted.get("key7"));
+        assertNull(restarted.get("key0"));
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("A corrupted record is dropped on get")
+    void corruptedReadTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG).warmRestart(false));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        flipByte(find(new File(LOCATION), "segment-000000.log"), 10);
+
+        assertNull(cache.get("key0"));
+        assertFalse(cache.containsKey("key0"));
+        assertEquals(7, cache.size());
+        assertEquals("value1", cache.get("key1"));
+        cache.clear();
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.ACache;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.StoreManager;
+import com.sbiz.cache.utils.TimerWheel;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ExpirationTest {
+
+    private static final String LOCATION = TestFiles.location("expiration");
+
+    private static class FakeTicker implements Ticker {
+        long nanos;
+
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+
+    @Test
+    @DisplayName("The timer wheel expires each entry once its time is reached")
+    void timerWheelTest() {
+        StoreManager<Integer, Integer> store = new StoreManager<Integer, Integer>();
+        store.setMaxMemorySize(10000);
+        store.build();
+        final TimerWheel<Integer, Integer> wheel = new TimerWheel<Integer, Integer>(0);
+        Random random = new Random(42);
+
+        final List<CacheEntry<Integer, Integer>> pending = new ArrayList<CacheEntry<Integer, Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            CacheEntry<Integer, Integer> cacheEntry = new CacheEntry<Integer, Integer>(i, i, store);
+            // from microseconds to weeks
+            cacheEntry.setExpirationTime((long) Math.pow(10, 3 + random.nextDouble() * 12));
+            wheel.schedule(cacheEntry);
+            pending.add(cacheEntry);
+        }
+        assertEquals(5000, wheel.size());
+
+        final long[] now = { 0 };
+        final Set<Integer> expired = new HashSet<Integer>();
+        Consumer<CacheEntry<Integer, Integer>> expire = cacheEntry -> {
+            assertTrue(cacheEntry.getExpirationTime() <= now[0]);
+            assertTrue(expired.add(cacheEntry.getKey()));
+        };
+        while (!pending.isEmpty()) {
+            now[0] += (long) Math.pow(10, 3 + random.nextDouble() * 10);
+            wheel.advance(now[0], expire);
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (pending.get(i).getExpirationTime() <= now[0]) {
+                    assertTrue(expired.contains(pending.get(i).getKey()));
+                    pending.remove(i);
+                }
+            }
+            assertEquals(pending.size(), wheel.size());
+        }
+        assertEquals(5000, expired.size());
+    }
+
+    @Test
+    @DisplayName("Entries expire after write")
+    void expireAfterWriteTest() {
+        for (String strategy : new String[] { CacheDefaults.LRU, CacheDefaults.LFU }) {
+            FakeTicker ticker = new FakeTicker();
+            ACache<String, String> cache = (ACache<String, String>) new CacheBuilder()
+                    .strategy(strategy)
+                    .memorySize(10)
+                    .expireAfterWrite(1, TimeUnit.MINUTES)
+                    .ticker(ticker)
+                    .<String, String>build();
+
+            cache.put("A", "Bim");
+            ticker.advance(30, TimeUnit.SECONDS);
+            cache.put("B", "Bam");
+            assertEquals("Bim", cache.get("A"), strategy);
+            ticker.advance(40, TimeUnit.SECONDS);
+            // reads don't extend the lifetime
+            assertFalse(cache.containsKey("A"), strategy);
+            assertNull(cache.get("A"), strategy);
+            assertEquals("Bam", cache.get("B"), strategy);
+
+            ticker.advance(1, TimeUnit.MINUTES);
+            cache.cleanUp();
+            assertEquals(0, cache.size(), strategy);
+            // an update starts a new lifetime
+            cache.put("C", "Bum");
+            ticker.advance(50, TimeUnit.SECONDS);
+            cache.put("C", "Bum2");
+            ticker.advance(50, TimeUnit.SECONDS);
+            assertEquals("Bum2", cache.get("C"), strategy);
+        }
+    }
+
+    @Test
+    @DisplayName("Entries expire after access and with their own time to live")
+    void expireAfterAccessTest() {
+        FakeTicker ticker = new FakeTicker();
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(10)
+                .bufferedReads(true)
+                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .ticker(ticker));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        for (int i = 0; i < 5; i++) {
+            ticker.advance(8, TimeUnit.SECONDS);
+            assertEquals("Bim", cache.get("A"));
+        }
+        assertNull(cache.get("B"));
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+
+        Expiry<String, String> expiry = (key, value) -> TimeUnit.SECONDS.toNanos(value.length());
+        ACache<String, String> variable = (ACache<String, String>) new CacheBuilder()
+                .strategy(CacheDefaults.LFU)
+                .memorySize(10)
+                .expiry(expiry)
+                .ticker(ticker)
+                .<String, String>build();
+        variable.put("short", "12");
+        variable.put("long", "1234567890");
+        ticker.advance(5, TimeUnit.SECONDS);
+        assertNull(variable.get("short"));
+        assertEquals("1234567890", variable.get("long"));
+        ticker.advance(5, TimeUnit.SECONDS);
+        variable.cleanUp();
+        assertEquals(0, variable.size());
+    }
+
+    @Test
+    @DisplayName("Disk entries expire without reading their files")
+    void diskExpirationTest() {
+        final AtomicInteger reads = new AtomicInteger();
+        Serializer<String> counting = new Serializer<String>() {
+            public void serialize(String value, DataOutput out) throws IOException {
+                out.writeUTF(value);
+            }
+
+            public String deserialize(DataInput in) throws IOException {
+                reads.incrementAndGet();
+                return in.readUTF();
+            }
+        };
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG,
+                CacheDefaults.DISK_STORE_MMAP }) {
+            reads.set(0);
+            FakeTicker ticker = new FakeTicker();
+            LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                    .memorySize(2)
+                    .diskSize(20)
+                    .diskLocation(LOCATION)
+                    .diskStore(diskStore)
+                    .serializer(counting)
+                    .expireAfterWrite(1, TimeUnit.HOURS)
+                    .ticker(ticker));
+
+            for (int i = 0; i < 20; i++)
+                cache.put("key" + i, "value" + i);
+            assertTrue(cache.isEntryDiskStored("key0"));
+            ticker.advance(2, TimeUnit.HOURS);
+            cache.cleanUp();
+            assertEquals(0, cache.size(), diskStore);
+            assertNull(cache.remove("key0"));
+            assertEquals(0, reads.get(), diskStore);
+            cache.clear();
+        }
+    }
+
+    @Test
+    @DisplayName("Expiration needs a supporting strategy and one kind of settings")
+    void configurationTest() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder()
+                .strategy(CacheDefaults.ARC)
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder()
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .expiry((key, value) -> 1L)
+                .build());
+    }
+
+}
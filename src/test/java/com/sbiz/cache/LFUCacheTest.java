@@ -1,5 +1,7 @@
 package com.sbiz.cache;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -77,4 +79,65 @@ class LFUCacheTest {
         assertTrue(true);
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Test moving entries between disk and memory")
+    void basicTwoLevelTest() {
+        LFUCache<String, String> cache = new LFUCache<String, String>(
+                    new CacheBuilder()
+                            .memorySize(2)
+                            .diskSize(2)
+                            .printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        //A is the least frequent and oldest entry
+        cache.put("C", "Bum");
+        assertTrue(cache.isEntryDiskStored("A"));
+
+        cache.get("C");
+        //A becomes as frequent as C and newer, so it passes B
+        assertEquals("Bim", cache.get("A"));
+        assertFalse(cache.isEntryDiskStored("A"));
+        assertTrue(cache.isEntryDiskStored("B"));
+
+        //new entries have the lowest frequency
+        cache.put("D", "Badabum");
+        assertTrue(cache.isEntryDiskStored("D"));
+
+        //cache is full, B is evicted
+        cache.put("E", "Rapatam tap tap");
+        assertFalse(cache.containsKey("B"));
+        assertEquals(4, cache.size());
+
+        //removing from memory brings back the most frequent disk entry
+        assertEquals("Bum", cache.remove("C"));
+        assertFalse(cache.isEntryDiskStored("E"));
+        assertTrue(cache.isEntryDiskStored("D"));
+        assertEquals(3, cache.size());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Least frequent entries are evicted first")
+    void evictionTest() {
+        LFUCache<String, String> cache = new LFUCache<String, String>(new CacheBuilder().memorySize(3));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        cache.get("A");
+        cache.get("A");
+        cache.get("B");
+        cache.put("D", "Badabum");
+        assertFalse(cache.containsKey("C"));
+
+        //D has frequency 0 and is the oldest one on this frequency
+        cache.put("E", "Rapatam tap tap");
+        assertFalse(cache.containsKey("D"));
+        assertTrue(cache.containsKey("A"));
+        assertTrue(cache.containsKey("B"));
+    }
+
+}
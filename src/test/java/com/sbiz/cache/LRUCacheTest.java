@@ -107,4 +107,66 @@ class LRUCacheTest {
 
         cache.clear();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Buffered reads are replayed before evicting")
+    void bufferedReadsTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(
+                    new CacheBuilder()
+                            .memorySize(3)
+                            .bufferedReads(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        assertTrue("Bim".equals(cache.get("A")));
+
+        //A was read (recorded in the buffer) so B is the least recent one
+        cache.put("D", "Badabum");
+        assertTrue(cache.containsKey("A"));
+        assertTrue(cache.containsKey("B") == false);
+    }
+
+    @Test
+    @DisplayName("Buffered reads with disk entries")
+    void bufferedReadsTwoLevelTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(
+                    new CacheBuilder()
+                            .memorySize(2)
+                            .diskSize(2)
+                            .bufferedReads(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        assertTrue(cache.isEntryDiskStored("A"));
+
+        //disk hits take the lock and are promoted right away
+        assertTrue("Bim".equals(cache.get("A")));
+        assertTrue(cache.isEntryDiskStored("A") == false);
+        assertTrue(cache.isEntryDiskStored("B"));
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("Removing all the entries and adding new ones")
+    void removeAllTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(
+                    new CacheBuilder()
+                            .memorySize(2)
+                            .diskSize(2)
+                            .printInternalsInDebug(true));
+
+        for (int round = 0; round < 3; round++) {
+            cache.put("A", "Bim");
+            cache.put("B", "Bam");
+            cache.put("C", "Bum");
+            assertTrue("Bim".equals(cache.remove("A")));
+            assertTrue("Bum".equals(cache.remove("C")));
+            assertTrue("Bam".equals(cache.remove("B")));
+            assertTrue(cache.isEmpty());
+        }
+        cache.clear();
+    }
+}
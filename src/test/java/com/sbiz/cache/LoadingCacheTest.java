@@ -0,0 +1,129 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.sbiz.cache.implementations.LFUCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LoadingCacheTest {
+
+    @Test
+    @DisplayName("Concurrent misses on a key share a single load")
+    void singleFlightTest() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoadingCache<String, String> cache = new CacheBuilder().memorySize(10).build(
+                new Function<String, String>() {
+                    public String apply(String key) {
+                        loads.incrementAndGet();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return "value of " + key;
+                    }
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.get("hot")));
+        }
+        // let every thread reach the miss before the load completes
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<String> result : results)
+            assertEquals("value of hot", result.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getLoadCount());
+        assertTrue(cache.getAverageLoadPenalty() > 0);
+        assertEquals("value of hot", cache.getIfPresent("hot"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Loaded values go through the strategy put")
+    void loadThroughPutTest() {
+        LFUCache<String, String> lfu = new LFUCache<String, String>(new CacheBuilder().memorySize(2));
+        Function<String, String> loader = key -> key.toLowerCase();
+
+        assertEquals("a", lfu.get("A", loader));
+        assertEquals("a", lfu.get("A", loader));
+        assertEquals("b", lfu.get("B", loader));
+        assertEquals("c", lfu.get("C", loader));
+        // B was the least frequent one
+        assertTrue(lfu.containsKey("A"));
+        assertFalse(lfu.containsKey("B"));
+        assertEquals(3, lfu.getLoadCount());
+
+        // null values are returned but not cached
+        assertNull(lfu.get("D", key -> null));
+        assertFalse(lfu.containsKey("D"));
+    }
+
+    @Test
+    @DisplayName("Load failures reach the caller and are not cached")
+    void failureTest() {
+        LoadingCache<String, String> cache = new CacheBuilder().memorySize(2).build(
+                key -> {
+                    throw new IllegalStateException("backend down");
+                });
+
+        assertThrows(IllegalStateException.class, () -> cache.get("A"));
+        assertFalse(cache.containsKey("A"));
+        assertEquals(1, cache.getLoadFailureCount());
+        assertEquals("Bim", cache.get("A", key -> "Bim"));
+    }
+
+    @Test
+    @DisplayName("A value put during the load is kept and returned instead of the loaded one")
+    void putDuringLoadTest() throws Exception {
+        for (CacheBuilder builder : new CacheBuilder[] { new CacheBuilder().strategy(CacheDefaults.LFU),
+                new CacheBuilder().strategy(CacheDefaults.WTINYLFU), new CacheBuilder().segments(4) }) {
+            final CountDownLatch loading = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final LoadingCache<String, String> cache = builder.memorySize(10).build(
+                    new Function<String, String>() {
+                        public String apply(String key) {
+                            loading.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                            return "loaded";
+                        }
+                    });
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<String> load = executor.submit(() -> cache.get("A"));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            cache.put("A", "written");
+            release.countDown();
+            assertEquals("written", load.get(5, TimeUnit.SECONDS));
+            executor.shutdown();
+
+            assertEquals("written", cache.getIfPresent("A"));
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LogStructuredDiskStoreTest {
+
+    private static final String LOCATION = TestFiles.location("log");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private LRUCache<String, String> newCache(long segmentSize) {
+        return new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(2)
+                .diskSize(100)
+                .diskLocation(LOCATION)
+                .diskStore(CacheDefaults.DISK_STORE_LOG)
+                .segmentSize(segmentSize));
+    }
+
+    private int segmentFiles() {
+        File[] files = new File(LOCATION).listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    @DisplayName("Values moved to disk are appended to segments")
+    void basicTest() {
+        LRUCache<String, String> cache = newCache(CacheDefaults.DEFAULT_SEGMENT_SIZE);
+
+        for (int i = 0; i < 50; i++)
+            cache.put("key" + i, "value" + i);
+        assertTrue(cache.isEntryDiskStored("key0"));
+        assertEquals(1, segmentFiles());
+
+        // read back from disk (and promote to memory)
+        for (int i = 0; i < 50; i++)
+            assertEquals("value" + i, cache.get("key" + i));
+
+        // update a disk entry
+        cache.put("key10", "updated");
+        assertEquals("updated", cache.get("key10"));
+
+        assertEquals("value20", cache.remove("key20"));
+        assertNull(cache.get("key20"));
+
+        cache.clear();
+        assertFalse(new File(LOCATION).exists());
+    }
+
+    @Test
+    @DisplayName("Segments mostly made of garbage are compacted")
+    void compactionTest() throws InterruptedException {
+        LRUCache<String, String> cache = newCache(128);
+
+        for (int i = 0; i < 40; i++)
+            cache.put("key" + i, "value" + i);
+        int segments = segmentFiles();
+        assertTrue(segments > 2);
+
+        // removing disk entries makes the old segments garbage
+        for (int i = 0; i < 36; i++)
+            cache.remove("key" + i);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (segmentFiles() >= segments && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(segmentFiles() < segments);
+
+        for (int i = 36; i < 40; i++)
+            assertEquals("value" + i, cache.get("key" + i));
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("Close stops the compactor and keeps the segments")
+    void closeTest() {
+        int compactors = countCompactors();
+        LRUCache<String, String> cache = newCache(128);
+
+        for (int i = 0; i < 40; i++)
+            cache.put("key" + i, "value" + i);
+        for (int i = 0; i < 36; i++)
+            cache.remove("key" + i);
+        assertEquals(compactors + 1, countCompactors());
+
+        cache.close();
+        assertEquals(compactors, countCompactors());
+        assertTrue(segmentFiles() > 0);
+    }
+
+    private static int countCompactors() {
+        int compactors = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("jcache-log-compactor") && thread.isAlive())
+                compactors++;
+        }
+        return compactors;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class MappedDiskStoreTest {
+
+    private static final String LOCATION = TestFiles.location("mmap");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private LRUCache<String, String> newCache() {
+        return new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(2)
+                .diskSize(100)
+                .diskLocation(LOCATION)
+                .diskStore(CacheDefaults.DISK_STORE_MMAP)
+                .segmentSize(1024));
+    }
+
+    @Test
+    @DisplayName("Values moved to disk are stored in mapped slabs")
+    void basicTest() {
+        LRUCache<String, String> cache = newCache();
+
+        for (int i = 0; i < 50; i++)
+            cache.put("key" + i, "value" + i);
+        assertTrue(cache.isEntryDiskStored("key0"));
+
+        for (int i = 0; i < 50; i++)
+            assertEquals("value" + i, cache.get("key" + i));
+
+        // update a disk entry with a value needing a bigger slot
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            big.append(i);
+        cache.put("key10", big.toString());
+        assertTrue(cache.isEntryDiskStored("key10"));
+        assertEquals(big.toString(), cache.get("key10"));
+
+        assertEquals("value20", cache.remove("key20"));
+        assertNull(cache.get("key20"));
+
+        cache.clear();
+        assertFalse(new File(LOCATION).exists());
+    }
+
+    @Test
+    @DisplayName("Freed slots are reused")
+    void slotReuseTest() {
+        LRUCache<String, String> cache = newCache();
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 10; i++)
+                cache.put("key" + i, "value" + round);
+            for (int i = 0; i < 10; i++)
+                assertEquals("value" + round, cache.remove("key" + i));
+        }
+
+        // 8 disk entries of 64 bytes at most: everything fits in the first slab
+        assertEquals(1, new File(LOCATION).listFiles().length);
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("A value that can't be read is dropped as a miss")
+    void readFailureTest() {
+        // "bad" values are written but can't be read back
+        Serializer<String> failing = new Serializer<String>() {
+            public void serialize(String value, DataOutput out) throws IOException {
+                out.writeUTF(value);
+            }
+
+            public String deserialize(DataInput in) throws IOException {
+                String value = in.readUTF();
+                if (value.equals("bad"))
+                    throw new IOException("unreadable");
+                return value;
+            }
+        };
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(1)
+                .diskSize(10)
+                .diskLocation(LOCATION)
+                .diskStore(CacheDefaults.DISK_STORE_MMAP)
+                .serializer(failing));
+
+        cache.put("A", "bad");
+        cache.put("B", "good");
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertNull(cache.get("A"));
+        assertFalse(cache.containsKey("A"));
+        assertEquals("good", cache.get("B"));
+        assertEquals(1, cache.size());
+        cache.clear();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.StoreManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OffHeapStoreTest {
+
+    private static final String LOCATION = TestFiles.location("offheap");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private static String value(int i) {
+        StringBuilder sb = new StringBuilder("value" + i);
+        while (sb.length() < 80)
+            sb.append('-');
+        return sb.toString();
+    }
+
+    @Test
+    @DisplayName("Second level entries are kept off-heap then spilled to disk")
+    void spillTest() {
+        StoreManager<String, String> store = new StoreManager<String, String>();
+        store.setMaxMemorySize(0);
+        store.setMaxDiskSize(10);
+        store.setDiskEnabled(true);
+        store.setDiskLocation(LOCATION);
+        store.setDiskStoreType(CacheDefaults.DISK_STORE_LOG);
+        // 4 slots of 128 bytes
+        store.setOffHeapSize(512);
+        store.build();
+
+        @SuppressWarnings("unchecked")
+        CacheEntry<String, String>[] entries = new CacheEntry[10];
+        for (int i = 0; i < 10; i++) {
+            entries[i] = new CacheEntry<String, String>("key" + i, value(i), store);
+            assertTrue(entries[i].isDiskStored());
+        }
+        assertEquals(4, store.getOffHeapCount());
+        assertTrue(new File(LOCATION).exists());
+
+        for (int i = 0; i < 10; i++)
+            assertEquals(value(i), entries[i].getValue());
+
+        // the newest entries are off-heap, a removed one frees its slot
+        assertEquals(value(9), entries[9].removeFromStore());
+        assertEquals(3, store.getOffHeapCount());
+        assertEquals(value(0), entries[0].removeFromStore());
+        assertNull(entries[0].getValue());
+
+        entries[1].updateValue(value(100));
+        assertEquals(value(100), entries[1].getValue());
+        assertEquals(4, store.getOffHeapCount());
+
+        store.clear();
+        assertEquals(0, store.getOffHeapCount());
+    }
+
+    @Test
+    @DisplayName("Cache with memory, off-heap and disk tiers")
+    void threeTiersTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(2)
+                .diskSize(20)
+                .diskLocation(LOCATION)
+                .offHeapSize(512));
+
+        for (int i = 0; i < 22; i++)
+            cache.put("key" + i, value(i));
+        assertEquals(22, cache.size());
+        assertFalse(cache.isEntryDiskStored("key21"));
+        assertTrue(cache.isEntryDiskStored("key0"));
+
+        for (int i = 0; i < 22; i++)
+            assertEquals(value(i), cache.get("key" + i));
+
+        assertEquals(value(5), cache.remove("key5"));
+        assertNull(cache.get("key5"));
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    @DisplayName("An off-heap value that can't be read is dropped as a miss")
+    void readFailureTest() {
+        // "bad" values are written but can't be read back
+        Serializer<String> failing = new Serializer<String>() {
+            public void serialize(String value, DataOutput out) throws IOException {
+                out.writeUTF(value);
+            }
+
+            public String deserialize(DataInput in) throws IOException {
+                String value = in.readUTF();
+                if (value.equals("bad"))
+                    throw new IOException("unreadable");
+                return value;
+            }
+        };
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(1)
+                .diskSize(10)
+                .diskLocation(LOCATION)
+                .offHeapSize(512)
+                .serializer(failing));
+
+        cache.put("A", "bad");
+        cache.put("B", "good");
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertNull(cache.get("A"));
+        assertFalse(cache.containsKey("A"));
+        assertEquals("good", cache.get("B"));
+        assertEquals(1, cache.size());
+        cache.clear();
+    }
+
+}
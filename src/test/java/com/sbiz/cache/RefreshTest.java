@@ -0,0 +1,122 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RefreshTest {
+
+    // Runs the refreshes in the calling thread
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    @DisplayName("Old entries are reloaded on access")
+    void refreshTest() {
+        final AtomicInteger version = new AtomicInteger();
+        CacheLoader<String, String> loader = key -> key + version.incrementAndGet();
+
+        for (String strategy : new String[] { CacheDefaults.LRU, CacheDefaults.LFU }) {
+            version.set(0);
+            Cache<String, String> cache = new CacheBuilder()
+                    .strategy(strategy)
+                    .memorySize(10)
+                    .refreshAfterWrite(1, TimeUnit.NANOSECONDS)
+                    .loader(loader)
+                    .refreshExecutor(DIRECT)
+                    .build();
+
+            cache.put("A", "A0");
+            // the access returning the old value triggers the reload
+            assertEquals("A0", cache.get("A"), strategy);
+            assertEquals("A1", cache.get("A"), strategy);
+            assertEquals("A2", cache.get("A"), strategy);
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent accesses share a single background reload")
+    void coalescingTest() throws InterruptedException {
+        final AtomicInteger reloads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        CacheLoader<String, String> loader = key -> {
+            reloads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "new";
+        };
+        // the reload ends after its put
+        Executor executor = command -> new Thread(() -> {
+            command.run();
+            done.countDown();
+        }).start();
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(10)
+                .refreshAfterWrite(1, TimeUnit.NANOSECONDS)
+                .loader(loader)
+                .refreshExecutor(executor));
+
+        cache.put("A", "old");
+        for (int i = 0; i < 10; i++)
+            assertEquals("old", cache.get("A"));
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, reloads.get());
+        assertEquals("new", cache.get("A"));
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    @DisplayName("Reloads don't overwrite newer writes")
+    void raceTest() {
+        @SuppressWarnings("unchecked")
+        final LFUCache<String, String>[] holder = new LFUCache[1];
+        // a write lands while the reload is running
+        CacheLoader<String, String> loader = key -> {
+            holder[0].put(key, "written");
+            return "reloaded";
+        };
+        holder[0] = new LFUCache<String, String>(new CacheBuilder()
+                .memorySize(10)
+                .refreshAfterWrite(1, TimeUnit.NANOSECONDS)
+                .loader(loader)
+                .refreshExecutor(DIRECT));
+
+        holder[0].put("A", "old");
+        assertEquals("old", holder[0].get("A"));
+        assertEquals("written", holder[0].get("A"));
+    }
+
+    @Test
+    @DisplayName("Refreshes need a loader")
+    void configurationTest() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder()
+                .refreshAfterWrite(1, TimeUnit.SECONDS)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder()
+                .refreshAfterWrite(0, TimeUnit.SECONDS));
+        assertFalse(new CacheBuilder().getRefreshAfterWrite() > 0);
+    }
+
+}
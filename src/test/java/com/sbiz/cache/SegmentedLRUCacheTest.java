@@ -0,0 +1,140 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.SegmentedLRUCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SegmentedLRUCacheTest {
+
+    @Test
+    @DisplayName("Test creating a segmented cache through the builder")
+    void builderTest() {
+        Cache<String, String> cache = new CacheBuilder().memorySize(10).segments(3).build();
+        assertTrue(cache instanceof SegmentedLRUCache);
+        // rounded down to a power of two
+        assertEquals(2, ((SegmentedLRUCache<String, String>) cache).getSegmentsCount());
+    }
+
+    @Test
+    @DisplayName("Segments are limited by the memory size")
+    void segmentsLimitTest() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(
+                new CacheBuilder().memorySize(3).segments(16));
+        assertEquals(2, cache.getSegmentsCount());
+        assertEquals(3, cache.getMaxSize());
+    }
+
+    @Test
+    @DisplayName("Basic operations with memory cache only")
+    void basicTest() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(
+                new CacheBuilder().memorySize(40).segments(4));
+
+        for (int i = 0; i < 100; i++)
+            cache.put("key" + i, "value" + i);
+
+        assertEquals(40, cache.size());
+        assertEquals("value99", cache.get("key99"));
+        assertEquals("value99", cache.remove("key99"));
+        assertNull(cache.get("key99"));
+        assertEquals(39, cache.size());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test segments with disk caching")
+    void twoLevelTest() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(
+                new CacheBuilder().memorySize(8).diskSize(8).segments(4));
+
+        for (int i = 0; i < 32; i++)
+            cache.put("key" + i, "value" + i);
+
+        // keys are not evenly distributed between segments, so some segments evict earlier
+        assertTrue(cache.size() <= 16);
+        int found = 0;
+        for (int i = 0; i < 32; i++) {
+            String value = cache.get("key" + i);
+            if (value != null) {
+                assertEquals("value" + i, value);
+                found++;
+            }
+        }
+        assertEquals(cache.size(), found);
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("Only the segments have a disk store, each one in its own folder")
+    void segmentStoresTest() {
+        String location = TestFiles.location("segmented") + File.separator;
+        TestFiles.delete(new File(location));
+        int writers = countWriters();
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(new CacheBuilder()
+                .memorySize(4)
+                .diskSize(40)
+                .diskLocation(location)
+                .writeBehind(true)
+                .segments(4));
+        assertEquals(writers + 4, countWriters());
+
+        for (int i = 0; i < 40; i++)
+            cache.put("key" + i, "value" + i);
+        for (File folder : new File(location).listFiles())
+            assertTrue(folder.getName().startsWith("segment-"), folder.getName());
+
+        cache.clear();
+        cache.close();
+        assertEquals(writers, countWriters());
+    }
+
+    private static int countWriters() {
+        int writers = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("jcache-write-behind") && thread.isAlive())
+                writers++;
+        }
+        return writers;
+    }
+
+    @Test
+    @DisplayName("Concurrent reads and writes on different segments")
+    void concurrentTest() throws InterruptedException {
+        final SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(
+                new CacheBuilder().memorySize(1000).segments(8));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        String key = "key" + thread + "-" + (i % 200);
+                        cache.put(key, key);
+                        cache.get(key);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertTrue(cache.size() <= cache.getMaxSize());
+    }
+
+}
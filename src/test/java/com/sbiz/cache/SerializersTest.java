@@ -0,0 +1,95 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.ByteBufferInputStream;
+import com.sbiz.cache.utils.SerializationBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SerializersTest {
+
+    private static final String LOCATION = TestFiles.location("serializers");
+
+    // Not Serializable: can only be stored with its own serializer
+    private static class Point {
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final Serializer<Point> POINT = new Serializer<Point>() {
+        public void serialize(Point value, DataOutput out) throws IOException {
+            out.writeInt(value.x);
+            out.writeInt(value.y);
+        }
+
+        public Point deserialize(DataInput in) throws IOException {
+            return new Point(in.readInt(), in.readInt());
+        }
+    };
+
+    private static <V> V roundTrip(SerializationBuffer buffer, Serializer<V> serializer, V value) throws IOException {
+        ByteBuffer bytes = buffer.write(serializer, value);
+        return serializer.deserialize(new DataInputStream(new ByteBufferInputStream(bytes)));
+    }
+
+    @Test
+    @DisplayName("Built-in codecs read back what they write")
+    void codecsTest() throws IOException {
+        SerializationBuffer buffer = new SerializationBuffer();
+
+        assertEquals("Bim Bam é中", roundTrip(buffer, Serializers.STRING, "Bim Bam é中"));
+        assertEquals("", roundTrip(buffer, Serializers.STRING, ""));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, roundTrip(buffer, Serializers.BYTES, new byte[] { 1, 2, 3 }));
+        assertEquals(Integer.valueOf(-42), roundTrip(buffer, Serializers.INTEGER, -42));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), roundTrip(buffer, Serializers.LONG, Long.MAX_VALUE));
+        assertEquals(Double.valueOf(3.5), roundTrip(buffer, Serializers.DOUBLE, 3.5));
+        assertEquals("Bum", roundTrip(buffer, Serializers.<String>java(), "Bum"));
+
+        // raw bytes: length prefix and UTF-8 content only
+        assertEquals(4 + 3, buffer.write(Serializers.STRING, "Bim").remaining());
+        assertEquals(8, buffer.write(Serializers.LONG, 1L).remaining());
+    }
+
+    @Test
+    @DisplayName("Values without Java serialization on disk")
+    void customSerializerTest() {
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG,
+                CacheDefaults.DISK_STORE_MMAP }) {
+            LRUCache<String, Point> cache = new LRUCache<String, Point>(new CacheBuilder()
+                    .memorySize(2)
+                    .diskSize(20)
+                    .diskLocation(LOCATION)
+                    .diskStore(diskStore)
+                    .segmentSize(4096)
+                    .serializer(POINT));
+
+            for (int i = 0; i < 20; i++)
+                cache.put("key" + i, new Point(i, -i));
+            assertTrue(cache.isEntryDiskStored("key0"));
+            for (int i = 0; i < 20; i++) {
+                Point point = cache.get("key" + i);
+                assertEquals(i, point.x, diskStore);
+                assertEquals(-i, point.y, diskStore);
+            }
+            cache.clear();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.sbiz.cache.simulator.Simulation;
+import com.sbiz.cache.simulator.Simulator;
+import com.sbiz.cache.simulator.TraceReader;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SimulatorTest {
+
+    private static List<Long> read(String trace, String format) throws IOException {
+        final List<Long> keys = new ArrayList<Long>();
+        TraceReader.read(new BufferedReader(new StringReader(trace)), format, key -> keys.add(key));
+        return keys;
+    }
+
+    @Test
+    @DisplayName("Keys of the plain, ARC and LIRS trace formats")
+    void formatsTest() throws IOException {
+        assertEquals(Arrays.asList(1L, 2L, 1L), read("1\n# comment\n\n2 extra columns\n 1\n", TraceReader.PLAIN));
+        List<Long> hashed = read("user:1\nuser:2\nuser:1\n", TraceReader.PLAIN);
+        assertEquals(hashed.get(0), hashed.get(2));
+        assertEquals(3, new HashSet<Long>(Arrays.asList(hashed.get(0), hashed.get(1), 42L)).size());
+
+        assertEquals(Arrays.asList(10L, 11L, 12L, 5L), read("10 3 0 1\n5 1 0 2\n", TraceReader.ARC));
+        assertEquals(Arrays.asList(7L, 8L), read("7\n8\n*\n", TraceReader.LIRS));
+    }
+
+    @Test
+    @DisplayName("Hit ratios of the memory and disk levels")
+    void hitRatioTest() throws IOException {
+        Simulator simulator = new Simulator()
+                .add(CacheDefaults.LRU, 2, 0)
+                .add(CacheDefaults.LRU, 2, 2)
+                .add(CacheDefaults.LFU, 4, 0);
+        long requests = simulator.replay(new BufferedReader(new StringReader("1\n2\n3\n4\n1\n4\n")), TraceReader.PLAIN);
+        assertEquals(6, requests);
+
+        Simulation memoryOnly = simulator.getSimulations().get(0);
+        assertEquals(6, memoryOnly.getRequests());
+        assertEquals(1, memoryOnly.getMemoryHits());
+        assertEquals(0, memoryOnly.getDiskHits());
+        assertEquals(5, memoryOnly.getMisses());
+
+        // key 1 was moved to disk, then back in memory
+        Simulation withDisk = simulator.getSimulations().get(1);
+        assertEquals(1, withDisk.getDiskHits());
+        assertEquals(1, withDisk.getMemoryHits());
+        assertEquals(2.0 / 6, withDisk.getHitRatio(), 1e-9);
+
+        Simulation lfu = simulator.getSimulations().get(2);
+        assertEquals(2, lfu.getMemoryHits());
+        assertEquals(4, lfu.getMisses());
+    }
+
+}
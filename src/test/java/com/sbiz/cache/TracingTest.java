@@ -0,0 +1,129 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sbiz.cache.implementations.ACache;
+import com.sbiz.cache.utils.TraceBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TracingTest {
+
+    private static final int GETS = 100000;
+
+    @Test
+    @DisplayName("Events drained in order, the overwritten ones counted as dropped")
+    void bufferTest() {
+        TraceBuffer trace = new TraceBuffer(6);
+        assertEquals(8, trace.getCapacity());
+
+        List<Object> keys = new ArrayList<Object>();
+        TraceBuffer.EventHandler collect = (type, key, time, duration) -> keys.add(key);
+        for (int i = 0; i < 5; i++)
+            trace.record(TraceBuffer.PUT, "key" + i, i, 10);
+        assertEquals(5, trace.drain(collect));
+        assertEquals("key4", keys.get(4));
+        assertEquals(0, trace.drain(collect));
+
+        keys.clear();
+        for (int i = 0; i < 20; i++)
+            trace.record(TraceBuffer.GET_MISS, "key" + i, i, 10);
+        assertEquals(8, trace.drain(collect));
+        assertEquals("key12", keys.get(0));
+        assertEquals(12, trace.getDroppedCount());
+    }
+
+    @Test
+    @DisplayName("Concurrent writers never produce torn events")
+    void concurrentTest() {
+        TraceBuffer trace = new TraceBuffer(256);
+        int threads = 4;
+        int events = 50000;
+        AtomicBoolean torn = new AtomicBoolean();
+        long[] handled = new long[1];
+        TraceBuffer.EventHandler check = (type, key, time, duration) -> {
+            // every field is derived from the same counter
+            if (time != duration || type != (int) (time & 3) || ((Long) key).longValue() != time)
+                torn.set(true);
+            handled[0]++;
+        };
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final long base = t * (long) events;
+            Thread writer = new Thread(() -> {
+                for (long i = base; i < base + events; i++)
+                    trace.record((int) (i & 3), Long.valueOf(i), i, i);
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        boolean running = true;
+        while (running) {
+            trace.drain(check);
+            running = false;
+            for (Thread writer : writers)
+                running |= writer.isAlive();
+        }
+        trace.drain(check);
+
+        assertFalse(torn.get());
+        assertEquals(threads * (long) events, handled[0] + trace.getDroppedCount());
+    }
+
+    @Test
+    @DisplayName("Memory hits allocate nothing, traced or not")
+    void allocationTest() {
+        for (String strategy : new String[] { CacheDefaults.LRU, CacheDefaults.LFU, CacheDefaults.CLOCK,
+                CacheDefaults.ARC, CacheDefaults.WTINYLFU }) {
+            for (int capacity : new int[] { 0, 64 }) {
+                ACache<String, String> cache = (ACache<String, String>) new CacheBuilder()
+                        .strategy(strategy)
+                        .memorySize(16)
+                        .tracing(capacity)
+                        .<String, String>build();
+                String[] keys = new String[16];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = "key" + i;
+                    cache.put(keys[i], "value" + i);
+                }
+                // warm up, then measure (the measure itself allocates a few hundred bytes)
+                getAll(cache, keys);
+                long allocated = allocatedBytes();
+                getAll(cache, keys);
+                allocated = allocatedBytes() - allocated;
+                assertTrue(allocated < GETS / 10, strategy + " tracing " + capacity + ": " + allocated + " bytes");
+                cache.closeStats();
+            }
+        }
+    }
+
+    private static void getAll(Cache<String, String> cache, String[] keys) {
+        for (int i = 0; i < GETS; i++)
+            cache.get(keys[i & 15]);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    @DisplayName("Invalid trace settings")
+    void builderTest() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder().tracing(-1));
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder().traceFlushInterval(0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new TraceBuffer(0));
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.sbiz.cache.Utils;
+
+import java.io.File;
+
+/**
+ * Disk locations of the tests, one folder per test class under the temporary folder
+ */
+public class TestFiles {
+
+    private TestFiles() {
+    }
+
+    public static String location(String name) {
+        return System.getProperty("java.io.tmpdir") + File.separator + "jcache-test" + File.separator + name;
+    }
+
+    public static void delete(File file) {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles())
+                delete(child);
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sbiz.cache.implementations.WTinyLfuCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class WTinyLfuCacheTest {
+
+    @Test
+    @DisplayName("Test creating WTinyLfuCache through the builder")
+    void builderTest() {
+        Cache<String, String> cache = new CacheBuilder().strategy(CacheDefaults.WTINYLFU).build();
+        assertTrue(cache instanceof WTinyLfuCache);
+    }
+
+    @Test
+    @DisplayName("Test WTinyLfuCache with size 1")
+    void sizeOneTest() {
+        Cache<String, String> cache = new WTinyLfuCache<String, String>(new CacheBuilder().memorySize(1));
+        cache.put("One", "value");
+        cache.put("Second", "value");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Frequent entries survive a scan")
+    void scanResistanceTest() {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<String, String>(
+                new CacheBuilder().memorySize(10).printInternalsInDebug(true));
+
+        for (int i = 0; i < 5; i++)
+            cache.put("hot" + i, "value");
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5; i++)
+                cache.get("hot" + i);
+        }
+
+        // keys seen only once do not beat the frequent ones
+        for (int i = 0; i < 100; i++)
+            cache.put("scan" + i, "value");
+
+        for (int i = 0; i < 5; i++)
+            assertTrue(cache.containsKey("hot" + i));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    @DisplayName("Entries leaving the window duel with the oldest probation entry")
+    void admissionTest() {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<String, String>(
+                new CacheBuilder().memorySize(100).printInternalsInDebug(true));
+
+        // the window holds one entry, the others wait on probation, oldest first
+        for (int i = 0; i < 100; i++)
+            cache.put("key" + i, "value");
+        for (int i = 0; i < 5; i++)
+            cache.get("hot");
+
+        // key99 leaves the window: not more frequent than key0, it loses
+        cache.put("hot", "value");
+        assertFalse(cache.containsKey("key99"));
+        assertTrue(cache.containsKey("key0"));
+
+        // hot leaves the window: more frequent than key0, it wins
+        cache.put("new", "value");
+        assertTrue(cache.containsKey("hot"));
+        assertFalse(cache.containsKey("key0"));
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    @DisplayName("Entries rejected from memory are moved to disk")
+    void twoLevelTest() {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<String, String>(
+                new CacheBuilder().memorySize(3).diskSize(2).printInternalsInDebug(true));
+
+        cache.put("A", "Bim");
+        cache.put("B", "Bam");
+        cache.put("C", "Bum");
+        cache.put("D", "Badabum");
+        assertEquals(4, cache.size());
+
+        int onDisk = 0;
+        for (String key : new String[] { "A", "B", "C", "D" })
+            onDisk += cache.isEntryDiskStored(key) ? 1 : 0;
+        assertEquals(1, onDisk);
+
+        cache.put("E", "Rapatam tap tap");
+        cache.put("F", "This is a test");
+        assertEquals(5, cache.size());
+
+        // every entry still in the cache can be read, disk hits come back in memory
+        for (String key : new String[] { "A", "B", "C", "D", "E", "F" }) {
+            if (cache.containsKey(key)) {
+                assertTrue(cache.get(key) != null);
+                assertFalse(cache.isEntryDiskStored(key));
+            }
+        }
+
+        if (cache.containsKey("C"))
+            assertEquals("Bum", cache.remove("C"));
+        assertNull(cache.remove("C"));
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertNull(cache.get("A"));
+    }
+
+}
@@ -0,0 +1,232 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.implementations.SegmentedLRUCache;
+import com.sbiz.cache.utils.Manifest;
+import com.sbiz.cache.utils.Snapshot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class WarmRestartTest {
+
+    private static final String LOCATION = TestFiles.location("restart");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    private static CacheBuilder builder(String diskStore) {
+        return new CacheBuilder()
+                .memorySize(2)
+                .diskSize(6)
+                .diskLocation(LOCATION)
+                .diskStore(diskStore)
+                .segmentSize(128)
+                .serializer(Serializers.STRING)
+                .keySerializer(Serializers.STRING)
+                .warmRestart(true);
+    }
+
+    @Test
+    @DisplayName("LRU disk entries and their order survive a restart")
+    void lruTest() {
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG }) {
+            cleanLocation();
+            LRUCache<String, String> cache = new LRUCache<String, String>(builder(diskStore));
+            for (int i = 0; i < 8; i++)
+                cache.put("key" + i, "value" + i);
+            // key0 moves to memory, key6 to disk
+            cache.get("key0");
+            cache.checkpoint();
+            assertTrue(new File(LOCATION, Manifest.FILE_NAME).exists());
+
+            LRUCache<String, String> restarted = new LRUCache<String, String>(builder(diskStore));
+            assertEquals(8, restarted.size(), diskStore);
+            assertFalse(new File(LOCATION, Manifest.FILE_NAME).exists(), diskStore);
+            assertFalse(new File(LOCATION, Snapshot.FILE_NAME).exists(), diskStore);
+            for (int i = 1; i < 7; i++)
+                assertTrue(restarted.isEntryDiskStored("key" + i), diskStore);
+            // memory entries are preloaded with their values
+            assertFalse(restarted.isEntryDiskStored("key7"), diskStore);
+            assertFalse(restarted.isEntryDiskStored("key0"), diskStore);
+
+            // disk values are read on the first hit
+            assertEquals("value5", restarted.get("key5"), diskStore);
+            assertFalse(restarted.isEntryDiskStored("key5"), diskStore);
+            assertTrue(restarted.isEntryDiskStored("key7"), diskStore);
+            // the least recent entries are evicted first
+            restarted.put("key9", "value9");
+            assertFalse(restarted.containsKey("key1"), diskStore);
+            assertEquals("value2", restarted.get("key2"), diskStore);
+            assertEquals("value0", restarted.get("key0"), diskStore);
+            restarted.clear();
+        }
+    }
+
+    @Test
+    @DisplayName("LFU frequencies survive a restart")
+    void lfuTest() {
+        LFUCache<String, String> cache = new LFUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        for (int i = 0; i < 8; i++)
+            cache.put("key" + i, "value" + i);
+        for (int i = 0; i < 8; i++) {
+            for (int hits = 0; hits < i; hits++)
+                cache.get("key" + i);
+        }
+        cache.checkpoint();
+
+        LFUCache<String, String> restarted = new LFUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        assertEquals(8, restarted.size());
+        // the most frequent entries are back in memory
+        assertFalse(restarted.isEntryDiskStored("key6"));
+        assertFalse(restarted.isEntryDiskStored("key7"));
+        assertTrue(restarted.isEntryDiskStored("key5"));
+        restarted.put("keyA", "valueA");
+        // the least frequent restored entries go first
+        assertFalse(restarted.containsKey("key0"));
+        assertTrue(restarted.containsKey("key1"));
+        assertEquals("value5", restarted.get("key5"));
+        assertEquals("value7", restarted.get("key7"));
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("No restore without checkpoint or after a disk change")
+    void invalidationTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        for (int i = 0; i < 6; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+        // the manifest would point to the replaced value
+        cache.put("key0", "updated");
+        assertFalse(new File(LOCATION, Manifest.FILE_NAME).exists());
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG));
+        assertTrue(restarted.isEmpty());
+        assertNull(restarted.get("key0"));
+        for (int i = 0; i < 6; i++)
+            restarted.put("key" + i, "value" + i);
+        restarted.checkpoint();
+        // memory update: the snapshot would hold the replaced value
+        restarted.put("key5", "updated");
+        assertFalse(new File(LOCATION, Snapshot.FILE_NAME).exists());
+        assertFalse(new File(LOCATION, Manifest.FILE_NAME).exists());
+        restarted.clear();
+    }
+
+    private static CacheBuilder snapshotBuilder() {
+        // every entry in memory, in several chunks
+        return builder(CacheDefaults.DISK_STORE_LOG).memorySize(1000).diskSize(1).preloadThreads(3);
+    }
+
+    private static String value(int i) {
+        StringBuilder value = new StringBuilder("value" + i);
+        while (value.length() < 1000)
+            value.append('-');
+        return value.toString();
+    }
+
+    @Test
+    @DisplayName("Memory entries preloaded in parallel, corrupted chunks skipped")
+    void snapshotTest() throws IOException {
+        LRUCache<String, String> cache = new LRUCache<String, String>(snapshotBuilder());
+        for (int i = 0; i < 1000; i++)
+            cache.put("key" + i, value(i));
+        cache.checkpoint();
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(snapshotBuilder());
+        assertEquals(1000, restarted.size());
+        for (int i = 0; i < 1000; i++)
+            assertFalse(restarted.isEntryDiskStored("key" + i));
+        // the preload keeps the recency order
+        restarted.put("keyA", "valueA");
+        assertTrue(restarted.isEntryDiskStored("key0"));
+        assertFalse(restarted.isEntryDiskStored("key1"));
+        assertEquals(value(999), restarted.get("key999"));
+        restarted.checkpoint();
+
+        // flip a byte in the middle of the snapshot
+        File snapshot = new File(LOCATION, Snapshot.FILE_NAME);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+        LRUCache<String, String> corrupted = new LRUCache<String, String>(snapshotBuilder());
+        int size = corrupted.size();
+        assertTrue(size > 500 && size < 1000, "size " + size);
+        for (int i = 2; i < 1000; i++) {
+            String value = corrupted.get("key" + i);
+            if (value != null)
+                assertEquals(value(i), value);
+        }
+        assertEquals("valueA", corrupted.get("keyA"));
+        corrupted.checkpoint();
+
+        // cut the snapshot in the middle
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        LRUCache<String, String> truncated = new LRUCache<String, String>(snapshotBuilder());
+        assertTrue(truncated.size() > 0 && truncated.size() < size, "size " + truncated.size());
+        assertFalse(snapshot.exists());
+        truncated.clear();
+    }
+
+    @Test
+    @DisplayName("Each segment restores its own entries")
+    void segmentedTest() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES)
+                .memorySize(8)
+                .diskSize(40)
+                .segments(4));
+        for (int i = 0; i < 48; i++)
+            cache.put("key" + i, "value" + i);
+        cache.checkpoint();
+
+        SegmentedLRUCache<String, String> restarted = new SegmentedLRUCache<String, String>(builder(CacheDefaults.DISK_STORE_FILES)
+                .memorySize(8)
+                .diskSize(40)
+                .segments(4));
+        assertEquals(48, restarted.size());
+        for (int i = 0; i < 48; i++)
+            assertEquals("value" + i, restarted.get("key" + i));
+        restarted.clear();
+    }
+
+    @Test
+    @DisplayName("Unsupported settings are rejected")
+    void settingsTest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_MMAP)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG).offHeapSize(1024)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LRUCache<String, String>(builder(CacheDefaults.DISK_STORE_LOG).expireAfterWrite(1, TimeUnit.MINUTES)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CacheBuilder().strategy(CacheDefaults.ARC).diskLocation(LOCATION).diskSize(4).warmRestart(true).build());
+        assertThrows(IllegalStateException.class,
+                () -> new LRUCache<String, String>(new CacheBuilder().memorySize(2)).checkpoint());
+        assertThrows(IllegalArgumentException.class,
+                () -> new LRUCache<String, String>(new CacheBuilder().memorySize(2).checkpointOnShutdown(true)));
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder().preloadThreads(0));
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LFUCache;
+import com.sbiz.cache.implementations.LRUCache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+    private static final String LOCATION = TestFiles.location("weighted");
+
+    private static final Weigher<String, String> LENGTH = new Weigher<String, String>() {
+        public int weigh(String key, String value) {
+            return value.length();
+        }
+    };
+
+    private static String value(int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length)
+            sb.append('x');
+        return sb.toString();
+    }
+
+    private static CacheBuilder builder() {
+        return new CacheBuilder()
+                .memorySize(100)
+                .diskSize(100)
+                .diskLocation(LOCATION)
+                .subfolderPattern("yyyyMMdd|hh|")
+                .weigher(LENGTH)
+                .maxMemoryWeight(100)
+                .maxDiskWeight(200);
+    }
+
+    @Test
+    @DisplayName("LRU memory and disk bounded by weight")
+    void lruWeightTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder());
+
+        cache.put("A", value(40));
+        cache.put("B", value(40));
+        // C needs 70: both A and B move to disk
+        cache.put("C", value(70));
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertTrue(cache.isEntryDiskStored("B"));
+        assertFalse(cache.isEntryDiskStored("C"));
+
+        // D moves C to disk: disk weight 150
+        cache.put("D", value(90));
+        assertTrue(cache.isEntryDiskStored("C"));
+        assertEquals(4, cache.size());
+
+        // E moves D to disk: disk weight 240, A is evicted
+        cache.put("E", value(20));
+        assertFalse(cache.containsKey("A"));
+        assertTrue(cache.containsKey("B"));
+        assertEquals(4, cache.size());
+
+        // reading B brings it in memory next to E
+        assertEquals(value(40), cache.get("B"));
+        assertFalse(cache.isEntryDiskStored("B"));
+        assertFalse(cache.isEntryDiskStored("E"));
+
+        // heavier than the memory: not cached
+        cache.put("F", value(101));
+        assertFalse(cache.containsKey("F"));
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("LRU updates change the weight")
+    void lruUpdateTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder());
+
+        cache.put("A", value(10));
+        cache.put("B", value(10));
+        cache.put("A", value(95));
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertFalse(cache.isEntryDiskStored("B"));
+        assertEquals(value(95), cache.get("A"));
+        assertTrue(cache.isEntryDiskStored("B"));
+
+        // removing a memory entry brings back disk entries that fit
+        cache.remove("A");
+        assertFalse(cache.isEntryDiskStored("B"));
+
+        cache.put("B", value(200));
+        assertFalse(cache.containsKey("B"));
+        assertTrue(cache.isEmpty());
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("LRU memory only bounded by weight")
+    void lruMemoryOnlyTest() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                .memorySize(100)
+                .weigher(LENGTH)
+                .maxMemoryWeight(100));
+
+        for (int i = 0; i < 10; i++)
+            cache.put("key" + i, value(30));
+        assertEquals(3, cache.size());
+        assertTrue(cache.containsKey("key9"));
+        assertFalse(cache.containsKey("key6"));
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("LFU memory and disk bounded by weight")
+    void lfuWeightTest() {
+        LFUCache<String, String> cache = new LFUCache<String, String>(builder());
+
+        cache.put("A", value(40));
+        cache.put("B", value(40));
+        cache.get("A");
+        cache.get("B");
+
+        // C is less frequent than A and B: goes to disk
+        cache.put("C", value(50));
+        assertTrue(cache.isEntryDiskStored("C"));
+        assertFalse(cache.isEntryDiskStored("A"));
+
+        // C becomes as frequent as A and B: A moves to disk to make room
+        cache.get("C");
+        assertFalse(cache.isEntryDiskStored("C"));
+        assertTrue(cache.isEntryDiskStored("A"));
+        assertFalse(cache.isEntryDiskStored("B"));
+
+        // the disk holds 200: E (90) evicts the least frequent entry (D)
+        cache.put("D", value(90));
+        cache.put("E", value(90));
+        assertFalse(cache.containsKey("D"));
+        assertTrue(cache.containsKey("E"));
+        assertEquals(4, cache.size());
+
+        cache.put("F", value(101));
+        assertFalse(cache.containsKey("F"));
+
+        // removing C brings A back in memory
+        assertEquals(value(50), cache.remove("C"));
+        assertNull(cache.get("C"));
+        assertFalse(cache.isEntryDiskStored("A"));
+
+        cache.clear();
+    }
+
+    @Test
+    @DisplayName("Weight limits need a weigher")
+    void missingWeigherTest() {
+        assertThrows(IllegalArgumentException.class, () -> new LRUCache<String, String>(new CacheBuilder()
+                .maxMemoryWeight(10)));
+        assertThrows(IllegalArgumentException.class, () -> new CacheBuilder()
+                .strategy(CacheDefaults.ARC)
+                .weigher(LENGTH)
+                .maxMemoryWeight(10)
+                .build());
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.sbiz.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sbiz.cache.Utils.TestFiles;
+import com.sbiz.cache.implementations.LRUCache;
+import com.sbiz.cache.utils.CacheEntry;
+import com.sbiz.cache.utils.StoreManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class WriteBehindTest {
+
+    private static final String LOCATION = TestFiles.location("writebehind");
+
+    @BeforeEach
+    void cleanLocation() {
+        TestFiles.delete(new File(LOCATION));
+    }
+
+    @Test
+    @DisplayName("Demoted values are written in the background and stay readable")
+    void cacheTest() {
+        for (String diskStore : new String[] { CacheDefaults.DISK_STORE_FILES, CacheDefaults.DISK_STORE_LOG,
+                CacheDefaults.DISK_STORE_MMAP }) {
+            LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                    .memorySize(2)
+                    .diskSize(50)
+                    .diskLocation(LOCATION)
+                    .diskStore(diskStore)
+                    .serializer(Serializers.STRING)
+                    .writeBehind(true)
+                    .writeBehindQueueSize(4));
+
+            for (int i = 0; i < 50; i++)
+                cache.put("key" + i, "value" + i);
+            assertTrue(cache.internals().contains("[WriteBehind: "), cache.internals());
+            for (int i = 0; i < 50; i++)
+                assertEquals("value" + i, cache.get("key" + i), diskStore);
+
+            cache.remove("key0");
+            assertNull(cache.get("key0"));
+            cache.put("key0", "value00");
+            assertEquals("value00", cache.get("key0"));
+            assertEquals(50, cache.size(), diskStore);
+            cache.clear();
+        }
+    }
+
+    @Test
+    @DisplayName("Puts wait for the writer when the staging queue is full")
+    void backpressureTest() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // blocks the writer on its first value
+        Serializer<String> slow = new Serializer<String>() {
+            public void serialize(String value, DataOutput out) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                out.writeUTF(value);
+            }
+
+            public String deserialize(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+
+        final StoreManager<String, String> store = new StoreManager<String, String>();
+        store.setMaxMemorySize(0);
+        store.setMaxDiskSize(10);
+        store.setDiskEnabled(true);
+        store.setDiskLocation(LOCATION);
+        store.setDiskStoreType(CacheDefaults.DISK_STORE_LOG);
+        store.setSerializer(slow);
+        store.setWriteBehindQueueSize(2);
+        store.build();
+
+        @SuppressWarnings("unchecked")
+        final CacheEntry<String, String>[] entries = new CacheEntry[4];
+        entries[0] = new CacheEntry<String, String>("key0", "value0", store);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // the writer holds key0, two more fill the queue
+        entries[1] = new CacheEntry<String, String>("key1", "value1", store);
+        entries[2] = new CacheEntry<String, String>("key2", "value2", store);
+        assertEquals(3, store.getStagedCount());
+        assertEquals("value0", entries[0].getValue());
+        assertEquals("value2", entries[2].getValue());
+
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                entries[3] = new CacheEntry<String, String>("key3", "value3", store);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        store.flush();
+        assertEquals(0, store.getStagedCount());
+        for (int i = 0; i < 4; i++)
+            assertEquals("value" + i, entries[i].getValue());
+        store.clear();
+    }
+
+    @Test
+    @DisplayName("A value failing to serialize is lost without stopping the writer")
+    void failingSerializerTest() {
+        final Serializer<String> failing = new Serializer<String>() {
+            public void serialize(String value, DataOutput out) throws IOException {
+                if (value.equals("bad"))
+                    throw new IllegalStateException("not serializable");
+                out.writeUTF(value);
+            }
+
+            public String deserialize(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+        assertTimeoutPreemptively(Duration.ofSeconds(5), new Executable() {
+            public void execute() {
+                LRUCache<String, String> cache = new LRUCache<String, String>(new CacheBuilder()
+                        .memorySize(1)
+                        .diskSize(10)
+                        .diskLocation(LOCATION)
+                        .diskStore(CacheDefaults.DISK_STORE_LOG)
+                        .serializer(failing)
+                        .writeBehind(true)
+                        .writeBehindQueueSize(1));
+
+                cache.put("A", "bad");
+                for (int i = 0; i < 5; i++)
+                    cache.put("key" + i, "value" + i);
+                cache.remove("A");
+                for (int i = 0; i < 4; i++)
+                    assertEquals("value" + i, cache.get("key" + i));
+                cache.clear();
+                cache.close();
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Close writes the staged values, checkpoints and stops the writer")
+    void closeTest() {
+        CacheBuilder builder = new CacheBuilder()
+                .memorySize(2)
+                .diskSize(50)
+                .diskLocation(LOCATION)
+                .diskStore(CacheDefaults.DISK_STORE_LOG)
+                .serializer(Serializers.STRING)
+                .keySerializer(Serializers.STRING)
+                .writeBehind(true)
+                .warmRestart(true)
+                .checkpointOnShutdown(true);
+        int writers = countWriters();
+        LRUCache<String, String> cache = new LRUCache<String, String>(builder);
+        assertEquals(writers + 1, countWriters());
+        for (int i = 0; i < 20; i++)
+            cache.put("key" + i, "value" + i);
+        cache.close();
+        assertEquals(writers, countWriters());
+
+        LRUCache<String, String> restarted = new LRUCache<String, String>(builder);
+        assertEquals(20, restarted.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals("value" + i, restarted.get("key" + i));
+        restarted.clear();
+        restarted.close();
+        assertEquals(writers, countWriters());
+    }
+
+    private static int countWriters() {
+        int writers = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("jcache-write-behind") && thread.isAlive())
+                writers++;
+        }
+        return writers;
+    }
+
+}